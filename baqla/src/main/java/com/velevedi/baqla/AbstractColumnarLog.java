@@ -0,0 +1,470 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla;
+
+import com.velevedi.baqla.util.SourceDictionary;
+
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Log which keeps entries in parallel arrays (columns) instead of one object per entry. Indices and identifiers
+ * of sources are kept in int columns, values are kept in a column chosen by the implementation, which could be
+ * an array of primitives. Entry objects are created only when entries are read through the {@link Log} view.
+ * <p>
+ * Forks share columns with the Log they were forked from. The Log which appends first after forking copies
+ * the columns, so forking does not depend on the size of the Log.
+ * </p>
+ * The Log is not thread safe.
+ *
+ * @param <V> type of a value of an entry
+ */
+abstract class AbstractColumnarLog<V> extends AbstractLog<Integer, V> {
+
+    static final int INITIAL_CAPACITY = 16;
+
+    private final SourceDictionary dictionary;
+    private int[] indices;
+    private int[] sourceIds;
+    private Object values;
+
+    /**
+     * Positions of the latest entries indexed by identifiers of their sources, -1 if the source has no entries
+     */
+    private int[] latestPositions;
+    private int size;
+    private int indexLimit;
+    private boolean ordered = true;
+
+    /**
+     * Set when columns are shared with another Log, the next append copies them
+     */
+    private boolean shared;
+
+    /**
+     * @param id         id of the Log
+     * @param dictionary dictionary of sources
+     * @param values     empty column of values of {@link #INITIAL_CAPACITY} length
+     */
+    AbstractColumnarLog(UUID id, SourceDictionary dictionary, Object values) {
+        super(id);
+        this.dictionary = dictionary;
+        this.indices = new int[INITIAL_CAPACITY];
+        this.sourceIds = new int[INITIAL_CAPACITY];
+        this.values = values;
+        this.latestPositions = new int[0];
+    }
+
+    /**
+     * Creates an empty Log of the same type
+     *
+     * @param id         id of the new Log
+     * @param dictionary dictionary of sources to share
+     * @return new instance of the Log
+     */
+    abstract AbstractColumnarLog<V> newLog(UUID id, SourceDictionary dictionary);
+
+    /**
+     * Reads a value from the column of values
+     *
+     * @param position position of the entry
+     * @return boxed value
+     */
+    abstract V valueAt(int position);
+
+    /**
+     * Writes a value to the column of values
+     *
+     * @param position position of the entry
+     * @param value    value to write
+     */
+    abstract void storeValue(int position, V value);
+
+    /**
+     * Copies a value from the column of another Log of the same type
+     *
+     * @param from         Log to copy from
+     * @param fromPosition position of the value in the other Log
+     * @param position     position of the entry in this Log
+     */
+    void copyValue(AbstractColumnarLog<V> from, int fromPosition, int position) {
+        System.arraycopy(from.values, fromPosition, values, position, 1);
+    }
+
+    /**
+     * The column of values. It is replaced when the Log grows, so it must be read after {@link #claim}.
+     *
+     * @return array of values
+     */
+    final Object column() {
+        return values;
+    }
+
+    /**
+     * Generates an index for an entry being added
+     *
+     * @return the next index
+     */
+    final int nextIndex() {
+        if (indexLimit == Integer.MAX_VALUE) {
+            throw new IndexOutOfBoundsException("Maximum capacity has been reached");
+        }
+        return indexLimit;
+    }
+
+    /**
+     * Writes the index and the source of a new entry. The caller stores the value at the returned position
+     * and calls {@link #publish(int)}.
+     *
+     * @param source source of the entry
+     * @param index  index of the entry
+     * @return position of the entry
+     */
+    final int claim(String source, int index) {
+        Objects.requireNonNull(source, "null values are not allowed");
+        int sourceId = dictionary.idOf(source);
+        if (shared || size == indices.length) {
+            grow(size == indices.length ? 2 * size : indices.length);
+        }
+        indices[size] = index;
+        sourceIds[size] = sourceId;
+        return size;
+    }
+
+    /**
+     * Makes the entry at the position visible
+     *
+     * @param position position returned by {@link #claim}
+     */
+    final void publish(int position) {
+        int index = indices[position];
+        int sourceId = sourceIds[position];
+        ordered = ordered && (position == 0 || indices[position - 1] < index);
+        indexLimit = Math.max(indexLimit, index + 1);
+        if (sourceId >= latestPositions.length) {
+            int length = latestPositions.length;
+            latestPositions = Arrays.copyOf(latestPositions, Math.max(sourceId + 1, 2 * length));
+            Arrays.fill(latestPositions, length, latestPositions.length, -1);
+        }
+        int current = latestPositions[sourceId];
+        if (current < 0 || index >= indices[current]) {
+            latestPositions[sourceId] = position;
+        }
+        size = position + 1;
+        if (hasAppendSubscribers()) {
+            appended(entryAt(position));
+        }
+    }
+
+    private void grow(int capacity) {
+        indices = Arrays.copyOf(indices, capacity);
+        sourceIds = Arrays.copyOf(sourceIds, capacity);
+        Object grown = java.lang.reflect.Array.newInstance(values.getClass().getComponentType(), capacity);
+        System.arraycopy(values, 0, grown, 0, size);
+        values = grown;
+        if (shared) {
+            latestPositions = latestPositions.clone();
+            shared = false;
+        }
+    }
+
+    /**
+     * Finds positions of the latest entries of sources
+     *
+     * @param sources sources to look up
+     * @return positions of the latest entries of the sources which have entries in the Log
+     */
+    final int[] latestPositions(Collection<String> sources) {
+        if (sources == null) {
+            throw new IllegalArgumentException("Sources can not be null");
+        }
+        int[] result = new int[sources.size()];
+        int count = 0;
+        for (String source : sources) {
+            int position = latestPosition(source);
+            if (position >= 0) {
+                result[count++] = position;
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    final int latestPosition(String source) {
+        if (source == null) {
+            throw new IllegalArgumentException("Source can not be null");
+        }
+        int sourceId = dictionary.find(source);
+        return sourceId < 0 || sourceId >= latestPositions.length ? -1 : latestPositions[sourceId];
+    }
+
+    final String sourceAt(int position) {
+        return dictionary.sourceOf(sourceIds[position]);
+    }
+
+    final int indexAt(int position) {
+        return indices[position];
+    }
+
+    Entry<Integer, V> entryAt(int position) {
+        return new ComparableIdEntry<>(sourceAt(position), indices[position], valueAt(position));
+    }
+
+    /**
+     * Forks the Log sharing columns with the new Log. The Log which appends first copies the columns.
+     *
+     * @return new instance of the Log
+     */
+    @Override
+    public Log<Integer, V> fork() {
+        AbstractColumnarLog<V> result = newLog(UUID.randomUUID(), dictionary);
+        result.indices = indices;
+        result.sourceIds = sourceIds;
+        result.values = values;
+        result.latestPositions = latestPositions;
+        result.size = size;
+        result.indexLimit = indexLimit;
+        result.ordered = ordered;
+        result.shared = true;
+        shared = true;
+        result.parent = this.id;
+        return result;
+    }
+
+    @Override
+    public Log<Integer, V> fork(Predicate<Entry<Integer, V>> filter) {
+        AbstractColumnarLog<V> result = copy(UUID.randomUUID(), filter);
+        result.parent = this.id;
+        return result;
+    }
+
+    /**
+     * Compacts the Log into a new one with the same id and parent
+     *
+     * @param retainedTail number of the most recent entries to keep in addition to the latest entries per source
+     * @return compacted Log
+     */
+    @Override
+    public Log<Integer, V> compact(int retainedTail) {
+        AbstractColumnarLog<V> result = copy(id, Compaction.retained(this, retainedTail));
+        result.parent = this.parent;
+        return result;
+    }
+
+    /**
+     * Copies columns of entries accepted by the filter without boxing values
+     */
+    private AbstractColumnarLog<V> copy(UUID newId, Predicate<Entry<Integer, V>> filter) {
+        AbstractColumnarLog<V> result = newLog(newId, dictionary);
+        int end = size;
+        for (int position = 0; position < end; position++) {
+            if (filter.test(entryAt(position))) {
+                int target = result.claim(sourceAt(position), indices[position]);
+                result.copyValue(this, position, target);
+                result.publish(target);
+            }
+        }
+        result.indexLimit = Math.max(result.indexLimit, indexLimit);
+        return result;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public Iterator<Entry<Integer, V>> iterator() {
+        return Spliterators.iterator(spliterator());
+    }
+
+    /**
+     * Walks the columns backwards while entries are added in the order of their indices
+     *
+     * @return an iterator over Log entries in descending order of indices
+     */
+    @Override
+    public Iterator<Entry<Integer, V>> descendingIterator() {
+        if (!ordered) {
+            return IndexRanges.descending(this);
+        }
+        return new Iterator<>() {
+            private int position = size;
+
+            @Override
+            public boolean hasNext() {
+                return position > 0;
+            }
+
+            @Override
+            public Entry<Integer, V> next() {
+                if (position <= 0) {
+                    throw new NoSuchElementException();
+                }
+                return entryAt(--position);
+            }
+        };
+    }
+
+    @Override
+    public void add(String source, V value) {
+        Objects.requireNonNull(value, "null values are not allowed");
+        int position = claim(source, nextIndex());
+        storeValue(position, value);
+        publish(position);
+    }
+
+    @Override
+    public void addAll(Collection<Entry<Integer, V>> entries) {
+        if (entries == null) {
+            throw new IllegalArgumentException("Unable to add null entries");
+        }
+        for (Entry<Integer, V> entry : entries) {
+            if (entry == null) {
+                throw new IllegalArgumentException("Unable to add null entry");
+            }
+            Objects.requireNonNull(entry.value(), "null values are not allowed");
+            int position = claim(entry.source(), entry.index());
+            storeValue(position, entry.value());
+            publish(position);
+        }
+    }
+
+    @Override
+    public Stream<Entry<Integer, V>> since(Integer index) {
+        if (!ordered) {
+            return IndexRanges.since(this, index);
+        }
+        IndexRanges.checkIndex(index);
+        return positions(positionOf(index), size);
+    }
+
+    @Override
+    public Stream<Entry<Integer, V>> range(Integer from, Integer to) {
+        if (!ordered) {
+            return IndexRanges.range(this, from, to);
+        }
+        IndexRanges.checkRange(from, to);
+        return positions(positionOf(from), positionOf(to));
+    }
+
+    @Override
+    public Stream<Entry<Integer, V>> tail(int count) {
+        if (!ordered) {
+            return IndexRanges.tail(this, count);
+        }
+        IndexRanges.checkCount(count);
+        return positions(Math.max(0, size - count), size);
+    }
+
+    private Stream<Entry<Integer, V>> positions(int from, int to) {
+        return StreamSupport.stream(new PositionSpliterator<>(this::entryAt, from, to, ordered), false);
+    }
+
+    /**
+     * Finds the position of the first entry with an index bigger than or equal to the given one
+     */
+    private int positionOf(int index) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (indices[middle] < index) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public Optional<Entry<Integer, V>> latestBySource(String source) {
+        int position = latestPosition(source);
+        return position < 0 ? Optional.empty() : Optional.of(entryAt(position));
+    }
+
+    @Override
+    public Set<Entry<Integer, V>> latestBySources(Set<String> sources) {
+        Set<Entry<Integer, V>> result = new HashSet<>();
+        for (int position : latestPositions(sources)) {
+            result.add(entryAt(position));
+        }
+        return result;
+    }
+
+    @Override
+    public int sourceId(String source) {
+        if (source == null) {
+            throw new IllegalArgumentException("Source can not be null");
+        }
+        return dictionary.find(source);
+    }
+
+    @Override
+    public Optional<Entry<Integer, V>> latestBySourceId(int sourceId) {
+        int position = sourceId < 0 || sourceId >= latestPositions.length ? -1 : latestPositions[sourceId];
+        return position < 0 ? Optional.empty() : Optional.of(entryAt(position));
+    }
+
+    @Override
+    public Set<String> sources() {
+        Set<String> result = new HashSet<>();
+        for (int sourceId = 0; sourceId < latestPositions.length; sourceId++) {
+            if (latestPositions[sourceId] >= 0) {
+                result.add(dictionary.sourceOf(sourceId));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Spliterator<Entry<Integer, V>> spliterator() {
+        return new PositionSpliterator<>(this::entryAt, 0, size, ordered);
+    }
+
+    @Override
+    public void close() {
+        completeAppends();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        AbstractColumnarLog<?> that = (AbstractColumnarLog<?>) o;
+        if (!id.equals(that.id) || size != that.size) {
+            return false;
+        }
+        for (int position = 0; position < size; position++) {
+            if (!entryAt(position).equals(that.entryAt(position))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return id.hashCode();
+    }
+}
@@ -16,6 +16,8 @@ package com.velevedi.baqla;
 
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
 
 /**
  * Abstract Log which has basic methods implemented.
@@ -27,6 +29,7 @@ public abstract class AbstractLog<I extends Comparable<? super I>, V> implements
 
     protected UUID id;
     protected UUID parent;
+    private final AppendPublisher<I, V> publisher = new AppendPublisher<>();
 
     public AbstractLog(UUID id) {
         if (id == null) {
@@ -45,4 +48,51 @@ public abstract class AbstractLog<I extends Comparable<? super I>, V> implements
         return parent;
     }
 
+    /**
+     * Creates a publisher which buffers up to {@link AppendPublisher#DEFAULT_BUFFER_SIZE} entries for a subscriber
+     *
+     * @param executor executor which delivers entries to subscribers
+     * @return publisher of appended entries
+     */
+    @Override
+    public Flow.Publisher<Entry<I, V>> appends(Executor executor) {
+        return appends(executor, AppendPublisher.DEFAULT_BUFFER_SIZE);
+    }
+
+    @Override
+    public Flow.Publisher<Entry<I, V>> appends(Executor executor, int bufferSize) {
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor can not be null");
+        }
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be more than zero");
+        }
+        return subscriber -> publisher.subscribe(subscriber, executor, bufferSize);
+    }
+
+    /**
+     * Passes an entry added to the Log to subscribers. Implementations call it for every entry they add.
+     *
+     * @param entry added entry
+     */
+    protected void appended(Entry<I, V> entry) {
+        publisher.publish(entry);
+    }
+
+    /**
+     * Logs which do not keep entry objects check it to avoid creating entries nobody receives
+     *
+     * @return true if there are subscribers to added entries
+     */
+    protected boolean hasAppendSubscribers() {
+        return publisher.hasSubscribers();
+    }
+
+    /**
+     * Completes subscriptions to added entries. Implementations call it when the Log is closed.
+     */
+    protected void completeAppends() {
+        publisher.complete();
+    }
+
 }
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.velevedi.baqla;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.velevedi.baqla.Log.Entry;
+
+/**
+ * Pushes entries appended to a Log to subscribers. Each subscription buffers entries which were not requested
+ * yet and delivers them with an executor, so appending threads never wait for subscribers.
+ * Entries are delivered to a subscriber one at a time in the order they were announced.
+ * <p>
+ * Failures of subscribers never reach appending threads. A subscription whose buffer overflows or whose
+ * executor rejects a delivery is cancelled and its subscriber receives {@code onError}.
+ * </p>
+ *
+ * @param <I> type of the index of an entry
+ * @param <V> type of a value of an entry
+ * @see Log#appends(Executor)
+ */
+final class AppendPublisher<I extends Comparable<? super I>, V> {
+
+    /**
+     * Number of entries buffered for a subscriber unless the Log is asked for another bound
+     */
+    static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    private final CopyOnWriteArrayList<AppendSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private volatile boolean completed;
+
+    void subscribe(Flow.Subscriber<? super Entry<I, V>> subscriber, Executor executor, int bufferSize) {
+        Objects.requireNonNull(subscriber, "null values are not allowed");
+        AppendSubscription subscription = new AppendSubscription(subscriber, executor, bufferSize);
+        subscriptions.add(subscription);
+        if (completed) {
+            subscription.complete();
+        }
+        subscription.signal();
+    }
+
+    /**
+     * Passes an appended entry to all current subscribers
+     *
+     * @param entry appended entry
+     */
+    void publish(Entry<I, V> entry) {
+        for (AppendSubscription subscription : subscriptions) {
+            subscription.offer(entry);
+        }
+    }
+
+    /**
+     * @return true if there is at least one subscription, so appended entries have to be created
+     */
+    boolean hasSubscribers() {
+        return !subscriptions.isEmpty();
+    }
+
+    /**
+     * Completes all subscriptions after delivering entries they have buffered.
+     * Later subscribers are completed immediately.
+     */
+    void complete() {
+        completed = true;
+        for (AppendSubscription subscription : subscriptions) {
+            subscription.complete();
+        }
+    }
+
+    private final class AppendSubscription implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super Entry<I, V>> subscriber;
+        private final Executor executor;
+        private final Queue<Entry<I, V>> queue = new ConcurrentLinkedQueue<>();
+        private final int bufferSize;
+        private final AtomicInteger buffered = new AtomicInteger();
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger work = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile boolean done;
+        private volatile Throwable error;
+        // accessed by the thread which has moved the work counter from zero
+        private boolean subscribed;
+
+        AppendSubscription(Flow.Subscriber<? super Entry<I, V>> subscriber, Executor executor, int bufferSize) {
+            this.subscriber = subscriber;
+            this.executor = executor;
+            this.bufferSize = bufferSize;
+        }
+
+        void offer(Entry<I, V> entry) {
+            if (cancelled || done || error != null) {
+                return;
+            }
+            if (buffered.incrementAndGet() > bufferSize) {
+                buffered.decrementAndGet();
+                error = new IllegalStateException("Subscriber has fallen behind by more than " + bufferSize + " entries");
+            } else {
+                queue.offer(entry);
+            }
+            signal();
+        }
+
+        void complete() {
+            done = true;
+            signal();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("Number of requested entries must be positive");
+            } else {
+                requested.accumulateAndGet(n, (current, added) -> {
+                    long sum = current + added;
+                    return sum < 0 ? Long.MAX_VALUE : sum;
+                });
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+            signal();
+        }
+
+        /**
+         * Makes sure a drain is scheduled. Only one thread drains a subscription at a time.
+         * When the executor rejects the drain the subscription fails on the calling thread, which owns the
+         * subscription as no drain is running.
+         */
+        void signal() {
+            if (work.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    cancelled = true;
+                    subscriptions.remove(this);
+                    queue.clear();
+                    try {
+                        if (!subscribed) {
+                            subscribed = true;
+                            subscriber.onSubscribe(this);
+                        }
+                        subscriber.onError(e);
+                    } catch (RuntimeException ignored) {
+                        // the subscription is over already
+                    }
+                }
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                try {
+                    if (!subscribed) {
+                        subscribed = true;
+                        subscriber.onSubscribe(this);
+                    }
+                    if (deliver()) {
+                        return;
+                    }
+                } catch (RuntimeException e) {
+                    // a failing subscriber is treated as cancelled
+                    cancelled = true;
+                    subscriptions.remove(this);
+                    queue.clear();
+                    return;
+                }
+                missed = work.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        /**
+         * Delivers requested entries and terminal signals
+         *
+         * @return true if the subscription is over
+         */
+        private boolean deliver() {
+            long limit = requested.get();
+            long delivered = 0;
+            while (delivered != limit && !cancelled && error == null) {
+                Entry<I, V> entry = queue.poll();
+                if (entry == null) {
+                    break;
+                }
+                buffered.decrementAndGet();
+                subscriber.onNext(entry);
+                delivered++;
+            }
+            if (delivered != 0 && limit != Long.MAX_VALUE) {
+                requested.addAndGet(-delivered);
+            }
+            if (cancelled) {
+                queue.clear();
+                return true;
+            }
+            if (error != null) {
+                cancel();
+                queue.clear();
+                subscriber.onError(error);
+                return true;
+            }
+            if (done && queue.isEmpty()) {
+                cancelled = true;
+                subscriptions.remove(this);
+                subscriber.onComplete();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla;
+
+import com.velevedi.baqla.codec.ValueCodec;
+import com.velevedi.baqla.util.SourceDictionary;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Log for big values which keeps encoded values outside of the heap. Values are encoded by a {@link ValueCodec}
+ * into direct buffers of an arena, the Log keeps only a handle of each value next to indices and sources in
+ * its columns. Entries are flyweights which decode their value from the arena every time it is requested,
+ * so large payloads are not retained by the heap unless the caller keeps them.
+ * <p>
+ * Forks share the arena. Filtered forks and compaction copy the retained values into a new arena, the memory of
+ * the old arena is released by the garbage collector when no Log refers to it.
+ * The Log is not thread safe.
+ * </p>
+ *
+ * @param <V> type of a value of an entry
+ */
+public class ArenaLog<V> extends AbstractColumnarLog<V> {
+
+    private static final int DEFAULT_SLAB_SIZE = 16 * 1024 * 1024;
+
+    private final ValueCodec<V> codec;
+    private final int slabSize;
+    private ValueArena arena;
+
+    public ArenaLog(ValueCodec<V> codec) {
+        this(UUID.randomUUID(), DEFAULT_SLAB_SIZE, codec);
+    }
+
+    /**
+     * @param id       id of the Log
+     * @param slabSize size in bytes of the direct buffers values are allocated in
+     * @param codec    codec of values
+     */
+    public ArenaLog(UUID id, int slabSize, ValueCodec<V> codec) {
+        this(id, new SourceDictionary(), slabSize, codec);
+    }
+
+    private ArenaLog(UUID id, SourceDictionary dictionary, int slabSize, ValueCodec<V> codec) {
+        super(id, dictionary, new long[INITIAL_CAPACITY]);
+        if (codec == null) {
+            throw new IllegalArgumentException("Value codec can not be null");
+        }
+        this.codec = codec;
+        this.slabSize = slabSize;
+        this.arena = new ValueArena(slabSize);
+    }
+
+    @Override
+    ArenaLog<V> newLog(UUID id, SourceDictionary dictionary) {
+        return new ArenaLog<>(id, dictionary, slabSize, codec);
+    }
+
+    /**
+     * Forks the Log sharing its columns and its arena with the new Log
+     *
+     * @return new instance of the Log
+     */
+    @Override
+    public Log<Integer, V> fork() {
+        ArenaLog<V> result = (ArenaLog<V>) super.fork();
+        result.arena = arena;
+        return result;
+    }
+
+    @Override
+    V valueAt(int position) {
+        long handle = ((long[]) column())[position];
+        return codec.decode(arena.slab(handle), ValueArena.offset(handle), arena.length(handle));
+    }
+
+    @Override
+    void storeValue(int position, V value) {
+        int length = codec.sizeOf(value);
+        long handle = arena.allocate(length);
+        ByteBuffer record = arena.record(handle);
+        codec.encode(value, record);
+        if (record.position() != ValueArena.offset(handle) + length) {
+            throw new IllegalStateException("Value codec wrote unexpected number of bytes");
+        }
+        ((long[]) column())[position] = handle;
+    }
+
+    /**
+     * Copies encoded bytes of a value into the arena of this Log without decoding them
+     */
+    @Override
+    void copyValue(AbstractColumnarLog<V> from, int fromPosition, int position) {
+        ValueArena source = ((ArenaLog<V>) from).arena;
+        long handle = ((long[]) from.column())[fromPosition];
+        if (source != arena) {
+            ByteBuffer bytes = source.record(handle);
+            long copy = arena.allocate(bytes.remaining());
+            arena.record(copy).put(bytes);
+            handle = copy;
+        }
+        ((long[]) column())[position] = handle;
+    }
+
+    @Override
+    Entry<Integer, V> entryAt(int position) {
+        return new ArenaEntry<>(this, position);
+    }
+
+    /**
+     * Number of bytes held outside of the heap by the arena of this Log. The arena is shared with forks
+     * of the Log.
+     *
+     * @return number of allocated bytes
+     */
+    public long allocatedBytes() {
+        return arena.allocated();
+    }
+
+    /**
+     * Entry which refers to a position in the columns of the Log and decodes its value on every access
+     */
+    private static final class ArenaEntry<V> implements Entry<Integer, V> {
+
+        private final ArenaLog<V> log;
+        private final int position;
+
+        ArenaEntry(ArenaLog<V> log, int position) {
+            this.log = log;
+            this.position = position;
+        }
+
+        @Override
+        public String source() {
+            return log.sourceAt(position);
+        }
+
+        @Override
+        public Integer index() {
+            return log.indexAt(position);
+        }
+
+        @Override
+        public V value() {
+            return log.valueAt(position);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            ArenaEntry<?> that = (ArenaEntry<?>) o;
+            if (log == that.log && position == that.position) {
+                return true;
+            }
+            return log.indexAt(position) == that.log.indexAt(that.position) &&
+                    source().equals(that.source()) &&
+                    value().equals(that.value());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(source(), index(), value());
+        }
+    }
+}
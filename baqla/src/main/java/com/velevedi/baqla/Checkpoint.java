@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.velevedi.baqla;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * State of a {@link MappedSegmentLog} saved to open the Log without scanning its segments.
+ * The file is:
+ * <pre>
+ * | magic (int) | index limit (int) | number of segments (int) |
+ * | segment number (int) | write position (int) | number of entries (int) | ...
+ * | number of sources (int) | source identifier (int) | position of the latest entry (int) | ...
+ * | CRC32 (int) |
+ * </pre>
+ * The size of a checkpoint depends on the number of segments and sources, not on the number of entries.
+ * A checkpoint is replaced atomically, a damaged checkpoint is ignored.
+ */
+final class Checkpoint {
+
+    private static final int MAGIC = 0x42414B32;
+
+    final int indexLimit;
+    final List<SegmentState> segments;
+    final Map<Integer, Integer> latestPositions;
+
+    Checkpoint(int indexLimit, List<SegmentState> segments, Map<Integer, Integer> latestPositions) {
+        this.indexLimit = indexLimit;
+        this.segments = segments;
+        this.latestPositions = latestPositions;
+    }
+
+    /**
+     * Reads a checkpoint
+     *
+     * @param file file of the checkpoint
+     * @return the checkpoint or null if the file does not exist or is damaged
+     * @throws IOException if the file can not be read
+     */
+    static Checkpoint read(Path file) throws IOException {
+        ByteBuffer content;
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            content = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        int dataSize = content.capacity() - Integer.BYTES;
+        if (dataSize < 4 * Integer.BYTES || content.getInt(dataSize) != checksum(content, dataSize)) {
+            return null;
+        }
+        try {
+            if (content.getInt() != MAGIC) {
+                return null;
+            }
+            int indexLimit = content.getInt();
+            int segmentCount = content.getInt();
+            List<SegmentState> segments = new ArrayList<>();
+            for (int i = 0; i < segmentCount; i++) {
+                int number = content.getInt();
+                int writePosition = content.getInt();
+                int count = content.getInt();
+                if (writePosition < 0 || count < 0) {
+                    return null;
+                }
+                segments.add(new SegmentState(number, writePosition, count));
+            }
+            int sourceCount = content.getInt();
+            Map<Integer, Integer> latestPositions = new HashMap<>();
+            for (int i = 0; i < sourceCount; i++) {
+                latestPositions.put(content.getInt(), content.getInt());
+            }
+            return new Checkpoint(indexLimit, segments, latestPositions);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the checkpoint into a temporary file and moves it over the existing one
+     *
+     * @param file file of the checkpoint
+     * @throws IOException if the checkpoint can not be written
+     */
+    void write(Path file) throws IOException {
+        int size = 5 * Integer.BYTES + 3 * Integer.BYTES * segments.size()
+                + 2 * Integer.BYTES * latestPositions.size();
+        ByteBuffer content = ByteBuffer.allocate(size);
+        content.putInt(MAGIC);
+        content.putInt(indexLimit);
+        content.putInt(segments.size());
+        for (SegmentState segment : segments) {
+            content.putInt(segment.number);
+            content.putInt(segment.writePosition);
+            content.putInt(segment.count);
+        }
+        content.putInt(latestPositions.size());
+        for (Map.Entry<Integer, Integer> latest : latestPositions.entrySet()) {
+            content.putInt(latest.getKey());
+            content.putInt(latest.getValue());
+        }
+        content.putInt(checksum(content, content.position()));
+        content.flip();
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, CREATE, TRUNCATE_EXISTING, WRITE)) {
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, file, REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+
+    private static int checksum(ByteBuffer content, int length) {
+        CRC32 crc = new CRC32();
+        ByteBuffer view = content.duplicate();
+        view.limit(length).position(0);
+        crc.update(view);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Records of a segment known at the moment of the checkpoint
+     */
+    static final class SegmentState {
+
+        final int number;
+        final int writePosition;
+        final int count;
+
+        SegmentState(int number, int writePosition, int count) {
+            this.number = number;
+            this.writePosition = writePosition;
+            this.count = count;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla;
+
+import com.velevedi.baqla.util.SourceDictionary;
+
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Log which keeps indices, identifiers of sources and values in separate arrays instead of one object per entry.
+ * Entries are created on access as flyweights which refer to a position in the columns and read the columns
+ * when their fields are requested, so a full scan walks the arrays rather than a graph of entry objects.
+ * <p>
+ * Forks share columns with the Log they were forked from until one of them appends.
+ * The Log is not thread safe.
+ * </p>
+ *
+ * @param <V> type of a value of an entry
+ */
+public class ColumnarLog<V> extends AbstractColumnarLog<V> {
+
+    public ColumnarLog() {
+        this(UUID.randomUUID());
+    }
+
+    public ColumnarLog(UUID id) {
+        this(id, new SourceDictionary());
+    }
+
+    private ColumnarLog(UUID id, SourceDictionary dictionary) {
+        super(id, dictionary, new Object[INITIAL_CAPACITY]);
+    }
+
+    @Override
+    ColumnarLog<V> newLog(UUID id, SourceDictionary dictionary) {
+        return new ColumnarLog<>(id, dictionary);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    V valueAt(int position) {
+        return (V) ((Object[]) column())[position];
+    }
+
+    @Override
+    void storeValue(int position, V value) {
+        ((Object[]) column())[position] = value;
+    }
+
+    @Override
+    Entry<Integer, V> entryAt(int position) {
+        return new ColumnEntry<>(this, position);
+    }
+
+    /**
+     * Entry which reads its fields from the columns of the Log. Positions below the size of the Log never change,
+     * so the entry stays valid when the Log grows or copies its columns.
+     */
+    private static final class ColumnEntry<V> implements Entry<Integer, V> {
+
+        private final ColumnarLog<V> log;
+        private final int position;
+
+        ColumnEntry(ColumnarLog<V> log, int position) {
+            this.log = log;
+            this.position = position;
+        }
+
+        @Override
+        public String source() {
+            return log.sourceAt(position);
+        }
+
+        @Override
+        public Integer index() {
+            return log.indexAt(position);
+        }
+
+        @Override
+        public V value() {
+            return log.valueAt(position);
+        }
+
+        @Override
+        public int compareTo(Entry<Integer, V> e) {
+            if (e instanceof ColumnEntry) {
+                ColumnEntry<V> that = (ColumnEntry<V>) e;
+                return Integer.compare(log.indexAt(position), that.log.indexAt(that.position));
+            }
+            return index().compareTo(e.index());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            ColumnEntry<?> that = (ColumnEntry<?>) o;
+            if (log == that.log && position == that.position) {
+                return true;
+            }
+            return log.indexAt(position) == that.log.indexAt(that.position) &&
+                    source().equals(that.source()) &&
+                    value().equals(that.value());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(source(), index(), value());
+        }
+    }
+}
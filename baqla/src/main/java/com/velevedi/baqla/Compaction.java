@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+import static com.velevedi.baqla.Log.Entry;
+
+/**
+ * Selects entries which survive compaction of a Log.
+ *
+ * @see Log#compact(int)
+ */
+final class Compaction {
+
+    private Compaction() {
+    }
+
+    /**
+     * Creates a predicate which accepts the latest entry of each source and the most recent entries of the Log.
+     * The predicate reflects the state of the Log at the time of the call.
+     *
+     * @param log          Log to compact
+     * @param retainedTail number of the most recent entries to accept
+     * @param <I>          type of the index of an entry
+     * @param <V>          type of a value of an entry
+     * @return predicate accepting entries to keep
+     */
+    static <I extends Comparable<? super I>, V> Predicate<Entry<I, V>> retained(Log<I, V> log, int retainedTail) {
+        if (retainedTail < 0) {
+            throw new IllegalArgumentException("Number of retained entries can not be negative");
+        }
+        Map<String, I> latest = new HashMap<>();
+        for (Entry<I, V> entry : log.latestBySources(log.sources())) {
+            latest.put(entry.source(), entry.index());
+        }
+        I threshold = tailThreshold(log, retainedTail);
+        return entry -> entry.index().equals(latest.get(entry.source()))
+                || (threshold != null && entry.index().compareTo(threshold) >= 0);
+    }
+
+    /**
+     * Finds the smallest index among the most recent entries
+     *
+     * @return the smallest index of the tail or null if the tail is empty
+     */
+    private static <I extends Comparable<? super I>, V> I tailThreshold(Log<I, V> log, int retainedTail) {
+        if (retainedTail == 0) {
+            return null;
+        }
+        PriorityQueue<I> biggest = new PriorityQueue<>(retainedTail);
+        for (Entry<I, V> entry : log) {
+            if (biggest.size() < retainedTail) {
+                biggest.add(entry.index());
+            } else if (entry.index().compareTo(biggest.peek()) > 0) {
+                biggest.poll();
+                biggest.add(entry.index());
+            }
+        }
+        return biggest.peek();
+    }
+}
@@ -0,0 +1,496 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Log implementation which lets many threads add entries at the same time without locking.
+ * <p>
+ * Entries are stored in slots of lazily allocated chunks. A thread adding an entry claims a slot with a single
+ * atomic increment, the number of the slot defines the index of the entry. Claimed slots are filled in parallel,
+ * readers see only the prefix of the Log where all slots have been filled. So an entry becomes visible once all
+ * entries with smaller indices are visible.
+ * </p>
+ *
+ * @param <V> type of a value of an entry
+ */
+public class ConcurrentLog<V> extends AbstractLog<Integer, V> {
+
+    private static final int LEAF_BITS = 10;
+    private static final int MIDDLE_BITS = 10;
+    private static final int TOP_BITS = 31 - LEAF_BITS - MIDDLE_BITS;
+    private static final int LEAF_MASK = (1 << LEAF_BITS) - 1;
+    private static final int MIDDLE_MASK = (1 << MIDDLE_BITS) - 1;
+
+    private final AtomicReferenceArray<AtomicReferenceArray<AtomicReferenceArray<Entry<Integer, V>>>> chunks =
+            new AtomicReferenceArray<>(1 << TOP_BITS);
+
+    /**
+     * Number of slots claimed by writers
+     */
+    private final AtomicInteger claimed = new AtomicInteger();
+
+    /**
+     * Length of the prefix where all slots are filled
+     */
+    private final AtomicInteger published = new AtomicInteger();
+
+    /**
+     * The biggest index + 1 of the entries added with their own indices
+     */
+    private final AtomicInteger addedIndexLimit = new AtomicInteger();
+
+    private final Map<String, Entry<Integer, V>> latest = new ConcurrentHashMap<>();
+
+    /**
+     * Index of the entry added to the first slot
+     */
+    private final int indexBase;
+
+    /**
+     * Set before publishing an entry whose index is not bigger than the index of the entry in the slot before it.
+     * Readers read the visible prefix before the flag, so an ordered prefix is never seen unordered.
+     */
+    private volatile boolean unordered;
+
+    public ConcurrentLog() {
+        this(UUID.randomUUID());
+    }
+
+    public ConcurrentLog(UUID id) {
+        this(id, 0);
+    }
+
+    private ConcurrentLog(UUID id, int indexBase) {
+        super(id);
+        this.indexBase = indexBase;
+    }
+
+    @Override
+    public Log<Integer, V> fork(Predicate<Entry<Integer, V>> filter) {
+        ConcurrentLog<V> result = copy(UUID.randomUUID(), filter);
+        result.parent = this.id;
+        return result;
+    }
+
+    /**
+     * Compacts the visible prefix of the Log into a new Log with the same id and parent
+     *
+     * @param retainedTail number of the most recent entries to keep in addition to the latest entries per source
+     * @return compacted Log
+     */
+    @Override
+    public Log<Integer, V> compact(int retainedTail) {
+        ConcurrentLog<V> result = copy(id, Compaction.retained(this, retainedTail));
+        result.parent = this.parent;
+        return result;
+    }
+
+    private ConcurrentLog<V> copy(UUID newId, Predicate<Entry<Integer, V>> filter) {
+        List<Entry<Integer, V>> entries = new ArrayList<>();
+        for (Entry<Integer, V> entry : this) {
+            if (filter.test(entry)) {
+                entries.add(entry);
+            }
+        }
+        // indices of entries added to the copy continue the sequence of this Log
+        ConcurrentLog<V> result = new ConcurrentLog<>(newId, Math.max(0, indexLimit() - entries.size()));
+        result.addAll(entries);
+        return result;
+    }
+
+    private int indexLimit() {
+        return Math.max(indexBase + claimed.get(), addedIndexLimit.get());
+    }
+
+    @Override
+    public int size() {
+        return published.get();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return published.get() == 0;
+    }
+
+    @Override
+    public Iterator<Entry<Integer, V>> iterator() {
+        return new SlotIterator(published.get());
+    }
+
+    /**
+     * Walks the visible prefix backwards unless entries were added with indices which do not follow their slots
+     *
+     * @return an iterator over Log entries in descending order of indices
+     */
+    @Override
+    public Iterator<Entry<Integer, V>> descendingIterator() {
+        int bound = published.get();
+        if (unordered) {
+            return IndexRanges.descending(this);
+        }
+        return new DescendingSlotIterator(bound);
+    }
+
+    @Override
+    public Stream<Entry<Integer, V>> since(Integer index) {
+        int bound = published.get();
+        if (unordered) {
+            return IndexRanges.since(this, index);
+        }
+        IndexRanges.checkIndex(index);
+        return slots(positionOf(index, bound), bound);
+    }
+
+    @Override
+    public Stream<Entry<Integer, V>> range(Integer from, Integer to) {
+        int bound = published.get();
+        if (unordered) {
+            return IndexRanges.range(this, from, to);
+        }
+        IndexRanges.checkRange(from, to);
+        return slots(positionOf(from, bound), positionOf(to, bound));
+    }
+
+    @Override
+    public Stream<Entry<Integer, V>> tail(int count) {
+        int bound = published.get();
+        if (unordered) {
+            return IndexRanges.tail(this, count);
+        }
+        IndexRanges.checkCount(count);
+        return slots(Math.max(0, bound - count), bound);
+    }
+
+    private Stream<Entry<Integer, V>> slots(int from, int to) {
+        return StreamSupport.stream(new PositionSpliterator<>(this::slot, from, to, true), false);
+    }
+
+    /**
+     * Finds the first visible slot with an index bigger than or equal to the given one
+     */
+    private int positionOf(int index, int bound) {
+        int low = 0;
+        int high = bound;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (slot(middle).index() < index) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public void add(String source, V value) {
+        // arguments are checked before claiming a slot, an unfilled slot would hide all entries after it
+        Objects.requireNonNull(source, "null values are not allowed");
+        Objects.requireNonNull(value, "null values are not allowed");
+        int slot = claim(1);
+        Entry<Integer, V> entry = new ComparableIdEntry<>(source, indexBase + slot, value);
+        fill(slot, entry);
+        publish();
+        appended(entry);
+    }
+
+    @Override
+    public void addAll(Collection<Entry<Integer, V>> entries) {
+        if (entries == null) {
+            throw new IllegalArgumentException("Unable to add null entries");
+        }
+        if (entries.isEmpty()) {
+            return;
+        }
+        List<Entry<Integer, V>> copy = new ArrayList<>(entries);
+        // entries are checked before claiming slots, an unfilled slot would hide all entries after it
+        for (Entry<Integer, V> entry : copy) {
+            if (entry == null) {
+                throw new IllegalArgumentException("Unable to add null entry");
+            }
+            if (entry.index() == null || entry.source() == null || entry.value() == null) {
+                throw new IllegalArgumentException("Unable to add entry with null index, source or value");
+            }
+        }
+        int slot = claim(copy.size());
+        int limit = 0;
+        for (Entry<Integer, V> entry : copy) {
+            fill(slot++, entry);
+            limit = Math.max(limit, entry.index() + 1);
+        }
+        addedIndexLimit.accumulateAndGet(limit, Math::max);
+        publish();
+        for (Entry<Integer, V> entry : copy) {
+            appended(entry);
+        }
+    }
+
+    /**
+     * Adds values of one source claiming slots for all of them with one atomic increment
+     *
+     * @param source the source which produced the values
+     * @param values values to store in the Log in the order of their indices
+     */
+    @Override
+    public void addAll(String source, List<V> values) {
+        if (values == null) {
+            throw new IllegalArgumentException("Unable to add null values");
+        }
+        Objects.requireNonNull(source, "null values are not allowed");
+        Object[] batch = values.toArray();
+        if (batch.length == 0) {
+            return;
+        }
+        for (Object value : batch) {
+            Objects.requireNonNull(value, "null values are not allowed");
+        }
+        int slot = claim(batch.length);
+        List<Entry<Integer, V>> added = new ArrayList<>(batch.length);
+        for (Object value : batch) {
+            @SuppressWarnings("unchecked")
+            Entry<Integer, V> entry = new ComparableIdEntry<>(source, indexBase + slot, (V) value);
+            fill(slot++, entry);
+            added.add(entry);
+        }
+        publish();
+        if (hasAppendSubscribers()) {
+            for (Entry<Integer, V> entry : added) {
+                appended(entry);
+            }
+        }
+    }
+
+    /**
+     * Claims a range of slots for the calling thread
+     *
+     * @param count number of slots to claim
+     * @return the first claimed slot
+     */
+    private int claim(int count) {
+        int slot = claimed.getAndAdd(count);
+        if (slot < 0 || slot > Integer.MAX_VALUE - count || indexBase > Integer.MAX_VALUE - slot - count) {
+            claimed.set(Integer.MAX_VALUE);
+            throw new IndexOutOfBoundsException("Maximum capacity has been reached");
+        }
+        return slot;
+    }
+
+    private void fill(int slot, Entry<Integer, V> entry) {
+        leaf(slot, true).set(slot & LEAF_MASK, entry);
+    }
+
+    private Entry<Integer, V> slot(int slot) {
+        AtomicReferenceArray<Entry<Integer, V>> leaf = leaf(slot, false);
+        return leaf == null ? null : leaf.get(slot & LEAF_MASK);
+    }
+
+    private AtomicReferenceArray<Entry<Integer, V>> leaf(int slot, boolean create) {
+        int top = slot >>> (LEAF_BITS + MIDDLE_BITS);
+        AtomicReferenceArray<AtomicReferenceArray<Entry<Integer, V>>> middle = chunks.get(top);
+        if (middle == null) {
+            if (!create) {
+                return null;
+            }
+            chunks.compareAndSet(top, null, new AtomicReferenceArray<>(1 << MIDDLE_BITS));
+            middle = chunks.get(top);
+        }
+        int index = (slot >>> LEAF_BITS) & MIDDLE_MASK;
+        AtomicReferenceArray<Entry<Integer, V>> leaf = middle.get(index);
+        if (leaf == null) {
+            if (!create) {
+                return null;
+            }
+            middle.compareAndSet(index, null, new AtomicReferenceArray<>(1 << LEAF_BITS));
+            leaf = middle.get(index);
+        }
+        return leaf;
+    }
+
+    /**
+     * Moves the end of the visible prefix over the slots which have been filled. The thread which moves the end
+     * updates latest entries of the slots it has made visible, so latest entries never refer to entries readers
+     * can not see yet. Indices of the slots are checked against the slots before them on the way, so entries
+     * added with their own indices keep the Log ordered as long as the indices grow.
+     */
+    private void publish() {
+        while (true) {
+            int current = published.get();
+            int limit = claimed.get();
+            int end = current;
+            Entry<Integer, V> previous = current == 0 ? null : slot(current - 1);
+            boolean ordered = true;
+            while (end < limit) {
+                Entry<Integer, V> entry = slot(end);
+                if (entry == null) {
+                    break;
+                }
+                ordered = ordered && (previous == null || previous.index() < entry.index());
+                previous = entry;
+                end++;
+            }
+            if (end == current) {
+                return;
+            }
+            if (!ordered) {
+                unordered = true;
+            }
+            if (published.compareAndSet(current, end)) {
+                updateLatest(current, end);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Updates latest entries with the slots from one to another. Of a run of slots with the same source
+     * only the last one is used.
+     */
+    private void updateLatest(int from, int to) {
+        Entry<Integer, V> entry = slot(from);
+        for (int i = from + 1; i < to; i++) {
+            Entry<Integer, V> next = slot(i);
+            if (next.source() != entry.source()) {
+                updateLatest(entry);
+            }
+            entry = next;
+        }
+        updateLatest(entry);
+    }
+
+    private void updateLatest(Entry<Integer, V> entry) {
+        latest.merge(entry.source(), entry, (current, added) -> added.compareTo(current) >= 0 ? added : current);
+    }
+
+    @Override
+    public Optional<Entry<Integer, V>> latestBySource(String source) {
+        if (source == null) {
+            throw new IllegalArgumentException("Source can not be null");
+        }
+        return Optional.ofNullable(latest.get(source));
+    }
+
+    @Override
+    public Set<Entry<Integer, V>> latestBySources(Set<String> sources) {
+        if (sources == null) {
+            throw new IllegalArgumentException("Sources can not be null");
+        }
+        Set<Entry<Integer, V>> result = new HashSet<>();
+        for (String source : sources) {
+            Entry<Integer, V> entry = latest.get(source);
+            if (entry != null) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Set<String> sources() {
+        return Collections.unmodifiableSet(latest.keySet());
+    }
+
+    @Override
+    public Spliterator<Entry<Integer, V>> spliterator() {
+        int bound = published.get();
+        return new PositionSpliterator<>(this::slot, 0, bound, !unordered);
+    }
+
+    @Override
+    public void close() {
+        completeAppends();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ConcurrentLog<?> that = (ConcurrentLog<?>) o;
+        if (!id.equals(that.id) || size() != that.size()) {
+            return false;
+        }
+        Iterator<?> iterator = that.iterator();
+        for (Entry<Integer, V> entry : this) {
+            if (!iterator.hasNext() || !entry.equals(iterator.next())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return id.hashCode();
+    }
+
+    /**
+     * Iterates over the slots of the visible prefix
+     */
+    private class SlotIterator implements Iterator<Entry<Integer, V>> {
+
+        private final int bound;
+        private int slot;
+
+        SlotIterator(int bound) {
+            this.bound = bound;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return slot < bound;
+        }
+
+        @Override
+        public Entry<Integer, V> next() {
+            if (slot >= bound) {
+                throw new NoSuchElementException();
+            }
+            return slot(slot++);
+        }
+    }
+
+    /**
+     * Iterates over the slots of the visible prefix backwards
+     */
+    private class DescendingSlotIterator implements Iterator<Entry<Integer, V>> {
+
+        private int slot;
+
+        DescendingSlotIterator(int bound) {
+            this.slot = bound;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return slot > 0;
+        }
+
+        @Override
+        public Entry<Integer, V> next() {
+            if (slot <= 0) {
+                throw new NoSuchElementException();
+            }
+            return slot(--slot);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.velevedi.baqla;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over a random access list from the last element to the first one. Elements can not be removed.
+ * The iterator walks positions of the elements the list had when the iterator was created, so elements appended
+ * to the list later are not visited and do not break the iteration.
+ *
+ * @param <T> type to iterate over
+ */
+final class DescendingIterator<T> implements Iterator<T> {
+
+    private final List<T> list;
+    private int position;
+
+    DescendingIterator(List<T> list) {
+        this.list = list;
+        this.position = list.size();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return position > 0;
+    }
+
+    @Override
+    public T next() {
+        if (position <= 0) {
+            throw new NoSuchElementException();
+        }
+        return list.get(--position);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla;
+
+import com.velevedi.baqla.util.SourceDictionary;
+
+import java.util.Arrays;
+import java.util.OptionalDouble;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.DoubleStream;
+
+/**
+ * Log of double values kept in a double[] column. Values added with {@link #addDouble(String, double)} and read with
+ * {@link #latestDouble(String)} or {@link #values()} are never boxed. The Log is still available through
+ * the {@link Log} interface, entries are created when they are read.
+ */
+public class DoubleLog extends AbstractColumnarLog<Double> {
+
+    public DoubleLog() {
+        this(UUID.randomUUID());
+    }
+
+    public DoubleLog(UUID id) {
+        this(id, new SourceDictionary());
+    }
+
+    private DoubleLog(UUID id, SourceDictionary dictionary) {
+        super(id, dictionary, new double[INITIAL_CAPACITY]);
+    }
+
+    @Override
+    DoubleLog newLog(UUID id, SourceDictionary dictionary) {
+        return new DoubleLog(id, dictionary);
+    }
+
+    @Override
+    Double valueAt(int position) {
+        return ((double[]) column())[position];
+    }
+
+    @Override
+    void storeValue(int position, Double value) {
+        ((double[]) column())[position] = value;
+    }
+
+    /**
+     * Adds a value to the Log without boxing it
+     *
+     * @param source source of the value
+     * @param value  value to add
+     */
+    public void addDouble(String source, double value) {
+        int position = claim(source, nextIndex());
+        ((double[]) column())[position] = value;
+        publish(position);
+    }
+
+    /**
+     * Finds the latest value of a source
+     *
+     * @param source source of the value
+     * @return the latest value or empty if the source has no entries in the Log
+     */
+    public OptionalDouble latestDouble(String source) {
+        int position = latestPosition(source);
+        return position < 0 ? OptionalDouble.empty() : OptionalDouble.of(((double[]) column())[position]);
+    }
+
+    /**
+     * Values of all entries in the order they were added
+     *
+     * @return stream of values existing at the time of the call
+     */
+    public DoubleStream values() {
+        int end = size();
+        return Arrays.stream((double[]) column(), 0, end);
+    }
+
+    /**
+     * Runs a task on the latest values of the given sources and adds its result to the Log without boxing
+     * arguments and the result.
+     *
+     * @param task    task to run
+     * @param sources sources of the arguments of the task
+     */
+    public void run(DoubleTask task, Set<String> sources) {
+        if (task == null) {
+            throw new IllegalArgumentException("Task can not be null");
+        }
+        int[] positions = latestPositions(sources);
+        double[] column = (double[]) column();
+        String[] argumentSources = new String[positions.length];
+        double[] arguments = new double[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            argumentSources[i] = sourceAt(positions[i]);
+            arguments[i] = column[positions[i]];
+        }
+        addDouble(task.id(), task.callOnValues(argumentSources, arguments));
+    }
+}
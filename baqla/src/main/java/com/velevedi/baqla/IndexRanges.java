@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.velevedi.baqla;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.Stream;
+
+import static com.velevedi.baqla.Log.Entry;
+import static java.util.Comparator.reverseOrder;
+
+/**
+ * Selects entries of a Log by their indices scanning the whole Log. Implementations which keep entries
+ * ordered by index use these methods when the order can not be relied on.
+ *
+ * @see Log#since(Comparable)
+ * @see Log#range(Comparable, Comparable)
+ * @see Log#tail(int)
+ * @see Log#descendingIterator()
+ */
+final class IndexRanges {
+
+    private IndexRanges() {
+    }
+
+    static <I extends Comparable<? super I>, V> Stream<Entry<I, V>> since(Log<I, V> log, I index) {
+        checkIndex(index);
+        return log.stream()
+                .filter(e -> e.index().compareTo(index) >= 0)
+                .sorted();
+    }
+
+    static <I extends Comparable<? super I>, V> Stream<Entry<I, V>> range(Log<I, V> log, I from, I to) {
+        checkRange(from, to);
+        return log.stream()
+                .filter(e -> e.index().compareTo(from) >= 0 && e.index().compareTo(to) < 0)
+                .sorted();
+    }
+
+    static <I extends Comparable<? super I>, V> Stream<Entry<I, V>> tail(Log<I, V> log, int count) {
+        checkCount(count);
+        if (count == 0) {
+            return Stream.empty();
+        }
+        PriorityQueue<Entry<I, V>> biggest = new PriorityQueue<>(count);
+        for (Entry<I, V> entry : log) {
+            if (biggest.size() < count) {
+                biggest.add(entry);
+            } else if (entry.compareTo(biggest.peek()) > 0) {
+                biggest.poll();
+                biggest.add(entry);
+            }
+        }
+        List<Entry<I, V>> result = new ArrayList<>(biggest);
+        result.sort(null);
+        return result.stream();
+    }
+
+    static <I extends Comparable<? super I>, V> Iterator<Entry<I, V>> descending(Log<I, V> log) {
+        return log.stream()
+                .sorted(reverseOrder())
+                .iterator();
+    }
+
+    static void checkIndex(Object index) {
+        if (index == null) {
+            throw new IllegalArgumentException("Index can not be null");
+        }
+    }
+
+    static <I extends Comparable<? super I>> void checkRange(I from, I to) {
+        checkIndex(from);
+        checkIndex(to);
+        if (from.compareTo(to) > 0) {
+            throw new IllegalArgumentException("Start of the range [" + from + "] is after its end [" + to + "]");
+        }
+    }
+
+    static void checkCount(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Number of entries can not be negative");
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.velevedi.baqla;
+
+import com.velevedi.baqla.util.SourceDictionary;
+
+import java.util.*;
+
+import static com.velevedi.baqla.Log.Entry;
+
+/**
+ * Keeps the latest entry per source. Log implementations update it on every append so the latest values
+ * could be found without scanning the whole Log.
+ * <p>
+ * Sources are registered in a {@link SourceDictionary} and the latest entries are kept in an array indexed by
+ * source identifiers. Forks of a Log share the dictionary, so entries shared by the forks keep the same
+ * identifiers of sources.
+ * </p>
+ *
+ * @param <I> type of the index of an entry
+ * @param <V> type of a value of an entry
+ */
+class LatestEntries<I extends Comparable<? super I>, V> {
+
+    private final SourceDictionary dictionary;
+    private Entry<I, V>[] latest;
+
+    LatestEntries() {
+        this(new SourceDictionary());
+    }
+
+    @SuppressWarnings("unchecked")
+    LatestEntries(SourceDictionary dictionary) {
+        this.dictionary = dictionary;
+        this.latest = (Entry<I, V>[]) new Entry<?, ?>[Math.max(8, dictionary.size())];
+    }
+
+    /**
+     * Creates a copy of the latest entries of another Log. The copy takes time proportional to
+     * the number of sources and shares the dictionary of the other Log.
+     *
+     * @param other entries to copy
+     */
+    LatestEntries(LatestEntries<I, V> other) {
+        this.dictionary = other.dictionary;
+        this.latest = other.latest.clone();
+    }
+
+    SourceDictionary dictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Gets the identifier of the source of an entry to be added registering the source if necessary.
+     * Logs look the source up once per added entry: the identifier gives the canonical instance of the source
+     * with {@link #sourceOf(int)} and is passed to {@link #update(int, Entry)}.
+     *
+     * @param source source of an entry to be added
+     * @return identifier of the source
+     */
+    int register(String source) {
+        Objects.requireNonNull(source, "null values are not allowed");
+        return dictionary.idOf(source);
+    }
+
+    /**
+     * @param id identifier of a registered source
+     * @return canonical instance of the source
+     */
+    String sourceOf(int id) {
+        return dictionary.sourceOf(id);
+    }
+
+    /**
+     * @param source source to find
+     * @return identifier of the source or -1 if the source is not registered
+     */
+    int find(String source) {
+        if (source == null) {
+            throw new IllegalArgumentException("Source can not be null");
+        }
+        return dictionary.find(source);
+    }
+
+    /**
+     * Registers newly added entry. The entry replaces the current latest entry of its source if the index of
+     * the new entry is not less than the current one.
+     *
+     * @param entry added entry
+     */
+    void update(Entry<I, V> entry) {
+        update(dictionary.idOf(entry.source()), entry);
+    }
+
+    /**
+     * Registers newly added entry of a source registered already
+     *
+     * @param id    identifier of the source of the entry
+     * @param entry added entry
+     */
+    void update(int id, Entry<I, V> entry) {
+        if (id >= latest.length) {
+            latest = Arrays.copyOf(latest, Math.max(latest.length * 2, id + 1));
+        }
+        Entry<I, V> current = latest[id];
+        if (current == null || entry.compareTo(current) >= 0) {
+            latest[id] = entry;
+        }
+    }
+
+    Optional<Entry<I, V>> get(String source) {
+        if (source == null) {
+            throw new IllegalArgumentException("Source can not be null");
+        }
+        return Optional.ofNullable(latestOf(source));
+    }
+
+    Set<Entry<I, V>> get(Set<String> sources) {
+        if (sources == null) {
+            throw new IllegalArgumentException("Sources can not be null");
+        }
+        Set<Entry<I, V>> result = new HashSet<>();
+        for (String source : sources) {
+            Entry<I, V> entry = latestOf(source);
+            if (entry != null) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param id identifier of a source
+     * @return the latest entry of the source or null if the source has no entries
+     */
+    Entry<I, V> get(int id) {
+        return id < 0 || id >= latest.length ? null : latest[id];
+    }
+
+    private Entry<I, V> latestOf(String source) {
+        return get(dictionary.find(source));
+    }
+
+    Set<String> sources() {
+        Set<String> result = new HashSet<>();
+        for (int id = 0; id < latest.length; id++) {
+            if (latest[id] != null) {
+                result.add(dictionary.sourceOf(id));
+            }
+        }
+        return Collections.unmodifiableSet(result);
+    }
+}
@@ -16,25 +16,37 @@ package com.velevedi.baqla;
 
 import com.velevedi.baqla.util.IndexFactory;
 import com.velevedi.baqla.util.IntegerIndexFactory;
+import com.velevedi.baqla.util.PersistentVector;
 
 import java.io.Closeable;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.util.*;
 import java.util.function.Predicate;
-
-import static java.util.Comparator.reverseOrder;
-import static java.util.stream.Collectors.toList;
+import java.util.stream.Stream;
 
 /**
  * Log implementation which uses List as a data store to save entries.
+ * While entries are added in the order of their indices, index queries use binary search
+ * over random access lists.
  *
  * @param <V> type of a value of an entry
  */
 public class ListLog<V> extends AbstractLog<Integer, V> {
 
     private final List<Entry<Integer, V>> store;
-    private final IndexFactory<Integer> indexFactory = new IntegerIndexFactory();
+    private final IndexFactory<Integer> indexFactory;
+    private final LatestEntries<Integer, V> latest;
+    private int indexLimit;
+    private boolean ordered = true;
+    private Integer lastIndex;
+
+    /**
+     * Creates a Log backed by {@link PersistentVector} which makes forking of the Log cheap
+     */
+    public ListLog() {
+        this(new PersistentVector<>());
+    }
 
     public ListLog(List<Entry<Integer, V>> store) {
         this(UUID.randomUUID(), store);
@@ -46,22 +58,106 @@ public class ListLog<V> extends AbstractLog<Integer, V> {
             throw new IllegalArgumentException("Backing store should not be null");
         }
         this.store = store;
+        this.latest = new LatestEntries<>();
+        for (Entry<Integer, V> entry : store) {
+            latest.update(entry);
+            indexLimit = Math.max(indexLimit, entry.index() + 1);
+            trackOrder(entry.index());
+        }
+        this.indexFactory = new IntegerIndexFactory(indexLimit);
+    }
+
+    private ListLog(UUID id, List<Entry<Integer, V>> store, LatestEntries<Integer, V> latest, int indexLimit) {
+        super(id);
+        this.store = store;
+        this.latest = latest;
+        this.indexLimit = indexLimit;
+        this.indexFactory = new IntegerIndexFactory(indexLimit);
+    }
+
+    /**
+     * Forks current Log into a new one. If the Log is backed by {@link PersistentVector} the new Log shares
+     * all existing entries with this Log and the operation does not depend on the size of the Log.
+     * Otherwise all entries are copied.
+     *
+     * @return new instance of the Log
+     */
+    @Override
+    public Log<Integer, V> fork() {
+        if (!(store instanceof PersistentVector)) {
+            return fork(entry -> true);
+        }
+        PersistentVector<Entry<Integer, V>> shared = ((PersistentVector<Entry<Integer, V>>) store).fork();
+        ListLog<V> result = new ListLog<>(UUID.randomUUID(), shared, new LatestEntries<>(latest), indexLimit);
+        result.ordered = ordered;
+        result.lastIndex = lastIndex;
+        result.parent = this.id;
+        return result;
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public Log<Integer, V> fork(Predicate<Entry<Integer, V>> filter) {
-        try {
-            List<Entry<Integer, V>> newStore = store.getClass().getDeclaredConstructor().newInstance();
-            newStore.addAll(
-                    store.stream().sorted(reverseOrder()).filter(filter).collect(toList()))
-            ;
-            ListLog<V> result = new ListLog<>(newStore);
-            result.parent = this.id;
-            return result;
-        } catch (InstantiationException | IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
-            throw new RuntimeException("Unable to fork log [" + id + "]", e);
+        ListLog<V> result = copy(UUID.randomUUID(), filter);
+        result.parent = this.id;
+        return result;
+    }
+
+    /**
+     * Compacts the Log into a new one with the same id and parent. The store of the new Log has the same type
+     * as the store of this Log.
+     *
+     * @param retainedTail number of the most recent entries to keep in addition to the latest entries per source
+     * @return compacted Log
+     */
+    @Override
+    public Log<Integer, V> compact(int retainedTail) {
+        ListLog<V> result = copy(id, Compaction.retained(this, retainedTail));
+        result.parent = this.parent;
+        return result;
+    }
+
+    /**
+     * Copies entries accepted by the filter into a new Log with the same type of the store
+     */
+    @SuppressWarnings("unchecked")
+    private ListLog<V> copy(UUID newId, Predicate<Entry<Integer, V>> filter) {
+        List<Entry<Integer, V>> newStore;
+        if (store instanceof PersistentVector) {
+            newStore = new PersistentVector<>();
+        } else {
+            try {
+                newStore = store.getClass().getDeclaredConstructor().newInstance();
+            } catch (InstantiationException | IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
+                throw new RuntimeException("Unable to copy log [" + id + "]", e);
+            }
+        }
+        LatestEntries<Integer, V> newLatest = new LatestEntries<>(latest.dictionary());
+        ListLog<V> result = new ListLog<>(newId, newStore, newLatest, indexLimit);
+        for (Entry<Integer, V> entry : store) {
+            if (filter.test(entry)) {
+                newStore.add(entry);
+                newLatest.update(entry);
+                result.trackOrder(entry.index());
+            }
         }
+        return result;
+    }
+
+    /**
+     * Forks current Log into a lazy view. If the Log is backed by {@link PersistentVector} the view reads
+     * a snapshot of this Log, otherwise entries added to this Log after forking are ignored by the view.
+     *
+     * @param filter filter that will be applied to entries of this Log when the new Log reads them
+     * @return new instance of the Log
+     */
+    @Override
+    public Log<Integer, V> lazyFork(Predicate<Entry<Integer, V>> filter) {
+        Log<Integer, V> base = store instanceof PersistentVector ? fork() : this;
+        OverlayLog<Integer, V> result = new OverlayLog<>(
+                base, indexLimit - 1, filter, new IntegerIndexFactory(indexLimit)
+        );
+        result.parent = this.id;
+        return result;
     }
 
     @Override
@@ -79,13 +175,33 @@ public class ListLog<V> extends AbstractLog<Integer, V> {
         return new UnmodifiableIterator<>(store);
     }
 
+    /**
+     * Walks positions of the store backwards while entries are added in the order of their indices and the store
+     * is a random access list. Entries added after the iterator was created are not visited.
+     *
+     * @return an iterator over Log entries in descending order of indices
+     */
+    @Override
+    public Iterator<Entry<Integer, V>> descendingIterator() {
+        if (!ordered || !(store instanceof RandomAccess)) {
+            return IndexRanges.descending(this);
+        }
+        return new DescendingIterator<>(store);
+    }
+
     @Override
     public void add(String source, V value) {
         int nextIndex = indexFactory.nextIndex();
         if (nextIndex == Integer.MAX_VALUE) {
             throw new IndexOutOfBoundsException("Maximum capacity has been reached");
         }
-        store.add(new ComparableIdEntry<>(source, nextIndex, value));
+        int sourceId = latest.register(source);
+        Entry<Integer, V> entry = new ComparableIdEntry<>(latest.sourceOf(sourceId), nextIndex, value);
+        store.add(entry);
+        latest.update(sourceId, entry);
+        indexLimit = Math.max(indexLimit, nextIndex + 1);
+        trackOrder(nextIndex);
+        appended(entry);
     }
 
     @Override
@@ -94,15 +210,149 @@ public class ListLog<V> extends AbstractLog<Integer, V> {
             throw new IllegalArgumentException("Unable to add null entries");
         }
         store.addAll(entries);
+        for (Entry<Integer, V> entry : entries) {
+            latest.update(entry);
+            indexLimit = Math.max(indexLimit, entry.index() + 1);
+            trackOrder(entry.index());
+            appended(entry);
+        }
+    }
+
+    /**
+     * Adds values of one source with a block of indices reserved at once. Entries are created before
+     * the store is changed, so a null value leaves the Log unchanged.
+     *
+     * @param source the source which produced the values
+     * @param values values to store in the Log in the order of their indices
+     */
+    @Override
+    public void addAll(String source, List<V> values) {
+        if (values == null) {
+            throw new IllegalArgumentException("Unable to add null values");
+        }
+        if (values.isEmpty()) {
+            return;
+        }
+        List<Integer> indices = indexFactory.reserve(values.size());
+        int first = indices.get(0);
+        int last = indices.get(indices.size() - 1);
+        if (last == Integer.MAX_VALUE) {
+            throw new IndexOutOfBoundsException("Maximum capacity has been reached");
+        }
+        int sourceId = latest.register(source);
+        String canonical = latest.sourceOf(sourceId);
+        List<Entry<Integer, V>> batch = new ArrayList<>(values.size());
+        Iterator<Integer> index = indices.iterator();
+        for (V value : values) {
+            batch.add(new ComparableIdEntry<>(canonical, index.next(), value));
+        }
+        store.addAll(batch);
+        latest.update(sourceId, batch.get(batch.size() - 1));
+        indexLimit = Math.max(indexLimit, last + 1);
+        trackOrder(first);
+        lastIndex = last;
+        if (hasAppendSubscribers()) {
+            for (Entry<Integer, V> entry : batch) {
+                appended(entry);
+            }
+        }
+    }
+
+    /**
+     * Tracks whether entries of the store are ordered by index
+     */
+    private void trackOrder(int index) {
+        ordered = ordered && (lastIndex == null || lastIndex < index);
+        lastIndex = index;
+    }
+
+    @Override
+    public Stream<Entry<Integer, V>> since(Integer index) {
+        if (!ordered || !(store instanceof RandomAccess)) {
+            return IndexRanges.since(this, index);
+        }
+        IndexRanges.checkIndex(index);
+        return store.subList(positionOf(index), store.size()).stream();
+    }
+
+    @Override
+    public Stream<Entry<Integer, V>> range(Integer from, Integer to) {
+        if (!ordered || !(store instanceof RandomAccess)) {
+            return IndexRanges.range(this, from, to);
+        }
+        IndexRanges.checkRange(from, to);
+        return store.subList(positionOf(from), positionOf(to)).stream();
     }
 
+    @Override
+    public Stream<Entry<Integer, V>> tail(int count) {
+        if (!ordered) {
+            return IndexRanges.tail(this, count);
+        }
+        IndexRanges.checkCount(count);
+        return store.subList(Math.max(0, store.size() - count), store.size()).stream();
+    }
+
+    /**
+     * Finds the position of the first entry with an index bigger than or equal to the given one
+     */
+    private int positionOf(int index) {
+        int low = 0;
+        int high = store.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (store.get(middle).index() < index) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public Optional<Entry<Integer, V>> latestBySource(String source) {
+        return latest.get(source);
+    }
+
+    @Override
+    public Set<Entry<Integer, V>> latestBySources(Set<String> sources) {
+        return latest.get(sources);
+    }
+
+    @Override
+    public int sourceId(String source) {
+        return latest.find(source);
+    }
+
+    @Override
+    public Optional<Entry<Integer, V>> latestBySourceId(int sourceId) {
+        return Optional.ofNullable(latest.get(sourceId));
+    }
+
+    @Override
+    public Set<String> sources() {
+        return latest.sources();
+    }
+
+    /**
+     * Creates a spliterator over entries existing at the time of the call. For random access stores
+     * the spliterator is sized, splits evenly and reports sorting while entries are added in the order
+     * of their indices.
+     *
+     * @return new instance of Spliterator
+     */
     @Override
     public Spliterator<Entry<Integer, V>> spliterator() {
-        return store.spliterator();
+        if (!(store instanceof RandomAccess)) {
+            return store.spliterator();
+        }
+        return new PositionSpliterator<>(store::get, 0, store.size(), ordered);
     }
 
     @Override
     public void close() throws IOException {
+        completeAppends();
         if (store instanceof Closeable) {
             ((Closeable) store).close();
         }
@@ -14,14 +14,20 @@
 
 package com.velevedi.baqla;
 
+import com.velevedi.baqla.predicate.OneValuePerSource;
+
 import java.io.Closeable;
 import java.util.*;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 import static com.velevedi.baqla.Log.Entry;
 import static java.util.Collections.singleton;
+import static java.util.Comparator.naturalOrder;
+import static java.util.stream.Collectors.toSet;
 
 /**
  * Data structure that allows adding new values only without ability to delete entries.
@@ -68,6 +74,32 @@ public interface Log<I extends Comparable<? super I>, V> extends Iterable<Entry<
      */
     Log<I, V> fork(Predicate<Entry<I, V>> filter);
 
+    /**
+     * Forks current Log into a new one without copying entries. The new Log is a view over the entries of this
+     * Log existed at the time of forking which pass the filter. Entries added to the new Log are kept by the new
+     * Log only. This mode suits short lived forks which read a small part of the parent.
+     * Implementations which do not support views copy entries the same way as {@link #fork(Predicate)} does.
+     *
+     * @param filter filter that will be applied to entries of this Log when the new Log reads them
+     * @return new instance of the Log
+     */
+    default Log<I, V> lazyFork(Predicate<Entry<I, V>> filter) {
+        return fork(filter);
+    }
+
+    /**
+     * Compacts the Log. The compacted Log holds the latest entry of each source and a number of the most recent
+     * entries regardless of their sources. All other entries are dropped. The compacted Log keeps id and parent of
+     * this Log, so the lineage of the Log is not changed.
+     * Depending on the implementation the compaction could happen in place or produce a new Log object.
+     *
+     * @param retainedTail number of the most recent entries to keep in addition to the latest entries per source
+     * @return compacted Log
+     */
+    default Log<I, V> compact(int retainedTail) {
+        throw new UnsupportedOperationException("Compaction is not supported by " + getClass().getName());
+    }
+
     /**
      * Number of entries in the Log
      *
@@ -89,6 +121,32 @@ public interface Log<I extends Comparable<? super I>, V> extends Iterable<Entry<
      */
     Iterator<Entry<I, V>> iterator();
 
+    /**
+     * Returns an iterator over entries from the biggest index to the smallest one. Implementations which keep
+     * entries ordered walk them backwards, so reading the newest entries first does not require sorting.
+     * Entries added after the iterator was created may not be visited. Adding entries while iterating is allowed
+     * unless the Log keeps entries in a collection which fails fast, like the {@link java.util.TreeSet} of
+     * a {@link SortedSetLog}, whose iterators throw {@link java.util.ConcurrentModificationException} then.
+     *
+     * @return an iterator over Log entries in descending order of indices
+     */
+    default Iterator<Entry<I, V>> descendingIterator() {
+        return IndexRanges.descending(this);
+    }
+
+    /**
+     * Returns a sequential stream of entries from the biggest index to the smallest one.
+     *
+     * @return a stream of entries in descending order of indices
+     * @see #descendingIterator()
+     */
+    default Stream<Entry<I, V>> descendingStream() {
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(descendingIterator(), Spliterator.ORDERED | Spliterator.NONNULL),
+                false
+        );
+    }
+
     /**
      * Adds a value for a given source
      *
@@ -118,6 +176,159 @@ public interface Log<I extends Comparable<? super I>, V> extends Iterable<Entry<
      */
     void addAll(Collection<Entry<I, V>> entries);
 
+    /**
+     * Adds values produced by one source. Indices of the new entries are generated as one block, so
+     * implementations pay for index generation and synchronization once per batch instead of once per value.
+     *
+     * @param source the source which produced the values
+     * @param values values to store in the Log in the order of their indices
+     */
+    default void addAll(String source, List<V> values) {
+        if (values == null) {
+            throw new IllegalArgumentException("Unable to add null values");
+        }
+        for (V value : values) {
+            add(source, value);
+        }
+    }
+
+    /**
+     * Returns the latest entry added by a source. The latest entry is the one with the biggest index.
+     *
+     * @param source source to find the latest entry for
+     * @return the latest entry or empty Optional if the source has not added any entries
+     */
+    default Optional<Entry<I, V>> latestBySource(String source) {
+        if (source == null) {
+            throw new IllegalArgumentException("Source can not be null");
+        }
+        return stream()
+                .filter(e -> source.equals(e.source()))
+                .max(naturalOrder());
+    }
+
+    /**
+     * Returns the latest entries added by a group of sources. There is at most one entry per source.
+     *
+     * @param sources sources to find the latest entries for
+     * @return a set of the latest entries, sources without entries are not represented
+     */
+    default Set<Entry<I, V>> latestBySources(Set<String> sources) {
+        if (sources == null) {
+            throw new IllegalArgumentException("Sources can not be null");
+        }
+        return descendingStream()
+                .filter(e -> sources.contains(e.source()))
+                .filter(new OneValuePerSource<>())
+                .collect(toSet());
+    }
+
+    /**
+     * Returns the identifier of a source. Logs which keep a dictionary of sources give every source an int
+     * identifier which does not change, so callers which look up the same sources repeatedly translate them once
+     * and then use {@link #latestBySourceId(int)}.
+     *
+     * @param source source to find
+     * @return identifier of the source or -1 if the source is unknown or the Log does not identify sources
+     */
+    default int sourceId(String source) {
+        if (source == null) {
+            throw new IllegalArgumentException("Source can not be null");
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the latest entry added by a source given by its identifier
+     *
+     * @param sourceId identifier returned by {@link #sourceId(String)}
+     * @return the latest entry of the source or empty if the source has no entries in this Log
+     */
+    default Optional<Entry<I, V>> latestBySourceId(int sourceId) {
+        return Optional.empty();
+    }
+
+    /**
+     * Returns all sources which have added entries to this Log
+     *
+     * @return a set of sources
+     */
+    default Set<String> sources() {
+        return stream()
+                .map(Entry::source)
+                .collect(toSet());
+    }
+
+    /**
+     * Returns entries with an index bigger than or equal to the given one ordered by index.
+     * Readers which poll the Log for new entries pass the index following the last one they have seen.
+     *
+     * @param index the smallest index to return
+     * @return stream of entries
+     */
+    default Stream<Entry<I, V>> since(I index) {
+        return IndexRanges.since(this, index);
+    }
+
+    /**
+     * Returns entries with an index in the range ordered by index.
+     *
+     * @param from the smallest index to return
+     * @param to   index following the biggest index to return
+     * @return stream of entries
+     */
+    default Stream<Entry<I, V>> range(I from, I to) {
+        return IndexRanges.range(this, from, to);
+    }
+
+    /**
+     * Returns the entries with the biggest indices ordered by index.
+     *
+     * @param count number of entries to return
+     * @return stream of at most count entries
+     */
+    default Stream<Entry<I, V>> tail(int count) {
+        return IndexRanges.tail(this, count);
+    }
+
+    /**
+     * Creates a publisher of entries appended to this Log. A subscriber receives entries appended after it has
+     * subscribed as it requests them. Entries are delivered by the common fork join pool.
+     *
+     * @return publisher of appended entries
+     * @see #appends(java.util.concurrent.Executor)
+     */
+    default Flow.Publisher<Entry<I, V>> appends() {
+        return appends(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a publisher of entries appended to this Log. A subscriber receives entries appended after it has
+     * subscribed as it requests them, entries which are not requested yet are buffered for the subscriber.
+     * Appending threads do not wait for subscribers. Subscriptions are completed when the Log is closed.
+     * Readers which need earlier entries subscribe first and then read them with {@link #since(Comparable)}.
+     *
+     * @param executor executor which delivers entries to subscribers
+     * @return publisher of appended entries
+     * @see #appends(java.util.concurrent.Executor, int)
+     */
+    default Flow.Publisher<Entry<I, V>> appends(java.util.concurrent.Executor executor) {
+        throw new UnsupportedOperationException("Subscription is not supported by " + getClass().getName());
+    }
+
+    /**
+     * Creates a publisher of entries appended to this Log with a bound on the number of entries buffered for
+     * a subscriber. A subscriber which falls behind by more entries is cancelled and receives
+     * {@link java.util.concurrent.Flow.Subscriber#onError(Throwable)}.
+     *
+     * @param executor   executor which delivers entries to subscribers
+     * @param bufferSize the biggest number of entries buffered for a subscriber
+     * @return publisher of appended entries
+     */
+    default Flow.Publisher<Entry<I, V>> appends(java.util.concurrent.Executor executor, int bufferSize) {
+        throw new UnsupportedOperationException("Subscription is not supported by " + getClass().getName());
+    }
+
     int hashCode();
 
     boolean equals(Object o);
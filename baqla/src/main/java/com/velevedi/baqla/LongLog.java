@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla;
+
+import com.velevedi.baqla.util.SourceDictionary;
+
+import java.util.Arrays;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.LongStream;
+
+/**
+ * Log of long values kept in a long[] column. Values added with {@link #addLong(String, long)} and read with
+ * {@link #latestLong(String)} or {@link #values()} are never boxed. The Log is still available through
+ * the {@link Log} interface, entries are created when they are read.
+ */
+public class LongLog extends AbstractColumnarLog<Long> {
+
+    public LongLog() {
+        this(UUID.randomUUID());
+    }
+
+    public LongLog(UUID id) {
+        this(id, new SourceDictionary());
+    }
+
+    private LongLog(UUID id, SourceDictionary dictionary) {
+        super(id, dictionary, new long[INITIAL_CAPACITY]);
+    }
+
+    @Override
+    LongLog newLog(UUID id, SourceDictionary dictionary) {
+        return new LongLog(id, dictionary);
+    }
+
+    @Override
+    Long valueAt(int position) {
+        return ((long[]) column())[position];
+    }
+
+    @Override
+    void storeValue(int position, Long value) {
+        ((long[]) column())[position] = value;
+    }
+
+    /**
+     * Adds a value to the Log without boxing it
+     *
+     * @param source source of the value
+     * @param value  value to add
+     */
+    public void addLong(String source, long value) {
+        int position = claim(source, nextIndex());
+        ((long[]) column())[position] = value;
+        publish(position);
+    }
+
+    /**
+     * Finds the latest value of a source
+     *
+     * @param source source of the value
+     * @return the latest value or empty if the source has no entries in the Log
+     */
+    public OptionalLong latestLong(String source) {
+        int position = latestPosition(source);
+        return position < 0 ? OptionalLong.empty() : OptionalLong.of(((long[]) column())[position]);
+    }
+
+    /**
+     * Values of all entries in the order they were added
+     *
+     * @return stream of values existing at the time of the call
+     */
+    public LongStream values() {
+        int end = size();
+        return Arrays.stream((long[]) column(), 0, end);
+    }
+
+    /**
+     * Runs a task on the latest values of the given sources and adds its result to the Log without boxing
+     * arguments and the result.
+     *
+     * @param task    task to run
+     * @param sources sources of the arguments of the task
+     */
+    public void run(LongTask task, Set<String> sources) {
+        if (task == null) {
+            throw new IllegalArgumentException("Task can not be null");
+        }
+        int[] positions = latestPositions(sources);
+        long[] column = (long[]) column();
+        String[] argumentSources = new String[positions.length];
+        long[] arguments = new long[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            argumentSources[i] = sourceAt(positions[i]);
+            arguments[i] = column[positions[i]];
+        }
+        addLong(task.id(), task.callOnValues(argumentSources, arguments));
+    }
+}
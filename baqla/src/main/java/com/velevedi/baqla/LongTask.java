@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla;
+
+import java.util.Set;
+
+/**
+ * Task which calculates a long value from long values of the previous tasks without boxing them.
+ * When it runs on a {@link LongLog} the arguments are read from the columns of the Log and the result is
+ * added to the Log as a primitive. On other Logs the task unboxes the entries passed to {@link #callOn(Set)}.
+ *
+ * @see LongLog#run(LongTask, Set)
+ */
+public interface LongTask extends Task<Long> {
+
+    /**
+     * Calculates the result from the latest values of the previous tasks
+     *
+     * @param sources sources of the arguments
+     * @param values  values of the arguments, values[i] is the latest value of sources[i]
+     * @return calculation result
+     */
+    long callOnValues(String[] sources, long[] values);
+
+    @Override
+    default <I extends Comparable<? super I>> Long callOn(Set<Log.Entry<I, Long>> entries) {
+        String[] sources = new String[entries.size()];
+        long[] values = new long[entries.size()];
+        int i = 0;
+        for (Log.Entry<I, Long> entry : entries) {
+            sources[i] = entry.source();
+            values[i] = entry.value();
+            i++;
+        }
+        return callOnValues(sources, values);
+    }
+}
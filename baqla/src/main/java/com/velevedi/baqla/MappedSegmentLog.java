@@ -0,0 +1,1039 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla;
+
+import com.velevedi.baqla.codec.EntryCodec;
+import com.velevedi.baqla.codec.IntegerIndexCodec;
+import com.velevedi.baqla.codec.ValueCodec;
+import com.velevedi.baqla.util.IndexFactory;
+import com.velevedi.baqla.util.IntegerIndexFactory;
+import com.velevedi.baqla.util.SourceDictionary;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Log implementation which stores entries in fixed size memory mapped segment files.
+ * Entries are appended sequentially into the active segment. Once the segment is full a new one is created.
+ * Entries are read straight from the mapped buffers, so the heap holds only the entries being accessed.
+ * <p>
+ * Each entry is stored as a record:
+ * <pre>
+ * | length (int) | entry |
+ * </pre>
+ * where the entry is encoded by {@link EntryCodec}. A zero length marks the end of data in a segment.
+ * Sources are stored once in a dictionary file next to the segments.
+ * Existing segments found in the directory are loaded when the Log is created.
+ * </p>
+ * <p>
+ * A checkpoint saves the write position and the number of records of every segment, the index high-water mark
+ * and positions of the latest entries per source. It is written by {@link #checkpoint()} and when the Log is
+ * closed. When the Log is opened, only records appended after the last checkpoint are scanned. Offsets of records
+ * of a segment are found when the segment is read for the first time.
+ * </p>
+ * <p>
+ * Segments which are full (sealed) can be compacted in the background while entries are being added to
+ * the active segment. See {@link #compactAsync(int, Executor)}.
+ * </p>
+ * Methods of the Log are synchronized on the Log object. Iterators and streams work on a snapshot of segments
+ * taken when they are created.
+ *
+ * @param <V> type of a value of an entry
+ * @see EntryCodec
+ */
+public class MappedSegmentLog<V> extends AbstractLog<Integer, V> {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String COMPACTION_PREFIX = "compaction-";
+    private static final String COMPACTION_SUFFIX = ".tmp";
+    private static final String DICTIONARY_FILE = "sources.dict";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final int LENGTH_SIZE = Integer.BYTES;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final ValueCodec<V> valueCodec;
+    private final EntryCodec<Integer, V> codec;
+    private FileChannel dictionaryChannel;
+    private final List<Segment> segments = new ArrayList<>();
+    private final IndexFactory<Integer> indexFactory;
+    /**
+     * Positions of the latest entries indexed by identifiers of their sources in the dictionary, -1 if the source
+     * has no entries in the Log
+     */
+    private int[] latestPositions = new int[0];
+    private int size;
+    private int indexLimit;
+    private boolean compacting;
+    private boolean closed;
+
+    public MappedSegmentLog(Path directory, ValueCodec<V> codec) {
+        this(UUID.randomUUID(), directory, DEFAULT_SEGMENT_SIZE, codec);
+    }
+
+    public MappedSegmentLog(UUID id, Path directory, int segmentSize, ValueCodec<V> codec) {
+        this(id, directory, segmentSize, codec, 0);
+    }
+
+    private MappedSegmentLog(UUID id, Path directory, int segmentSize, ValueCodec<V> codec, int firstIndex) {
+        super(id);
+        if (directory == null) {
+            throw new IllegalArgumentException("Directory can not be null");
+        }
+        if (segmentSize <= LENGTH_SIZE) {
+            throw new IllegalArgumentException("Segment size must be more than " + LENGTH_SIZE + " bytes");
+        }
+        if (codec == null) {
+            throw new IllegalArgumentException("Value codec can not be null");
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.valueCodec = codec;
+        this.codec = new EntryCodec<>(new IntegerIndexCodec(), new SourceDictionary(), codec);
+        this.indexLimit = Math.max(firstIndex, load());
+        this.indexFactory = new IntegerIndexFactory(indexLimit);
+    }
+
+    /**
+     * Maps segments that already exist in the directory. Records known by the checkpoint are not scanned.
+     *
+     * @return the index following the biggest index found in the segments
+     */
+    private int load() {
+        try {
+            Files.createDirectories(directory);
+            loadDictionary();
+            List<Path> paths;
+            try (Stream<Path> files = Files.list(directory)) {
+                paths = files
+                        .filter(p -> isSegmentFile(p.getFileName().toString()))
+                        .sorted()
+                        .collect(Collectors.toList());
+            }
+            Checkpoint checkpoint = Checkpoint.read(directory.resolve(CHECKPOINT_FILE));
+            if (checkpoint != null && !matches(checkpoint, paths)) {
+                checkpoint = null;
+            }
+            List<Checkpoint.SegmentState> states = checkpoint == null
+                    ? Collections.emptyList()
+                    : checkpoint.segments;
+
+            int[] scanFrom = new int[paths.size()];
+            for (int i = 0; i < paths.size(); i++) {
+                Path path = paths.get(i);
+                Checkpoint.SegmentState state = i < states.size() ? states.get(i) : null;
+                Segment segment = new Segment(path, segmentNumber(path), segmentSize, size, state);
+                segments.add(segment);
+                scanFrom[i] = state == null ? 0 : state.count;
+                size += segment.count;
+            }
+
+            int nextIndex = 0;
+            if (checkpoint != null) {
+                nextIndex = checkpoint.indexLimit;
+                for (Map.Entry<Integer, Integer> latest : checkpoint.latestPositions.entrySet()) {
+                    latestSlots(latest.getKey())[latest.getKey()] = latest.getValue();
+                }
+            }
+            // records appended after the checkpoint
+            for (int i = 0; i < segments.size(); i++) {
+                Segment segment = segments.get(i);
+                for (int n = scanFrom[i]; n < segment.count; n++) {
+                    nextIndex = Math.max(nextIndex, indexAt(segment, n) + 1);
+                    updateLatest(sourceIdAt(segment, n), segment.firstPosition + n);
+                }
+            }
+            return nextIndex;
+        } catch (IOException e) {
+            closeSegments();
+            try {
+                closeDictionary();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw new UncheckedIOException("Unable to open log [" + id + "] in " + directory, e);
+        }
+    }
+
+    /**
+     * Reads sources stored in the dictionary file. Each source is stored as its length (short)
+     * followed by UTF-8 bytes.
+     */
+    private void loadDictionary() throws IOException {
+        dictionaryChannel = FileChannel.open(directory.resolve(DICTIONARY_FILE), CREATE, READ, WRITE);
+        ByteBuffer content = ByteBuffer.allocate((int) dictionaryChannel.size());
+        while (content.hasRemaining() && dictionaryChannel.read(content) >= 0) {
+            // keep reading until the whole file is loaded
+        }
+        content.flip();
+        SourceDictionary dictionary = codec.dictionary();
+        while (content.remaining() >= Short.BYTES) {
+            int length = content.getShort();
+            if (length < 0 || length > content.remaining()) {
+                break;
+            }
+            byte[] bytes = new byte[length];
+            content.get(bytes);
+            dictionary.idOf(new String(bytes, UTF_8));
+        }
+        // a source written partially is dropped and will be written again
+        dictionaryChannel.truncate(content.position());
+        dictionaryChannel.position(content.position());
+    }
+
+    private void storeSource(String source) {
+        byte[] bytes = source.getBytes(UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(Short.BYTES + bytes.length);
+        buffer.putShort((short) bytes.length).put(bytes).flip();
+        try {
+            while (buffer.hasRemaining()) {
+                dictionaryChannel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to store source of log [" + id + "]", e);
+        }
+    }
+
+    /**
+     * Checks that the checkpoint describes existing segments
+     */
+    private boolean matches(Checkpoint checkpoint, List<Path> paths) throws IOException {
+        if (checkpoint.segments.size() > paths.size()) {
+            return false;
+        }
+        int checkpointSize = 0;
+        for (int i = 0; i < checkpoint.segments.size(); i++) {
+            Checkpoint.SegmentState state = checkpoint.segments.get(i);
+            Path path = paths.get(i);
+            if (state.number != segmentNumber(path) || state.writePosition > Files.size(path)) {
+                return false;
+            }
+            checkpointSize += state.count;
+        }
+        int sources = codec.dictionary().size();
+        for (Map.Entry<Integer, Integer> latest : checkpoint.latestPositions.entrySet()) {
+            if (latest.getKey() >= sources || latest.getValue() >= checkpointSize) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Forces all segments to the storage device and saves a checkpoint, so that the Log could be opened
+     * without scanning entries added so far.
+     */
+    public synchronized void checkpoint() {
+        if (closed) {
+            throw new IllegalStateException("Log [" + id + "] has been closed");
+        }
+        List<Checkpoint.SegmentState> states = new ArrayList<>();
+        Map<Integer, Integer> latest = new HashMap<>();
+        try {
+            dictionaryChannel.force(false);
+            for (Segment segment : segments) {
+                segment.buffer.force();
+                states.add(new Checkpoint.SegmentState(segment.number, segment.writePosition, segment.count));
+            }
+            for (int sourceId = 0; sourceId < latestPositions.length; sourceId++) {
+                if (latestPositions[sourceId] >= 0) {
+                    latest.put(sourceId, latestPositions[sourceId]);
+                }
+            }
+            new Checkpoint(indexLimit, states, latest).write(directory.resolve(CHECKPOINT_FILE));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to checkpoint log [" + id + "]", e);
+        }
+    }
+
+    private static boolean isSegmentFile(String name) {
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    private static int segmentNumber(Path path) {
+        String name = path.getFileName().toString();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private Path segmentPath(int number) {
+        return directory.resolve(String.format("%s%010d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Directory where segment files of this Log are stored
+     *
+     * @return directory of the segment files
+     */
+    public Path directory() {
+        return directory;
+    }
+
+    /**
+     * Forks the Log into a new directory next to the directory of this Log. The directory is named by the id
+     * of the new Log and is not removed when the new Log is closed.
+     *
+     * @param filter filter that will be applied before copying entries to the new Log
+     * @return new instance of the Log
+     * @see #fork(Predicate, Path)
+     */
+    @Override
+    public Log<Integer, V> fork(Predicate<Entry<Integer, V>> filter) {
+        UUID forkId = UUID.randomUUID();
+        return fork(forkId, filter, directory.resolveSibling(forkId.toString()));
+    }
+
+    /**
+     * Forks the Log into a new directory
+     *
+     * @param target directory of segment files of the new Log
+     * @return new instance of the Log
+     */
+    public MappedSegmentLog<V> fork(Path target) {
+        return fork(entry -> true, target);
+    }
+
+    /**
+     * Forks the Log into a new directory
+     *
+     * @param filter filter that will be applied before copying entries to the new Log
+     * @param target directory of segment files of the new Log
+     * @return new instance of the Log
+     */
+    public MappedSegmentLog<V> fork(Predicate<Entry<Integer, V>> filter, Path target) {
+        if (filter == null) {
+            throw new IllegalArgumentException("Filter can not be null");
+        }
+        if (target == null) {
+            throw new IllegalArgumentException("Target directory can not be null");
+        }
+        return fork(UUID.randomUUID(), filter, target);
+    }
+
+    private MappedSegmentLog<V> fork(UUID forkId, Predicate<Entry<Integer, V>> filter, Path target) {
+        Snapshot snapshot;
+        int firstIndex;
+        // indices of the fork continue after every entry of the snapshot
+        synchronized (this) {
+            snapshot = snapshot();
+            firstIndex = indexLimit;
+        }
+        MappedSegmentLog<V> result = new MappedSegmentLog<>(
+                forkId, target, segmentSize, valueCodec, firstIndex
+        );
+        Iterator<Entry<Integer, V>> entries = snapshot.iterator();
+        while (entries.hasNext()) {
+            Entry<Integer, V> entry = entries.next();
+            if (filter.test(entry)) {
+                result.append(entry.source(), entry.index(), entry.value());
+            }
+        }
+        result.parent = this.id;
+        return result;
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public Iterator<Entry<Integer, V>> iterator() {
+        return snapshot().iterator();
+    }
+
+    @Override
+    public synchronized void add(String source, V value) {
+        int nextIndex = indexFactory.nextIndex();
+        if (nextIndex == Integer.MAX_VALUE) {
+            throw new IndexOutOfBoundsException("Maximum capacity has been reached");
+        }
+        append(source, nextIndex, value);
+    }
+
+    /**
+     * Adds values of one source holding the lock of the Log for the whole batch
+     *
+     * @param source the source which produced the values
+     * @param values values to store in the Log in the order of their indices
+     */
+    @Override
+    public synchronized void addAll(String source, List<V> values) {
+        if (values == null) {
+            throw new IllegalArgumentException("Unable to add null values");
+        }
+        for (V value : values) {
+            add(source, value);
+        }
+    }
+
+    @Override
+    public synchronized void addAll(Collection<Entry<Integer, V>> entries) {
+        if (entries == null) {
+            throw new IllegalArgumentException("Unable to add null entries");
+        }
+        for (Entry<Integer, V> entry : entries) {
+            append(entry.source(), entry.index(), entry.value());
+        }
+    }
+
+    private synchronized void append(String source, Integer index, V value) {
+        Objects.requireNonNull(source, "null values are not allowed");
+        Objects.requireNonNull(index, "null values are not allowed");
+        Objects.requireNonNull(value, "null values are not allowed");
+        if (closed) {
+            throw new IllegalStateException("Log [" + id + "] has been closed");
+        }
+
+        SourceDictionary dictionary = codec.dictionary();
+        int knownSources = dictionary.size();
+        if (source.getBytes(UTF_8).length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Source name is too long");
+        }
+        int length = codec.sizeOf(source, index, value);
+        if (dictionary.size() > knownSources) {
+            storeSource(source);
+        }
+        if (LENGTH_SIZE + length > segmentSize) {
+            throw new IllegalArgumentException("Entry of " + length + " bytes does not fit into a segment");
+        }
+        Segment segment = activeSegment(LENGTH_SIZE + length);
+
+        ByteBuffer buffer = segment.buffer;
+        int offset = segment.writePosition;
+        buffer.position(offset + LENGTH_SIZE);
+        codec.encode(source, index, value, buffer);
+        if (buffer.position() != offset + LENGTH_SIZE + length) {
+            throw new IllegalStateException("Value codec wrote unexpected number of bytes");
+        }
+        // length is written last, a record becomes visible only when it is complete
+        buffer.putInt(offset, length);
+
+        segment.appended(offset, LENGTH_SIZE + length);
+        updateLatest(dictionary.idOf(source), size);
+        size++;
+        indexLimit = Math.max(indexLimit, index + 1);
+        if (hasAppendSubscribers()) {
+            appended(new ComparableIdEntry<>(source, index, value));
+        }
+    }
+
+    private Segment activeSegment(int recordSize) {
+        Segment active = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (active != null && active.remaining() >= recordSize) {
+            return active;
+        }
+        int number = active == null ? 0 : active.number + 1;
+        try {
+            Segment segment = new Segment(segmentPath(number), number, segmentSize, size);
+            segments.add(segment);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to create new segment for log [" + id + "]", e);
+        }
+    }
+
+    /**
+     * Remembers the position of an entry if it is the latest one of its source
+     *
+     * @param sourceId identifier of the source of the entry in the dictionary
+     * @param position position of the entry in the Log
+     */
+    private void updateLatest(int sourceId, int position) {
+        int[] slots = latestSlots(sourceId);
+        int current = slots[sourceId];
+        if (current < 0 || indexAt(position) >= indexAt(current)) {
+            slots[sourceId] = position;
+        }
+    }
+
+    /**
+     * Grows the table of latest positions to fit the source identifier
+     */
+    private int[] latestSlots(int sourceId) {
+        if (sourceId >= latestPositions.length) {
+            int length = latestPositions.length;
+            latestPositions = Arrays.copyOf(latestPositions, Math.max(sourceId + 1, 2 * length));
+            Arrays.fill(latestPositions, length, latestPositions.length, -1);
+        }
+        return latestPositions;
+    }
+
+    private int latestPosition(String source) {
+        int sourceId = codec.dictionary().find(source);
+        return sourceId < 0 || sourceId >= latestPositions.length ? -1 : latestPositions[sourceId];
+    }
+
+    private Segment segmentOf(int position) {
+        int low = 0;
+        int high = segments.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (segments.get(middle).firstPosition <= position) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return segments.get(low);
+    }
+
+    private int indexAt(int position) {
+        Segment segment = segmentOf(position);
+        return indexAt(segment, position - segment.firstPosition);
+    }
+
+    private int indexAt(Segment segment, int number) {
+        return codec.decodeIndex(segment.buffer, segment.offsets()[number] + LENGTH_SIZE);
+    }
+
+    private int sourceIdAt(Segment segment, int number) {
+        return codec.decodeSourceId(segment.buffer, segment.offsets()[number] + LENGTH_SIZE);
+    }
+
+    private Entry<Integer, V> entryAt(int position) {
+        Segment segment = segmentOf(position);
+        return decode(segment.buffer, segment.offsets()[position - segment.firstPosition]);
+    }
+
+    private Entry<Integer, V> decode(ByteBuffer buffer, int offset) {
+        return codec.decode(buffer, offset + LENGTH_SIZE, buffer.getInt(offset));
+    }
+
+    @Override
+    public synchronized Optional<Entry<Integer, V>> latestBySource(String source) {
+        if (source == null) {
+            throw new IllegalArgumentException("Source can not be null");
+        }
+        int position = latestPosition(source);
+        return position < 0 ? Optional.empty() : Optional.of(entryAt(position));
+    }
+
+    @Override
+    public synchronized Set<Entry<Integer, V>> latestBySources(Set<String> sources) {
+        if (sources == null) {
+            throw new IllegalArgumentException("Sources can not be null");
+        }
+        Set<Entry<Integer, V>> result = new HashSet<>();
+        for (String source : sources) {
+            int position = latestPosition(source);
+            if (position >= 0) {
+                result.add(entryAt(position));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized Set<String> sources() {
+        SourceDictionary dictionary = codec.dictionary();
+        Set<String> result = new HashSet<>();
+        for (int sourceId = 0; sourceId < latestPositions.length; sourceId++) {
+            if (latestPositions[sourceId] >= 0) {
+                result.add(dictionary.sourceOf(sourceId));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Spliterator<Entry<Integer, V>> spliterator() {
+        Snapshot snapshot = snapshot();
+        return new PositionSpliterator<>(snapshot::entryAt, 0, snapshot.size, false);
+    }
+
+    private synchronized Snapshot snapshot() {
+        return new Snapshot(segments, size);
+    }
+
+    /**
+     * Compacts sealed segments of the Log in place, the active segment is not changed.
+     * See {@link #compactAsync(int, Executor)} for details.
+     *
+     * @param retainedTail number of the most recent entries to keep in addition to the latest entries per source
+     * @return this Log
+     */
+    @Override
+    public Log<Integer, V> compact(int retainedTail) {
+        try {
+            compactAsync(retainedTail, Runnable::run).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return this;
+    }
+
+    /**
+     * Compacts sealed segments of the Log in the background. Sealed segments are all segments except the active
+     * one. Entries of sealed segments which are the latest entries of their sources or belong to the most recent
+     * entries of the Log are copied into new segment files by the executor. Other entries are dropped.
+     * Then the compacted segments replace the sealed ones. New entries can be added to the Log while compaction
+     * is running.
+     * <p>
+     * Compaction changes positions of entries, iterators created before the replacement keep reading
+     * the segments they have started with. If the process is interrupted while segment files are being replaced,
+     * retained entries could appear twice when the Log is reopened.
+     * </p>
+     *
+     * @param retainedTail number of the most recent entries to keep in addition to the latest entries per source
+     * @param executor     executor to copy entries with
+     * @return future which completes when compacted segments replace the sealed ones
+     */
+    public CompletableFuture<Void> compactAsync(int retainedTail, Executor executor) {
+        if (retainedTail < 0) {
+            throw new IllegalArgumentException("Number of retained entries can not be negative");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor can not be null");
+        }
+        CompactionPlan plan;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Log [" + id + "] has been closed");
+            }
+            if (compacting) {
+                throw new IllegalStateException("Log [" + id + "] is being compacted");
+            }
+            if (segments.size() < 2) {
+                return CompletableFuture.completedFuture(null);
+            }
+            plan = new CompactionPlan(segments.subList(0, segments.size() - 1), retainedTail);
+            compacting = true;
+        }
+        List<Path> written = new ArrayList<>();
+        return CompletableFuture
+                .runAsync(() -> writeCompacted(plan, written), executor)
+                .thenRun(() -> replaceSealed(plan, written))
+                .whenComplete((result, error) -> {
+                    synchronized (this) {
+                        compacting = false;
+                    }
+                    if (error != null) {
+                        for (Path path : written) {
+                            try {
+                                Files.deleteIfExists(path);
+                            } catch (IOException e) {
+                                error.addSuppressed(e);
+                            }
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Copies retained records of sealed segments into temporary segment files. Records are copied as they are,
+     * without decoding.
+     */
+    private void writeCompacted(CompactionPlan plan, List<Path> written) {
+        Segment target = null;
+        try {
+            int position = 0;
+            for (Snapshot.View view : plan.sealed.views) {
+                ByteBuffer buffer = view.segment.buffer;
+                for (int i = 0; i < view.count; i++, position++) {
+                    if (!plan.retained.get(position)) {
+                        continue;
+                    }
+                    int offset = view.offsets[i];
+                    int recordSize = LENGTH_SIZE + buffer.getInt(offset);
+                    if (target == null || target.remaining() < recordSize) {
+                        if (target != null) {
+                            target.close();
+                        }
+                        Path path = directory.resolve(COMPACTION_PREFIX + written.size() + COMPACTION_SUFFIX);
+                        written.add(path);
+                        target = new Segment(path, written.size(), segmentSize, 0);
+                    }
+                    target.copy(buffer, offset, recordSize);
+                }
+            }
+            if (target != null) {
+                target.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to compact log [" + id + "]", e);
+        }
+    }
+
+    /**
+     * Replaces sealed segments by compacted ones and recalculates positions of entries
+     */
+    private synchronized void replaceSealed(CompactionPlan plan, List<Path> written) {
+        if (closed) {
+            throw new IllegalStateException("Log [" + id + "] has been closed");
+        }
+        List<Segment> sealed = new ArrayList<>(segments.subList(0, plan.sealed.views.size()));
+        if (written.size() > sealed.size()) {
+            throw new IllegalStateException("Compacted entries do not fit into sealed segments");
+        }
+        try {
+            // the checkpoint refers to records of the sealed segments
+            Files.deleteIfExists(directory.resolve(CHECKPOINT_FILE));
+            List<Segment> compacted = new ArrayList<>();
+            for (int i = 0; i < sealed.size(); i++) {
+                Segment segment = sealed.get(i);
+                segment.close();
+                Path path = segmentPath(segment.number);
+                if (i < written.size()) {
+                    Files.move(written.get(i), path, REPLACE_EXISTING, ATOMIC_MOVE);
+                    compacted.add(new Segment(path, segment.number, segmentSize, 0));
+                } else {
+                    Files.delete(path);
+                }
+            }
+            written.clear();
+
+            int compactedSize = 0;
+            for (Segment segment : compacted) {
+                compactedSize += segment.count;
+            }
+            // the latest entries of sealed segments have been retained, positions of other entries shift
+            for (int sourceId = 0; sourceId < latestPositions.length; sourceId++) {
+                int position = latestPositions[sourceId];
+                if (position >= 0) {
+                    latestPositions[sourceId] = position < plan.sealed.size
+                            ? plan.retained.get(0, position).cardinality()
+                            : position - plan.sealed.size + compactedSize;
+                }
+            }
+
+            segments.subList(0, sealed.size()).clear();
+            segments.addAll(0, compacted);
+            size = 0;
+            for (Segment segment : segments) {
+                segment.firstPosition = size;
+                size += segment.count;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to replace segments of log [" + id + "]", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        completeAppends();
+        IOException exception = null;
+        try {
+            checkpoint();
+        } catch (UncheckedIOException e) {
+            exception = e.getCause();
+        }
+        closed = true;
+        IOException closing = closeSegments();
+        if (exception == null) {
+            exception = closing;
+        } else if (closing != null) {
+            exception.addSuppressed(closing);
+        }
+        try {
+            closeDictionary();
+        } catch (IOException e) {
+            if (exception == null) {
+                exception = e;
+            } else {
+                exception.addSuppressed(e);
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    private void closeDictionary() throws IOException {
+        if (dictionaryChannel != null && dictionaryChannel.isOpen()) {
+            dictionaryChannel.force(false);
+            dictionaryChannel.close();
+        }
+    }
+
+    private IOException closeSegments() {
+        IOException exception = null;
+        for (Segment segment : segments) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                if (exception == null) {
+                    exception = e;
+                } else {
+                    exception.addSuppressed(e);
+                }
+            }
+        }
+        segments.clear();
+        latestPositions = new int[0];
+        size = 0;
+        return exception;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        MappedSegmentLog<?> that = (MappedSegmentLog<?>) o;
+        return id.equals(that.id) && directory.equals(that.directory);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, directory);
+    }
+
+    /**
+     * Entries of segments selected for compaction together with the positions of entries to keep
+     */
+    private final class CompactionPlan {
+
+        private final Snapshot sealed;
+        private final BitSet retained;
+
+        CompactionPlan(List<Segment> sealedSegments, int retainedTail) {
+            int sealedSize = 0;
+            for (Segment segment : sealedSegments) {
+                sealedSize += segment.count;
+            }
+            this.sealed = new Snapshot(sealedSegments, sealedSize);
+            this.retained = new BitSet(sealedSize);
+            for (int position : latestPositions) {
+                if (position >= 0 && position < sealedSize) {
+                    retained.set(position);
+                }
+            }
+            int tailStart = Math.max(0, size - retainedTail);
+            if (tailStart < sealedSize) {
+                retained.set(tailStart, sealedSize);
+            }
+        }
+    }
+
+    /**
+     * Segments and their entries existed at some moment of time
+     */
+    private final class Snapshot {
+
+        private final List<View> views = new ArrayList<>();
+        private final int[] firstPositions;
+        private final int size;
+
+        Snapshot(List<Segment> segments, int size) {
+            this.firstPositions = new int[segments.size()];
+            int position = 0;
+            for (Segment segment : segments) {
+                firstPositions[views.size()] = position;
+                views.add(new View(segment, segment.offsets(), segment.count));
+                position += segment.count;
+            }
+            this.size = size;
+        }
+
+        Entry<Integer, V> entryAt(int position) {
+            int number = Arrays.binarySearch(firstPositions, position);
+            if (number < 0) {
+                number = -number - 2;
+            }
+            // skip empty segments which share the first position with the next one
+            while (number + 1 < firstPositions.length && firstPositions[number + 1] == position) {
+                number++;
+            }
+            View view = views.get(number);
+            return decode(view.segment.buffer, view.offsets[position - firstPositions[number]]);
+        }
+
+        Iterator<Entry<Integer, V>> iterator() {
+            return new SnapshotIterator(this);
+        }
+
+        private final class View {
+            private final Segment segment;
+            private final int[] offsets;
+            private final int count;
+
+            View(Segment segment, int[] offsets, int count) {
+                this.segment = segment;
+                this.offsets = offsets;
+                this.count = count;
+            }
+        }
+    }
+
+    /**
+     * Iterates over entries of a snapshot
+     */
+    private class SnapshotIterator implements Iterator<Entry<Integer, V>> {
+
+        private final List<Snapshot.View> views;
+        private int remaining;
+        private int viewNumber;
+        private int entryNumber;
+
+        SnapshotIterator(Snapshot snapshot) {
+            this.views = snapshot.views;
+            this.remaining = snapshot.size;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public Entry<Integer, V> next() {
+            if (remaining <= 0) {
+                throw new NoSuchElementException();
+            }
+            Snapshot.View view = views.get(viewNumber);
+            while (entryNumber >= view.count) {
+                view = views.get(++viewNumber);
+                entryNumber = 0;
+            }
+            remaining--;
+            return decode(view.segment.buffer, view.offsets[entryNumber++]);
+        }
+    }
+
+    /**
+     * A memory mapped file holding a sequence of records. Segments opened from a checkpoint know the number of
+     * their records but find offsets of the records when they are read for the first time. Segments are accessed
+     * holding the lock of the Log.
+     */
+    private static final class Segment implements Closeable {
+
+        private final int number;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int firstPosition;
+        // null until the records of a segment opened from a checkpoint are read
+        private int[] offsets = new int[64];
+        private int count;
+        private int writePosition;
+
+        Segment(Path path, int number, int size, int firstPosition) throws IOException {
+            this(path, number, size, firstPosition, null);
+        }
+
+        Segment(Path path, int number, int size, int firstPosition, Checkpoint.SegmentState state) throws IOException {
+            this.number = number;
+            this.channel = FileChannel.open(path, CREATE, READ, WRITE);
+            long existingSize = channel.size();
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, existingSize > 0 ? existingSize : size);
+            this.firstPosition = firstPosition;
+            if (state != null) {
+                this.offsets = null;
+                this.count = state.count;
+                this.writePosition = state.writePosition;
+            }
+            recover();
+        }
+
+        /**
+         * Returns offsets of records finding them on the first call for a segment opened from a checkpoint
+         */
+        int[] offsets() {
+            if (offsets == null) {
+                int[] found = new int[Math.max(count, 64)];
+                int offset = 0;
+                for (int n = 0; n < count; n++) {
+                    int length = offset + LENGTH_SIZE <= writePosition ? buffer.getInt(offset) : 0;
+                    if (length <= 0 || offset + LENGTH_SIZE + length > writePosition) {
+                        throw new IllegalStateException("Segment [" + number + "] does not have " + count + " records");
+                    }
+                    found[n] = offset;
+                    offset += LENGTH_SIZE + length;
+                }
+                offsets = found;
+            }
+            return offsets;
+        }
+
+        /**
+         * Finds complete records written into the segment after the known ones.
+         */
+        private void recover() {
+            int capacity = buffer.capacity();
+            while (writePosition + LENGTH_SIZE <= capacity) {
+                int length = buffer.getInt(writePosition);
+                if (length <= 0 || writePosition + LENGTH_SIZE + length > capacity) {
+                    break;
+                }
+                appended(writePosition, LENGTH_SIZE + length);
+            }
+        }
+
+        void appended(int offset, int recordSize) {
+            if (offsets != null) {
+                if (count == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                }
+                offsets[count] = offset;
+            }
+            count++;
+            writePosition = offset + recordSize;
+        }
+
+        /**
+         * Appends a complete record from another buffer
+         */
+        void copy(ByteBuffer source, int offset, int recordSize) {
+            ByteBuffer record = source.duplicate();
+            record.limit(offset + recordSize).position(offset);
+            buffer.position(writePosition);
+            buffer.put(record);
+            appended(writePosition, recordSize);
+        }
+
+        int remaining() {
+            return buffer.capacity() - writePosition;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (channel.isOpen()) {
+                buffer.force();
+                channel.close();
+            }
+        }
+    }
+}
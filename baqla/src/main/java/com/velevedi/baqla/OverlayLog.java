@@ -0,0 +1,290 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla;
+
+import com.velevedi.baqla.util.IndexFactory;
+import com.velevedi.baqla.util.PersistentVector;
+
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Log which is a lazy view over a parent Log with its own entries added on top.
+ * Entries of the parent are not copied. They are filtered when the overlay reads them.
+ * <p>
+ * The parent Log (base) is expected not to change while the overlay is used. When the base can not be frozen
+ * an upper bound of the index is provided and base entries with bigger indices are ignored.
+ * </p>
+ *
+ * @param <I> type of the index of an entry
+ * @param <V> type of a value of an entry
+ * @see Log#lazyFork(Predicate)
+ */
+class OverlayLog<I extends Comparable<? super I>, V> extends AbstractLog<I, V> {
+
+    private final Log<I, V> base;
+    private final I bound;
+    private final Predicate<Entry<I, V>> filter;
+    private final IndexFactory<I> indexFactory;
+    private final PersistentVector<Entry<I, V>> store;
+    private final LatestEntries<I, V> latest;
+
+    /**
+     * Latest base entries per source found so far. The base does not change so they are calculated once.
+     */
+    private final Map<String, Optional<Entry<I, V>>> baseLatest;
+    private boolean baseScanned;
+    private Set<String> baseSources;
+    private int baseSize = -1;
+
+    /**
+     * Creates an overlay on top of a base Log
+     *
+     * @param base         Log to read entries from
+     * @param bound        the biggest index of base entries visible through the overlay or null if all entries
+     *                     of the base are visible
+     * @param filter       filter of base entries
+     * @param indexFactory index factory to generate indices of added entries
+     */
+    OverlayLog(Log<I, V> base, I bound, Predicate<Entry<I, V>> filter, IndexFactory<I> indexFactory) {
+        this(UUID.randomUUID(), base, bound, filter, indexFactory, new PersistentVector<>(), new LatestEntries<>());
+    }
+
+    private OverlayLog(UUID id, Log<I, V> base, I bound, Predicate<Entry<I, V>> filter, IndexFactory<I> indexFactory,
+                       PersistentVector<Entry<I, V>> store, LatestEntries<I, V> latest) {
+        super(id);
+        if (base == null) {
+            throw new IllegalArgumentException("Base log can not be null");
+        }
+        if (filter == null) {
+            throw new IllegalArgumentException("Filter can not be null");
+        }
+        if (indexFactory == null) {
+            throw new IllegalArgumentException("Index factory can not be null");
+        }
+        this.base = base;
+        this.bound = bound;
+        this.filter = filter;
+        this.indexFactory = indexFactory;
+        this.store = store;
+        this.latest = latest;
+        this.baseLatest = new HashMap<>();
+    }
+
+    private boolean visible(Entry<I, V> entry) {
+        return (bound == null || entry.index().compareTo(bound) <= 0) && filter.test(entry);
+    }
+
+    private Stream<Entry<I, V>> baseStream() {
+        return base.stream().filter(this::visible);
+    }
+
+    /**
+     * Forks the overlay. Entries of the base are not copied, the filter is combined with the filter of this
+     * overlay instead. Entries added to this overlay are shared with the new Log.
+     *
+     * @param filter filter that will be applied before copying entries to the new Log
+     * @return new instance of the Log
+     */
+    @Override
+    public Log<I, V> fork(Predicate<Entry<I, V>> filter) {
+        OverlayLog<I, V> result = copy(UUID.randomUUID(), filter);
+        result.parent = this.id;
+        return result;
+    }
+
+    /**
+     * Compacts the overlay into a new one with the same id and parent. The base is not copied, entries dropped
+     * by compaction are filtered out when the new overlay reads the base.
+     *
+     * @param retainedTail number of the most recent entries to keep in addition to the latest entries per source
+     * @return compacted Log
+     */
+    @Override
+    public Log<I, V> compact(int retainedTail) {
+        OverlayLog<I, V> result = copy(id, Compaction.retained(this, retainedTail));
+        result.parent = this.parent;
+        return result;
+    }
+
+    private OverlayLog<I, V> copy(UUID newId, Predicate<Entry<I, V>> filter) {
+        PersistentVector<Entry<I, V>> newStore = new PersistentVector<>();
+        LatestEntries<I, V> newLatest = new LatestEntries<>(latest.dictionary());
+        for (Entry<I, V> entry : store) {
+            if (filter.test(entry)) {
+                newStore.add(entry);
+                newLatest.update(entry);
+            }
+        }
+        return new OverlayLog<>(newId, base, bound, this.filter.and(filter), indexFactory, newStore, newLatest);
+    }
+
+    @Override
+    public Log<I, V> fork() {
+        OverlayLog<I, V> result = new OverlayLog<>(
+                UUID.randomUUID(), base, bound, filter, indexFactory, store.fork(), new LatestEntries<>(latest)
+        );
+        result.parent = this.id;
+        return result;
+    }
+
+    @Override
+    public Log<I, V> lazyFork(Predicate<Entry<I, V>> filter) {
+        return fork(filter);
+    }
+
+    @Override
+    public int size() {
+        if (baseSize < 0) {
+            baseSize = (int) baseStream().count();
+        }
+        return baseSize + store.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        if (!store.isEmpty()) {
+            return false;
+        }
+        return baseSize < 0 ? baseStream().findAny().isEmpty() : baseSize == 0;
+    }
+
+    @Override
+    public Iterator<Entry<I, V>> iterator() {
+        return stream().iterator();
+    }
+
+    @Override
+    public void add(String source, V value) {
+        int sourceId = latest.register(source);
+        Entry<I, V> entry = new ComparableIdEntry<>(latest.sourceOf(sourceId), indexFactory.nextIndex(), value);
+        store.add(entry);
+        latest.update(sourceId, entry);
+        appended(entry);
+    }
+
+    @Override
+    public void addAll(Collection<Entry<I, V>> entries) {
+        if (entries == null) {
+            throw new IllegalArgumentException("Unable to add null entries");
+        }
+        for (Entry<I, V> entry : entries) {
+            store.add(entry);
+            latest.update(entry);
+            appended(entry);
+        }
+    }
+
+    @Override
+    public Optional<Entry<I, V>> latestBySource(String source) {
+        Optional<Entry<I, V>> own = latest.get(source);
+        Optional<Entry<I, V>> inherited = inheritedLatest(source);
+        if (own.isEmpty()) {
+            return inherited;
+        }
+        if (inherited.isEmpty()) {
+            return own;
+        }
+        return own.get().compareTo(inherited.get()) >= 0 ? own : inherited;
+    }
+
+    private Optional<Entry<I, V>> inheritedLatest(String source) {
+        Optional<Entry<I, V>> cached = baseLatest.get(source);
+        if (cached != null) {
+            return cached;
+        }
+        if (baseScanned) {
+            return Optional.empty();
+        }
+        Optional<Entry<I, V>> candidate = base.latestBySource(source);
+        if (candidate.isEmpty() || visible(candidate.get())) {
+            baseLatest.put(source, candidate);
+            return candidate;
+        }
+        scanBase();
+        return baseLatest.getOrDefault(source, Optional.empty());
+    }
+
+    /**
+     * Finds the latest visible base entries of all sources in one pass
+     */
+    private void scanBase() {
+        Map<String, Entry<I, V>> found = new HashMap<>();
+        baseStream().forEach(e -> found.merge(e.source(), e,
+                (current, next) -> next.compareTo(current) >= 0 ? next : current));
+        baseLatest.clear();
+        for (Map.Entry<String, Entry<I, V>> entry : found.entrySet()) {
+            baseLatest.put(entry.getKey(), Optional.of(entry.getValue()));
+        }
+        baseScanned = true;
+    }
+
+    @Override
+    public Set<Entry<I, V>> latestBySources(Set<String> sources) {
+        if (sources == null) {
+            throw new IllegalArgumentException("Sources can not be null");
+        }
+        Set<Entry<I, V>> result = new HashSet<>();
+        for (String source : sources) {
+            latestBySource(source).ifPresent(result::add);
+        }
+        return result;
+    }
+
+    @Override
+    public Set<String> sources() {
+        if (baseSources == null) {
+            Set<String> candidates = base.sources();
+            Set<String> found = new HashSet<>();
+            for (String source : candidates) {
+                if (inheritedLatest(source).isPresent()) {
+                    found.add(source);
+                }
+            }
+            baseSources = found;
+        }
+        Set<String> result = new HashSet<>(baseSources);
+        result.addAll(latest.sources());
+        return result;
+    }
+
+    @Override
+    public Spliterator<Entry<I, V>> spliterator() {
+        return Stream.concat(baseStream(), store.stream()).spliterator();
+    }
+
+    /**
+     * The base Log belongs to the parent and is not closed
+     */
+    @Override
+    public void close() {
+        completeAppends();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        OverlayLog<?, ?> that = (OverlayLog<?, ?>) o;
+        return id.equals(that.id) && base.equals(that.base) && store.equals(that.store);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, base, store);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.velevedi.baqla;
+
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * Spliterator over a range of positions of an append only store. Positions below the fence never change,
+ * so the spliterator is sized and immutable and splits the range in halves.
+ * When entries are known to be ordered by index the spliterator reports natural sorting, so sorting
+ * of a stream in the natural order does nothing.
+ *
+ * @param <T> type of elements
+ */
+final class PositionSpliterator<T> implements Spliterator<T> {
+
+    private static final int CHARACTERISTICS =
+            Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.ORDERED | Spliterator.IMMUTABLE | Spliterator.NONNULL;
+
+    private final IntFunction<? extends T> accessor;
+    private final int characteristics;
+    private int position;
+    private final int fence;
+
+    /**
+     * @param accessor returns the element at a position
+     * @param origin   the first position
+     * @param fence    position following the last one
+     * @param sorted   true if elements are sorted in the natural order
+     */
+    PositionSpliterator(IntFunction<? extends T> accessor, int origin, int fence, boolean sorted) {
+        this.accessor = accessor;
+        this.position = origin;
+        this.fence = fence;
+        this.characteristics = sorted ? CHARACTERISTICS | Spliterator.SORTED : CHARACTERISTICS;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (position >= fence) {
+            return false;
+        }
+        action.accept(accessor.apply(position++));
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+        int end = fence;
+        for (int i = position; i < end; i++) {
+            action.accept(accessor.apply(i));
+        }
+        position = end;
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        int middle = (position + fence) >>> 1;
+        if (middle <= position) {
+            return null;
+        }
+        int origin = position;
+        position = middle;
+        return new PositionSpliterator<>(
+                accessor, origin, middle, (characteristics & Spliterator.SORTED) != 0
+        );
+    }
+
+    @Override
+    public long estimateSize() {
+        return fence - position;
+    }
+
+    @Override
+    public int characteristics() {
+        return characteristics;
+    }
+
+    @Override
+    public Comparator<? super T> getComparator() {
+        if ((characteristics & Spliterator.SORTED) != 0) {
+            return null;
+        }
+        throw new IllegalStateException();
+    }
+}
@@ -0,0 +1,493 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla;
+
+import com.velevedi.baqla.util.PersistentVector;
+
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Log implementation which partitions entries by their source into a number of shards.
+ * <p>
+ * Each shard has its own store, lock and sequence counter, so sources written to different shards do not
+ * contend with each other. The index of an entry combines the sequence number within its shard and the shard
+ * number: <code>index = sequence &lt;&lt; shardBits | shard</code>. Indices are unique across the Log and grow
+ * within each shard. The order of entries of different shards is defined by indices only, it is not the order
+ * they have been added in.
+ * </p>
+ * Reading the Log takes a snapshot of each shard in turn holding the lock of that shard only and merges the
+ * snapshots in the order of indices. {@link #since(Long)}, {@link #range(Long, Long)} and {@link #tail(int)}
+ * find their bounds in every shard by binary search. A shard which has fewer entries than others gives smaller
+ * indices to the entries it adds later, so a reader which must see every new entry subscribes to
+ * {@link #appends()} rather than polling {@link #since(Long)}.
+ *
+ * @param <V> type of a value of an entry
+ */
+public class ShardedLog<V> extends AbstractLog<Long, V> {
+
+    private static final int CHARACTERISTICS =
+            Spliterator.ORDERED | Spliterator.SORTED | Spliterator.NONNULL | Spliterator.DISTINCT;
+
+    private final Shard<V>[] shards;
+    private final int shardBits;
+
+    public ShardedLog(int numberOfShards) {
+        this(UUID.randomUUID(), numberOfShards);
+    }
+
+    public ShardedLog(UUID id, int numberOfShards) {
+        super(id);
+        if (numberOfShards <= 0) {
+            throw new IllegalArgumentException("Number of shards must be more than zero");
+        }
+        @SuppressWarnings("unchecked")
+        Shard<V>[] created = (Shard<V>[]) new Shard<?>[numberOfShards];
+        for (int i = 0; i < numberOfShards; i++) {
+            created[i] = new Shard<>(new PersistentVector<>(), new HashMap<>(), 0);
+        }
+        this.shards = created;
+        this.shardBits = 32 - Integer.numberOfLeadingZeros(numberOfShards - 1);
+    }
+
+    /**
+     * Number of shards of this Log
+     *
+     * @return number of shards
+     */
+    public int numberOfShards() {
+        return shards.length;
+    }
+
+    private int shardOf(String source) {
+        int hash = source.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), shards.length);
+    }
+
+    @Override
+    public Log<Long, V> fork() {
+        ShardedLog<V> result = new ShardedLog<>(UUID.randomUUID(), shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            Shard<V> shard = shards[i];
+            synchronized (shard) {
+                result.shards[i] = new Shard<>(shard.store.fork(), new HashMap<>(shard.latest), shard.nextSequence);
+            }
+        }
+        result.parent = this.id;
+        return result;
+    }
+
+    @Override
+    public Log<Long, V> fork(Predicate<Entry<Long, V>> filter) {
+        ShardedLog<V> result = copy(UUID.randomUUID(), filter);
+        result.parent = this.id;
+        return result;
+    }
+
+    /**
+     * Compacts the Log into a new one with the same id and parent. The retained tail consists of the entries with
+     * the biggest indices. Sequences of the shards continue in the compacted Log.
+     *
+     * @param retainedTail number of the most recent entries to keep in addition to the latest entries per source
+     * @return compacted Log
+     */
+    @Override
+    public Log<Long, V> compact(int retainedTail) {
+        ShardedLog<V> result = copy(id, Compaction.retained(this, retainedTail));
+        result.parent = this.parent;
+        return result;
+    }
+
+    private ShardedLog<V> copy(UUID newId, Predicate<Entry<Long, V>> filter) {
+        ShardedLog<V> result = new ShardedLog<>(newId, shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            PersistentVector<Entry<Long, V>> snapshot;
+            long nextSequence;
+            synchronized (shards[i]) {
+                snapshot = shards[i].store.fork();
+                nextSequence = shards[i].nextSequence;
+            }
+            Shard<V> target = result.shards[i];
+            for (Entry<Long, V> entry : snapshot) {
+                if (filter.test(entry)) {
+                    target.append(entry);
+                }
+            }
+            target.nextSequence = nextSequence;
+        }
+        return result;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Shard<V> shard : shards) {
+            synchronized (shard) {
+                size += shard.store.size();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public Iterator<Entry<Long, V>> iterator() {
+        List<Iterator<Entry<Long, V>>> iterators = new ArrayList<>(shards.length);
+        for (PersistentVector<Entry<Long, V>> snapshot : snapshots()) {
+            iterators.add(snapshot.iterator());
+        }
+        return new MergingIterator<>(iterators, Comparator.naturalOrder());
+    }
+
+    /**
+     * Merges shards walking each of them backwards
+     *
+     * @return an iterator over Log entries in descending order of indices
+     */
+    @Override
+    public Iterator<Entry<Long, V>> descendingIterator() {
+        List<Iterator<Entry<Long, V>>> iterators = new ArrayList<>(shards.length);
+        for (PersistentVector<Entry<Long, V>> snapshot : snapshots()) {
+            iterators.add(new DescendingIterator<>(snapshot));
+        }
+        return new MergingIterator<>(iterators, Comparator.reverseOrder());
+    }
+
+    @Override
+    public Stream<Entry<Long, V>> since(Long index) {
+        IndexRanges.checkIndex(index);
+        List<Iterator<Entry<Long, V>>> iterators = new ArrayList<>(shards.length);
+        for (PersistentVector<Entry<Long, V>> snapshot : snapshots()) {
+            iterators.add(snapshot.subList(positionOf(snapshot, index), snapshot.size()).iterator());
+        }
+        return stream(new MergingIterator<>(iterators, Comparator.naturalOrder()));
+    }
+
+    @Override
+    public Stream<Entry<Long, V>> range(Long from, Long to) {
+        IndexRanges.checkRange(from, to);
+        List<Iterator<Entry<Long, V>>> iterators = new ArrayList<>(shards.length);
+        for (PersistentVector<Entry<Long, V>> snapshot : snapshots()) {
+            iterators.add(snapshot.subList(positionOf(snapshot, from), positionOf(snapshot, to)).iterator());
+        }
+        return stream(new MergingIterator<>(iterators, Comparator.naturalOrder()));
+    }
+
+    /**
+     * Merges shards walking each of them backwards until the requested number of entries is found
+     *
+     * @param count number of entries to return
+     * @return stream of at most count entries
+     */
+    @Override
+    public Stream<Entry<Long, V>> tail(int count) {
+        IndexRanges.checkCount(count);
+        List<Entry<Long, V>> result = new ArrayList<>(Math.min(count, 1024));
+        Iterator<Entry<Long, V>> descending = descendingIterator();
+        while (result.size() < count && descending.hasNext()) {
+            result.add(descending.next());
+        }
+        Collections.reverse(result);
+        return result.stream();
+    }
+
+    /**
+     * Takes a snapshot of every shard holding the lock of that shard only. Each snapshot is a prefix of its shard,
+     * entries added to the shard later are not visible in it.
+     */
+    private List<PersistentVector<Entry<Long, V>>> snapshots() {
+        List<PersistentVector<Entry<Long, V>>> snapshots = new ArrayList<>(shards.length);
+        for (Shard<V> shard : shards) {
+            synchronized (shard) {
+                snapshots.add(shard.store.fork());
+            }
+        }
+        return snapshots;
+    }
+
+    /**
+     * Finds the position of the first entry of a shard with an index bigger than or equal to the given one
+     */
+    private static <V> int positionOf(List<Entry<Long, V>> entries, long index) {
+        int low = 0;
+        int high = entries.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (entries.get(middle).index() < index) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static <V> Stream<Entry<Long, V>> stream(Iterator<Entry<Long, V>> iterator) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, CHARACTERISTICS), false);
+    }
+
+    @Override
+    public void add(String source, V value) {
+        Objects.requireNonNull(source, "null values are not allowed");
+        Objects.requireNonNull(value, "null values are not allowed");
+        int number = shardOf(source);
+        Shard<V> shard = shards[number];
+        Entry<Long, V> entry;
+        synchronized (shard) {
+            entry = new ComparableIdEntry<>(source, takeSequences(shard, 1) << shardBits | number, value);
+            shard.append(entry);
+        }
+        appended(entry);
+    }
+
+    /**
+     * Adds values of one source locking its shard once for the whole batch
+     *
+     * @param source the source which produced the values
+     * @param values values to store in the Log in the order of their indices
+     */
+    @Override
+    public void addAll(String source, List<V> values) {
+        if (values == null) {
+            throw new IllegalArgumentException("Unable to add null values");
+        }
+        Objects.requireNonNull(source, "null values are not allowed");
+        for (V value : values) {
+            Objects.requireNonNull(value, "null values are not allowed");
+        }
+        if (values.isEmpty()) {
+            return;
+        }
+        int number = shardOf(source);
+        Shard<V> shard = shards[number];
+        List<Entry<Long, V>> batch = new ArrayList<>(values.size());
+        synchronized (shard) {
+            long sequence = takeSequences(shard, values.size());
+            for (V value : values) {
+                batch.add(new ComparableIdEntry<>(source, sequence++ << shardBits | number, value));
+            }
+            for (Entry<Long, V> entry : batch) {
+                shard.append(entry);
+            }
+        }
+        for (Entry<Long, V> entry : batch) {
+            appended(entry);
+        }
+    }
+
+    /**
+     * Takes a range of sequence numbers of a shard. Must be called holding the lock of the shard.
+     *
+     * @param shard shard to take sequence numbers from
+     * @param count number of sequence numbers
+     * @return the first sequence number of the range
+     */
+    private long takeSequences(Shard<V> shard, int count) {
+        long sequence = shard.nextSequence;
+        if (sequence > (Long.MAX_VALUE >>> shardBits) - count + 1) {
+            throw new IndexOutOfBoundsException("Maximum capacity has been reached");
+        }
+        shard.nextSequence = sequence + count;
+        return sequence;
+    }
+
+    /**
+     * Adds entries to the shards of their sources. The low bits of an index must be the number of the shard of
+     * the entry's source, as they are in entries of a ShardedLog with the same number of shards. Within a shard
+     * entries must be added in the order of their indices.
+     *
+     * @param entries entries to add
+     */
+    @Override
+    public void addAll(Collection<Entry<Long, V>> entries) {
+        if (entries == null) {
+            throw new IllegalArgumentException("Unable to add null entries");
+        }
+        for (Entry<Long, V> entry : entries) {
+            if (entry == null) {
+                throw new IllegalArgumentException("Unable to add null entry");
+            }
+            if (entry.index() == null || entry.source() == null || entry.value() == null) {
+                throw new IllegalArgumentException("Unable to add entry with null index, source or value");
+            }
+            if ((entry.index() & ((1L << shardBits) - 1)) != shardOf(entry.source())) {
+                throw new IllegalArgumentException("Index [" + entry.index() + "] does not belong to the shard of "
+                        + "source [" + entry.source() + "]");
+            }
+        }
+        for (Entry<Long, V> entry : entries) {
+            long index = entry.index();
+            Shard<V> shard = shards[shardOf(entry.source())];
+            synchronized (shard) {
+                shard.append(entry);
+                shard.nextSequence = Math.max(shard.nextSequence, (index >>> shardBits) + 1);
+            }
+            appended(entry);
+        }
+    }
+
+    @Override
+    public Optional<Entry<Long, V>> latestBySource(String source) {
+        if (source == null) {
+            throw new IllegalArgumentException("Source can not be null");
+        }
+        Shard<V> shard = shards[shardOf(source)];
+        synchronized (shard) {
+            return Optional.ofNullable(shard.latest.get(source));
+        }
+    }
+
+    @Override
+    public Set<Entry<Long, V>> latestBySources(Set<String> sources) {
+        if (sources == null) {
+            throw new IllegalArgumentException("Sources can not be null");
+        }
+        Set<Entry<Long, V>> result = new HashSet<>();
+        for (String source : sources) {
+            latestBySource(source).ifPresent(result::add);
+        }
+        return result;
+    }
+
+    @Override
+    public Set<String> sources() {
+        Set<String> result = new HashSet<>();
+        for (Shard<V> shard : shards) {
+            synchronized (shard) {
+                result.addAll(shard.latest.keySet());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Spliterator<Entry<Long, V>> spliterator() {
+        return Spliterators.spliteratorUnknownSize(iterator(), CHARACTERISTICS);
+    }
+
+    @Override
+    public void close() {
+        completeAppends();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ShardedLog<?> that = (ShardedLog<?>) o;
+        if (!id.equals(that.id) || shards.length != that.shards.length) {
+            return false;
+        }
+        Iterator<?> iterator = that.iterator();
+        for (Entry<Long, V> entry : this) {
+            if (!iterator.hasNext() || !entry.equals(iterator.next())) {
+                return false;
+            }
+        }
+        return !iterator.hasNext();
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, shards.length);
+    }
+
+    /**
+     * A partition of the Log. All fields are guarded by the shard's monitor.
+     */
+    private static final class Shard<V> {
+
+        private final PersistentVector<Entry<Long, V>> store;
+        private final Map<String, Entry<Long, V>> latest;
+        private long nextSequence;
+
+        Shard(PersistentVector<Entry<Long, V>> store, Map<String, Entry<Long, V>> latest, long nextSequence) {
+            this.store = store;
+            this.latest = latest;
+            this.nextSequence = nextSequence;
+        }
+
+        void append(Entry<Long, V> entry) {
+            long index = entry.index();
+            if (index < 0) {
+                throw new IllegalArgumentException("Index of an entry can not be negative");
+            }
+            if (!store.isEmpty() && index <= store.get(store.size() - 1).index()) {
+                throw new IllegalArgumentException("Entries must be added to a shard in the order of indices");
+            }
+            store.add(entry);
+            latest.put(entry.source(), entry);
+        }
+    }
+
+    /**
+     * Merges iterators over shards which have the same order into one sequence of that order
+     */
+    private static final class MergingIterator<V> implements Iterator<Entry<Long, V>> {
+
+        private final PriorityQueue<Cursor<V>> cursors;
+
+        MergingIterator(List<Iterator<Entry<Long, V>>> iterators, Comparator<Cursor<V>> order) {
+            this.cursors = new PriorityQueue<>(Math.max(1, iterators.size()), order);
+            for (Iterator<Entry<Long, V>> iterator : iterators) {
+                if (iterator.hasNext()) {
+                    cursors.add(new Cursor<>(iterator));
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !cursors.isEmpty();
+        }
+
+        @Override
+        public Entry<Long, V> next() {
+            Cursor<V> cursor = cursors.poll();
+            if (cursor == null) {
+                throw new NoSuchElementException();
+            }
+            Entry<Long, V> result = cursor.current;
+            if (cursor.iterator.hasNext()) {
+                cursor.current = cursor.iterator.next();
+                cursors.add(cursor);
+            }
+            return result;
+        }
+    }
+
+    private static final class Cursor<V> implements Comparable<Cursor<V>> {
+
+        private final Iterator<Entry<Long, V>> iterator;
+        private Entry<Long, V> current;
+
+        Cursor(Iterator<Entry<Long, V>> iterator) {
+            this.iterator = iterator;
+            this.current = iterator.next();
+        }
+
+        @Override
+        public int compareTo(Cursor<V> other) {
+            return current.compareTo(other.current);
+        }
+    }
+}
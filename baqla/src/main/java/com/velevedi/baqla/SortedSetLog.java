@@ -21,9 +21,7 @@ import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.util.*;
 import java.util.function.Predicate;
-
-import static java.util.Comparator.reverseOrder;
-import static java.util.stream.Collectors.toList;
+import java.util.stream.Stream;
 
 /**
  * Log implementation which uses SortedSet as a data store to save entries.
@@ -34,6 +32,7 @@ public class SortedSetLog<I extends Comparable<? super I>, V> extends AbstractLo
 
     private final IndexFactory<I> indexFactory;
     private final SortedSet<Entry<I, V>> store;
+    private final LatestEntries<I, V> latest;
 
     public SortedSetLog(IndexFactory<I> indexFactory, SortedSet<Entry<I, V>> store) {
         this(UUID.randomUUID(), indexFactory, store);
@@ -49,22 +48,99 @@ public class SortedSetLog<I extends Comparable<? super I>, V> extends AbstractLo
         }
         this.indexFactory = indexFactory;
         this.store = store;
+        this.latest = new LatestEntries<>();
+        for (Entry<I, V> entry : store) {
+            latest.update(entry);
+        }
+    }
+
+    private SortedSetLog(UUID id, IndexFactory<I> indexFactory, SortedSet<Entry<I, V>> store, LatestEntries<I, V> latest) {
+        super(id);
+        this.indexFactory = indexFactory;
+        this.store = store;
+        this.latest = latest;
     }
 
+    /**
+     * Forks current Log into a new one. The backing store is copied with a constructor accepting
+     * a SortedSet when it is available. Such constructors of the standard sets take linear time as entries
+     * are already sorted.
+     *
+     * @return new instance of the Log
+     */
     @Override
     @SuppressWarnings("unchecked")
+    public Log<I, V> fork() {
+        SortedSet<Entry<I, V>> newStore;
+        try {
+            newStore = store.getClass().getDeclaredConstructor(SortedSet.class).newInstance(store);
+        } catch (NoSuchMethodException e) {
+            return fork(entry -> true);
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            throw new RuntimeException("Unable to fork log [" + id + "]", e);
+        }
+        SortedSetLog<I, V> result = new SortedSetLog<>(UUID.randomUUID(), indexFactory, newStore, new LatestEntries<>(latest));
+        result.parent = this.id;
+        return result;
+    }
+
+    @Override
     public Log<I, V> fork(Predicate<Entry<I, V>> filter) {
+        SortedSetLog<I, V> result = copy(UUID.randomUUID(), filter);
+        result.parent = this.id;
+        return result;
+    }
+
+    /**
+     * Compacts the Log into a new one with the same id and parent. The store of the new Log has the same type
+     * as the store of this Log.
+     *
+     * @param retainedTail number of the most recent entries to keep in addition to the latest entries per source
+     * @return compacted Log
+     */
+    @Override
+    public Log<I, V> compact(int retainedTail) {
+        SortedSetLog<I, V> result = copy(id, Compaction.retained(this, retainedTail));
+        result.parent = this.parent;
+        return result;
+    }
+
+    /**
+     * Copies entries accepted by the filter into a new Log with the same type of the store
+     */
+    @SuppressWarnings("unchecked")
+    private SortedSetLog<I, V> copy(UUID newId, Predicate<Entry<I, V>> filter) {
+        SortedSet<Entry<I, V>> newStore;
         try {
-            SortedSet<Entry<I, V>> newStore = store.getClass().getDeclaredConstructor().newInstance();
-            newStore.addAll(
-                    store.stream().sorted(reverseOrder()).filter(filter).collect(toList()))
-            ;
-            SortedSetLog<I, V> result = new SortedSetLog<>(indexFactory, newStore);
-            result.parent = this.id;
-            return result;
+            newStore = store.getClass().getDeclaredConstructor().newInstance();
         } catch (InstantiationException | IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
-            throw new RuntimeException(e);
+            throw new RuntimeException("Unable to copy log [" + id + "]", e);
+        }
+        LatestEntries<I, V> newLatest = new LatestEntries<>(latest.dictionary());
+        for (Entry<I, V> entry : store) {
+            if (filter.test(entry)) {
+                newStore.add(entry);
+                newLatest.update(entry);
+            }
         }
+        return new SortedSetLog<>(newId, indexFactory, newStore, newLatest);
+    }
+
+    /**
+     * Forks current Log into a lazy view. Entries added to this Log after forking are not visible in the view
+     * as long as their indices are bigger than the indices of existing entries.
+     *
+     * @param filter filter that will be applied to entries of this Log when the new Log reads them
+     * @return new instance of the Log
+     */
+    @Override
+    public Log<I, V> lazyFork(Predicate<Entry<I, V>> filter) {
+        if (store.isEmpty()) {
+            return fork(filter);
+        }
+        OverlayLog<I, V> result = new OverlayLog<>(this, store.last().index(), filter, indexFactory);
+        result.parent = this.id;
+        return result;
     }
 
     @Override
@@ -82,10 +158,51 @@ public class SortedSetLog<I extends Comparable<? super I>, V> extends AbstractLo
         return new UnmodifiableIterator<>(store);
     }
 
+    /**
+     * Uses the descending view of the store when the store is a NavigableSet sorted by index
+     *
+     * @return an iterator over Log entries in descending order of indices
+     */
+    @Override
+    public Iterator<Entry<I, V>> descendingIterator() {
+        if (store.comparator() != null || !(store instanceof NavigableSet)) {
+            return IndexRanges.descending(this);
+        }
+        return new UnmodifiableIterator<>(((NavigableSet<Entry<I, V>>) store).descendingSet());
+    }
+
     @Override
     public void add(String source, V value) {
         I nextIndex = indexFactory.nextIndex();
-        store.add(new ComparableIdEntry<>(source, nextIndex, value));
+        int sourceId = latest.register(source);
+        Entry<I, V> entry = new ComparableIdEntry<>(latest.sourceOf(sourceId), nextIndex, value);
+        if (store.add(entry)) {
+            latest.update(sourceId, entry);
+            appended(entry);
+        }
+    }
+
+    /**
+     * Adds values of one source with a block of indices reserved at once
+     *
+     * @param source the source which produced the values
+     * @param values values to store in the Log in the order of their indices
+     */
+    @Override
+    public void addAll(String source, List<V> values) {
+        if (values == null) {
+            throw new IllegalArgumentException("Unable to add null values");
+        }
+        int sourceId = latest.register(source);
+        String canonical = latest.sourceOf(sourceId);
+        Iterator<I> indices = indexFactory.reserve(values.size()).iterator();
+        for (V value : values) {
+            Entry<I, V> entry = new ComparableIdEntry<>(canonical, indices.next(), value);
+            if (store.add(entry)) {
+                latest.update(sourceId, entry);
+                appended(entry);
+            }
+        }
     }
 
     @Override
@@ -93,7 +210,74 @@ public class SortedSetLog<I extends Comparable<? super I>, V> extends AbstractLo
         if (entries == null) {
             throw new IllegalArgumentException("Unable to add null entry");
         }
-        store.addAll(entries);
+        for (Entry<I, V> entry : entries) {
+            // entries with an index which is already present are not added by the set
+            if (store.add(entry)) {
+                latest.update(entry);
+                appended(entry);
+            }
+        }
+    }
+
+    @Override
+    public Optional<Entry<I, V>> latestBySource(String source) {
+        return latest.get(source);
+    }
+
+    @Override
+    public Set<Entry<I, V>> latestBySources(Set<String> sources) {
+        return latest.get(sources);
+    }
+
+    @Override
+    public int sourceId(String source) {
+        return latest.find(source);
+    }
+
+    @Override
+    public Optional<Entry<I, V>> latestBySourceId(int sourceId) {
+        return Optional.ofNullable(latest.get(sourceId));
+    }
+
+    @Override
+    public Set<String> sources() {
+        return latest.sources();
+    }
+
+    /**
+     * Returns a view of the store starting at the index when entries are sorted by index.
+     * The store is searched in logarithmic time for the standard sorted sets.
+     */
+    @Override
+    public Stream<Entry<I, V>> since(I index) {
+        if (store.comparator() != null) {
+            return IndexRanges.since(this, index);
+        }
+        IndexRanges.checkIndex(index);
+        return store.tailSet(new IndexProbe<>(index)).stream();
+    }
+
+    @Override
+    public Stream<Entry<I, V>> range(I from, I to) {
+        if (store.comparator() != null) {
+            return IndexRanges.range(this, from, to);
+        }
+        IndexRanges.checkRange(from, to);
+        return store.subSet(new IndexProbe<>(from), new IndexProbe<>(to)).stream();
+    }
+
+    @Override
+    public Stream<Entry<I, V>> tail(int count) {
+        if (store.comparator() != null || !(store instanceof NavigableSet)) {
+            return IndexRanges.tail(this, count);
+        }
+        IndexRanges.checkCount(count);
+        Deque<Entry<I, V>> result = new ArrayDeque<>(Math.min(count, store.size()));
+        Iterator<Entry<I, V>> descending = descendingIterator();
+        while (result.size() < count && descending.hasNext()) {
+            result.addFirst(descending.next());
+        }
+        return result.stream();
     }
 
     @Override
@@ -103,6 +287,7 @@ public class SortedSetLog<I extends Comparable<? super I>, V> extends AbstractLo
 
     @Override
     public void close() throws IOException {
+        completeAppends();
         if (store instanceof Closeable) {
             ((Closeable) store).close();
         }
@@ -120,4 +305,31 @@ public class SortedSetLog<I extends Comparable<? super I>, V> extends AbstractLo
     public int hashCode() {
         return Objects.hash(id, store);
     }
+
+    /**
+     * Entry which has an index only. It is used to search entries in the store by index.
+     */
+    private static final class IndexProbe<I extends Comparable<? super I>, V> implements Entry<I, V> {
+
+        private final I index;
+
+        IndexProbe(I index) {
+            this.index = index;
+        }
+
+        @Override
+        public String source() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public I index() {
+            return index;
+        }
+
+        @Override
+        public V value() {
+            throw new UnsupportedOperationException();
+        }
+    }
 }
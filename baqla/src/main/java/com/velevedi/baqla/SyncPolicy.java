@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.velevedi.baqla;
+
+/**
+ * Defines when entries appended to a {@link WriteAheadLog} are forced to the storage device.
+ */
+public final class SyncPolicy {
+
+    enum Kind {
+        EVERY_APPEND, INTERVAL, BYTES
+    }
+
+    private final Kind kind;
+    private final long threshold;
+
+    private SyncPolicy(Kind kind, long threshold) {
+        this.kind = kind;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Each append returns only when its entries are durable. Appends made concurrently share a single force.
+     *
+     * @return sync policy
+     */
+    public static SyncPolicy everyAppend() {
+        return new SyncPolicy(Kind.EVERY_APPEND, 0);
+    }
+
+    /**
+     * Appended entries are forced in the background once in the given period of time.
+     * Entries appended during the last period can be lost.
+     *
+     * @param millis period in milliseconds
+     * @return sync policy
+     */
+    public static SyncPolicy everyMillis(long millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException("Sync interval must be positive");
+        }
+        return new SyncPolicy(Kind.INTERVAL, millis);
+    }
+
+    /**
+     * An append forces appended entries when the number of bytes not yet forced reaches the threshold.
+     * Entries which take less bytes than the threshold can be lost.
+     *
+     * @param bytes number of bytes
+     * @return sync policy
+     */
+    public static SyncPolicy everyBytes(long bytes) {
+        if (bytes <= 0) {
+            throw new IllegalArgumentException("Number of bytes must be positive");
+        }
+        return new SyncPolicy(Kind.BYTES, bytes);
+    }
+
+    Kind kind() {
+        return kind;
+    }
+
+    long threshold() {
+        return threshold;
+    }
+
+    @Override
+    public String toString() {
+        return "SyncPolicy{" + kind + (kind == Kind.EVERY_APPEND ? "" : ", " + threshold) + '}';
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Append only store of byte records in direct buffers (slabs) outside of the heap. A record is addressed by
+ * a handle which combines the number of the slab and the offset of the record in it:
+ * <code>handle = slab &lt;&lt; 32 | offset</code>. The layout of a record is <code>| length int | bytes |</code>.
+ * <p>
+ * Records are never moved or freed one by one. The memory of a slab is released when the arena is not
+ * referenced any more. The arena can be shared by Logs forked from each other, allocation is synchronized
+ * and reading does not lock.
+ * </p>
+ */
+final class ValueArena {
+
+    static final int LENGTH_SIZE = Integer.BYTES;
+
+    private final int slabSize;
+    private volatile ByteBuffer[] slabs = new ByteBuffer[0];
+    private int writePosition;
+    private long allocated;
+
+    /**
+     * @param slabSize size of a slab in bytes, records bigger than a slab get a slab of their own
+     */
+    ValueArena(int slabSize) {
+        if (slabSize <= LENGTH_SIZE) {
+            throw new IllegalArgumentException("Slab size must be more than " + LENGTH_SIZE + " bytes");
+        }
+        this.slabSize = slabSize;
+    }
+
+    /**
+     * Allocates a record and writes its length
+     *
+     * @param length number of bytes of the record without the length field
+     * @return handle of the record
+     */
+    synchronized long allocate(int length) {
+        if (length < 0 || length > Integer.MAX_VALUE - LENGTH_SIZE) {
+            throw new IllegalArgumentException("Unable to allocate " + length + " bytes");
+        }
+        int recordSize = LENGTH_SIZE + length;
+        ByteBuffer[] current = slabs;
+        if (current.length == 0 || writePosition > slabSize - recordSize) {
+            ByteBuffer slab = ByteBuffer.allocateDirect(Math.max(slabSize, recordSize));
+            current = Arrays.copyOf(current, current.length + 1);
+            current[current.length - 1] = slab;
+            slabs = current;
+            writePosition = 0;
+        }
+        int slab = current.length - 1;
+        int offset = writePosition;
+        current[slab].putInt(offset, length);
+        writePosition += recordSize;
+        allocated += recordSize;
+        return (long) slab << 32 | offset;
+    }
+
+    /**
+     * Creates a buffer positioned at the first byte of a record. Each call returns a new buffer, so callers
+     * do not interfere with each other.
+     *
+     * @param handle handle of the record
+     * @return buffer with the position at the first byte and the limit after the last byte of the record
+     */
+    ByteBuffer record(long handle) {
+        ByteBuffer slab = slabs[(int) (handle >>> 32)];
+        int offset = (int) handle + LENGTH_SIZE;
+        ByteBuffer result = slab.duplicate();
+        result.limit(offset + slab.getInt(offset - LENGTH_SIZE)).position(offset);
+        return result;
+    }
+
+    /**
+     * The slab which holds a record. Callers read the record at {@link #offset(long)} with absolute methods.
+     *
+     * @param handle handle of the record
+     * @return slab of the record
+     */
+    ByteBuffer slab(long handle) {
+        return slabs[(int) (handle >>> 32)];
+    }
+
+    /**
+     * @param handle handle of the record
+     * @return absolute offset of the first byte of the record in its slab
+     */
+    static int offset(long handle) {
+        return (int) handle + LENGTH_SIZE;
+    }
+
+    /**
+     * @param handle handle of the record
+     * @return number of bytes of the record
+     */
+    int length(long handle) {
+        return slab(handle).getInt((int) handle);
+    }
+
+    /**
+     * @return number of bytes allocated in slabs including lengths of records
+     */
+    synchronized long allocated() {
+        return allocated;
+    }
+}
@@ -0,0 +1,717 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.velevedi.baqla;
+
+import com.velevedi.baqla.codec.EntryCodec;
+import com.velevedi.baqla.codec.IntegerIndexCodec;
+import com.velevedi.baqla.codec.ValueCodec;
+import com.velevedi.baqla.util.IndexFactory;
+import com.velevedi.baqla.util.IntegerIndexFactory;
+import com.velevedi.baqla.util.SourceDictionary;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Durable Log implementation. Entries are kept in memory and appended to a write-ahead file before
+ * they become visible. The file is replayed when the Log is opened, a record written partially before a crash
+ * is dropped.
+ * <p>
+ * Each record of the file is:
+ * <pre>
+ * | length (int) | CRC32 (int) | kind (byte) | payload |
+ * </pre>
+ * Length covers the kind and the payload, the checksum covers the same bytes. The payload of an entry record
+ * is encoded by {@link EntryCodec}, a source record holding the UTF-8 name of a source precedes the first entry
+ * of the source.
+ * </p>
+ * <p>
+ * Forcing the file to the storage device is controlled by a {@link SyncPolicy}. Threads which append
+ * concurrently are committed as a group: one of them forces the file for all records written so far
+ * while others wait for it. Subscribers to {@link #appends(java.util.concurrent.Executor)} receive entries once
+ * they are committed according to the policy.
+ * </p>
+ * Methods of the Log are synchronized on the Log object. Iterators and streams work on a snapshot
+ * of entries taken when they are created.
+ *
+ * @param <V> type of a value of an entry
+ * @see SyncPolicy
+ */
+public class WriteAheadLog<V> extends AbstractLog<Integer, V> {
+
+    private static final byte SOURCE_RECORD = 0;
+    private static final byte ENTRY_RECORD = 1;
+    private static final int RECORD_HEADER_SIZE = Integer.BYTES + Integer.BYTES + Byte.BYTES;
+    private static final int FLUSH_THRESHOLD = 1024 * 1024;
+    // the biggest part of the file mapped at once while replaying
+    private static final int REPLAY_WINDOW = Integer.MAX_VALUE;
+
+    private final Path file;
+    private final ValueCodec<V> valueCodec;
+    private final EntryCodec<Integer, V> codec;
+    private final SyncPolicy policy;
+    private final IndexFactory<Integer> indexFactory;
+    private final ScheduledExecutorService scheduler;
+    private final Object syncLock = new Object();
+    private volatile FileChannel channel;
+    private ListLog<V> entries = new ListLog<>();
+    private ByteBuffer buffer = ByteBuffer.allocate(4096);
+    private int persistedSources;
+    private int indexLimit;
+    private boolean closed;
+    private volatile UncheckedIOException failure;
+    // number of bytes ever written to the file and forced to the device, positions survive compaction
+    private volatile long writtenPosition;
+    private volatile long syncedPosition;
+    private boolean syncing;
+
+    public WriteAheadLog(Path file, ValueCodec<V> codec, SyncPolicy policy) {
+        this(UUID.randomUUID(), file, codec, policy);
+    }
+
+    public WriteAheadLog(UUID id, Path file, ValueCodec<V> codec, SyncPolicy policy) {
+        this(id, file, codec, policy, 0, REPLAY_WINDOW);
+    }
+
+    /**
+     * Opens the Log replaying the file through mappings of at most the given number of bytes
+     */
+    WriteAheadLog(UUID id, Path file, ValueCodec<V> codec, SyncPolicy policy, int firstIndex, int replayWindow) {
+        super(id);
+        if (file == null) {
+            throw new IllegalArgumentException("File can not be null");
+        }
+        if (codec == null) {
+            throw new IllegalArgumentException("Value codec can not be null");
+        }
+        if (policy == null) {
+            throw new IllegalArgumentException("Sync policy can not be null");
+        }
+        this.file = file;
+        this.valueCodec = codec;
+        this.codec = new EntryCodec<>(new IntegerIndexCodec(), new SourceDictionary(), codec);
+        this.policy = policy;
+        this.indexLimit = Math.max(firstIndex, open(replayWindow));
+        this.indexFactory = new IntegerIndexFactory(indexLimit);
+        if (policy.kind() == SyncPolicy.Kind.INTERVAL) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "log-sync-" + id);
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(
+                    this::syncInBackground, policy.threshold(), policy.threshold(), TimeUnit.MILLISECONDS
+            );
+        } else {
+            this.scheduler = null;
+        }
+    }
+
+    /**
+     * Opens the file and replays records stored in it.
+     *
+     * @return the index following the biggest index found in the file
+     */
+    private int open(int replayWindow) {
+        try {
+            Path directory = file.toAbsolutePath().getParent();
+            if (directory != null) {
+                Files.createDirectories(directory);
+            }
+            channel = FileChannel.open(file, CREATE, READ, WRITE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open log [" + id + "] in " + file, e);
+        }
+        try {
+            return replay(replayWindow);
+        } catch (IOException | RuntimeException e) {
+            try {
+                channel.close();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            if (e instanceof IOException) {
+                throw new UncheckedIOException("Unable to replay log [" + id + "] from " + file, (IOException) e);
+            }
+            throw (RuntimeException) e;
+        }
+    }
+
+    /**
+     * Reads records of the file. The file is mapped in parts of at most the window size, a record crossing the end
+     * of a part is read from the next part which starts with that record.
+     */
+    private int replay(int window) throws IOException {
+        long fileSize = channel.size();
+        SourceDictionary dictionary = codec.dictionary();
+        List<Entry<Integer, V>> replayed = new ArrayList<>();
+        int nextIndex = 0;
+        long offset = 0;
+        long mappedOffset = 0;
+        ByteBuffer content = null;
+        while (offset + RECORD_HEADER_SIZE <= fileSize) {
+            if (content == null || offset + RECORD_HEADER_SIZE > mappedOffset + content.capacity()) {
+                mappedOffset = offset;
+                content = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(window, fileSize - offset));
+            }
+            int position = (int) (offset - mappedOffset);
+            int length = content.getInt(position);
+            if (length < Byte.BYTES || length > fileSize - offset - RECORD_HEADER_SIZE + Byte.BYTES) {
+                break;
+            }
+            int dataOffset = position + Integer.BYTES + Integer.BYTES;
+            if ((long) dataOffset + length > content.capacity()) {
+                if (position == 0) {
+                    throw new IOException("Record of " + length + " bytes at " + offset + " is bigger than "
+                            + window + " bytes which can be mapped at once");
+                }
+                content = null;
+                continue;
+            }
+            if (content.getInt(position + Integer.BYTES) != checksum(content, dataOffset, length)) {
+                break;
+            }
+            byte kind = content.get(dataOffset);
+            if (kind == SOURCE_RECORD) {
+                byte[] bytes = new byte[length - Byte.BYTES];
+                ByteBuffer view = content.duplicate();
+                view.position(dataOffset + Byte.BYTES);
+                view.get(bytes);
+                dictionary.idOf(new String(bytes, UTF_8));
+            } else if (kind == ENTRY_RECORD) {
+                Entry<Integer, V> entry = codec.decode(content, dataOffset + Byte.BYTES, length - Byte.BYTES);
+                replayed.add(new ComparableIdEntry<>(entry.source(), entry.index(), entry.value()));
+                nextIndex = Math.max(nextIndex, entry.index() + 1);
+            } else {
+                break;
+            }
+            offset += Integer.BYTES + Integer.BYTES + length;
+        }
+        entries.addAll(replayed);
+        persistedSources = dictionary.size();
+
+        // a record written partially before a crash is dropped
+        channel.truncate(offset);
+        channel.position(offset);
+        writtenPosition = offset;
+        syncedPosition = offset;
+        return nextIndex;
+    }
+
+    private static int checksum(ByteBuffer buffer, int offset, int length) {
+        CRC32 crc = new CRC32();
+        ByteBuffer view = buffer.duplicate();
+        view.limit(offset + length).position(offset);
+        crc.update(view);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * File where entries of this Log are stored
+     *
+     * @return file of the Log
+     */
+    public Path file() {
+        return file;
+    }
+
+    public SyncPolicy policy() {
+        return policy;
+    }
+
+    /**
+     * Forks the Log into a new file next to the file of this Log. The file is named by the id of the new Log
+     * with the <code>.wal</code> extension and is not removed when the new Log is closed.
+     *
+     * @param filter filter that will be applied before copying entries to the new Log
+     * @return new instance of the Log
+     * @see #fork(Predicate, Path)
+     */
+    @Override
+    public Log<Integer, V> fork(Predicate<Entry<Integer, V>> filter) {
+        UUID forkId = UUID.randomUUID();
+        return fork(forkId, filter, file.resolveSibling(forkId + ".wal"));
+    }
+
+    /**
+     * Forks the Log into a new file
+     *
+     * @param target file of the new Log
+     * @return new instance of the Log
+     */
+    public WriteAheadLog<V> fork(Path target) {
+        return fork(entry -> true, target);
+    }
+
+    /**
+     * Forks the Log into a new file
+     *
+     * @param filter filter that will be applied before copying entries to the new Log
+     * @param target file of the new Log
+     * @return new instance of the Log
+     */
+    public WriteAheadLog<V> fork(Predicate<Entry<Integer, V>> filter, Path target) {
+        if (filter == null) {
+            throw new IllegalArgumentException("Filter can not be null");
+        }
+        if (target == null) {
+            throw new IllegalArgumentException("Target file can not be null");
+        }
+        return fork(UUID.randomUUID(), filter, target);
+    }
+
+    private WriteAheadLog<V> fork(UUID forkId, Predicate<Entry<Integer, V>> filter, Path target) {
+        List<Entry<Integer, V>> copied;
+        int firstIndex;
+        synchronized (this) {
+            copied = entries.stream().filter(filter).collect(Collectors.toList());
+            firstIndex = indexLimit;
+        }
+        WriteAheadLog<V> result = new WriteAheadLog<>(
+                forkId, target, valueCodec, policy, firstIndex, REPLAY_WINDOW
+        );
+        result.addAll(copied);
+        result.parent = this.id;
+        return result;
+    }
+
+    /**
+     * Compacts the Log in place. Retained entries are written into a new file which replaces the current one.
+     *
+     * @param retainedTail number of the most recent entries to keep in addition to the latest entries per source
+     * @return this Log
+     */
+    @Override
+    public synchronized Log<Integer, V> compact(int retainedTail) {
+        ensureWritable();
+        ListLog<V> compacted = (ListLog<V>) entries.compact(retainedTail);
+        Path temporary = file.resolveSibling(file.getFileName() + ".compaction");
+
+        // no other thread forces the file while it is being replaced
+        synchronized (syncLock) {
+            while (syncing) {
+                awaitSync();
+            }
+            syncing = true;
+        }
+        boolean replaced = false;
+        try {
+            try (FileChannel target = FileChannel.open(temporary, CREATE, TRUNCATE_EXISTING, WRITE)) {
+                int sources = 0;
+                buffer.clear();
+                for (Entry<Integer, V> entry : compacted) {
+                    sources = encode(entry, sources);
+                    if (buffer.position() >= FLUSH_THRESHOLD) {
+                        flush(target);
+                    }
+                }
+                flush(target);
+                target.force(true);
+            }
+            Files.move(temporary, file, REPLACE_EXISTING, ATOMIC_MOVE);
+            replaced = true;
+            channel.close();
+            FileChannel reopened = FileChannel.open(file, READ, WRITE);
+            reopened.position(reopened.size());
+            channel = reopened;
+            entries = compacted;
+            persistedSources = codec.dictionary().size();
+        } catch (IOException e) {
+            UncheckedIOException exception = new UncheckedIOException("Unable to compact log [" + id + "]", e);
+            if (replaced) {
+                failure = exception;
+            }
+            throw exception;
+        } finally {
+            synchronized (syncLock) {
+                syncing = false;
+                if (failure == null) {
+                    syncedPosition = writtenPosition;
+                }
+                syncLock.notifyAll();
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    @Override
+    public Iterator<Entry<Integer, V>> iterator() {
+        return snapshot().iterator();
+    }
+
+    @Override
+    public Spliterator<Entry<Integer, V>> spliterator() {
+        return snapshot().spliterator();
+    }
+
+    @Override
+    public Iterator<Entry<Integer, V>> descendingIterator() {
+        return snapshot().descendingIterator();
+    }
+
+    private synchronized Log<Integer, V> snapshot() {
+        return entries.fork();
+    }
+
+    @Override
+    public void add(String source, V value) {
+        long position;
+        Entry<Integer, V> entry;
+        synchronized (this) {
+            ensureWritable();
+            int nextIndex = indexFactory.nextIndex();
+            if (nextIndex == Integer.MAX_VALUE) {
+                throw new IndexOutOfBoundsException("Maximum capacity has been reached");
+            }
+            String canonical = source == null ? null : codec.dictionary().canonical(source);
+            entry = new ComparableIdEntry<>(canonical, nextIndex, value);
+            position = write(Collections.singletonList(entry));
+            entries.add(entry);
+            indexLimit = Math.max(indexLimit, nextIndex + 1);
+        }
+        committed(position);
+        appended(entry);
+    }
+
+    /**
+     * Adds values of one source with one write to the file and one commit for the whole batch
+     *
+     * @param source the source which produced the values
+     * @param values values to store in the Log in the order of their indices
+     */
+    @Override
+    public void addAll(String source, List<V> values) {
+        if (values == null) {
+            throw new IllegalArgumentException("Unable to add null values");
+        }
+        if (values.isEmpty()) {
+            return;
+        }
+        long position;
+        List<Entry<Integer, V>> batch = new ArrayList<>(values.size());
+        synchronized (this) {
+            ensureWritable();
+            List<Integer> indices = indexFactory.reserve(values.size());
+            int last = indices.get(indices.size() - 1);
+            if (last == Integer.MAX_VALUE) {
+                throw new IndexOutOfBoundsException("Maximum capacity has been reached");
+            }
+            String canonical = source == null ? null : codec.dictionary().canonical(source);
+            Iterator<Integer> index = indices.iterator();
+            for (V value : values) {
+                batch.add(new ComparableIdEntry<>(canonical, index.next(), value));
+            }
+            position = write(batch);
+            entries.addAll(batch);
+            indexLimit = Math.max(indexLimit, last + 1);
+        }
+        committed(position);
+        for (Entry<Integer, V> entry : batch) {
+            appended(entry);
+        }
+    }
+
+    @Override
+    public void addAll(Collection<Entry<Integer, V>> entries) {
+        if (entries == null) {
+            throw new IllegalArgumentException("Unable to add null entries");
+        }
+        if (entries.isEmpty()) {
+            return;
+        }
+        long position;
+        List<Entry<Integer, V>> batch = new ArrayList<>(entries);
+        synchronized (this) {
+            ensureWritable();
+            position = write(batch);
+            this.entries.addAll(batch);
+            for (Entry<Integer, V> entry : batch) {
+                indexLimit = Math.max(indexLimit, entry.index() + 1);
+            }
+        }
+        committed(position);
+        for (Entry<Integer, V> entry : batch) {
+            appended(entry);
+        }
+    }
+
+    private void ensureWritable() {
+        if (closed) {
+            throw new IllegalStateException("Log [" + id + "] has been closed");
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Writes entries to the file without forcing it
+     *
+     * @return position of the file after the entries
+     */
+    private long write(List<Entry<Integer, V>> batch) {
+        int sources = persistedSources;
+        buffer.clear();
+        for (Entry<Integer, V> entry : batch) {
+            sources = encode(entry, sources);
+        }
+        try {
+            flush(channel);
+        } catch (IOException e) {
+            // the file could have been written partially, the Log can not continue
+            failure = new UncheckedIOException("Unable to write log [" + id + "]", e);
+            throw failure;
+        }
+        persistedSources = sources;
+        return writtenPosition;
+    }
+
+    /**
+     * Encodes an entry into the buffer preceding it by records of sources not written yet
+     *
+     * @param entry   entry to encode
+     * @param sources number of sources of the dictionary written so far
+     * @return number of sources of the dictionary written including the entry
+     */
+    private int encode(Entry<Integer, V> entry, int sources) {
+        SourceDictionary dictionary = codec.dictionary();
+        int size = codec.sizeOf(entry);
+        for (; sources < dictionary.size(); sources++) {
+            byte[] bytes = dictionary.sourceOf(sources).getBytes(UTF_8);
+            int start = reserve(bytes.length);
+            buffer.put(SOURCE_RECORD).put(bytes);
+            seal(start);
+        }
+        int start = reserve(size);
+        buffer.put(ENTRY_RECORD);
+        codec.encode(entry, buffer);
+        if (buffer.position() != start + RECORD_HEADER_SIZE + size) {
+            throw new IllegalStateException("Value codec wrote unexpected number of bytes");
+        }
+        seal(start);
+        return sources;
+    }
+
+    /**
+     * Makes room for a record and writes its length
+     *
+     * @return offset of the record in the buffer
+     */
+    private int reserve(int payloadSize) {
+        int recordSize = RECORD_HEADER_SIZE + payloadSize;
+        if (buffer.remaining() < recordSize) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + recordSize));
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+        int start = buffer.position();
+        buffer.putInt(Byte.BYTES + payloadSize).putInt(0);
+        return start;
+    }
+
+    private void seal(int start) {
+        int dataOffset = start + Integer.BYTES + Integer.BYTES;
+        buffer.putInt(start + Integer.BYTES, checksum(buffer, dataOffset, buffer.position() - dataOffset));
+    }
+
+    private void flush(FileChannel target) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+        if (target == channel) {
+            writtenPosition += buffer.limit();
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Applies the sync policy to records written up to the position
+     */
+    private void committed(long position) {
+        switch (policy.kind()) {
+            case EVERY_APPEND:
+                sync(position);
+                break;
+            case BYTES:
+                if (position - syncedPosition >= policy.threshold()) {
+                    sync(position);
+                }
+                break;
+            default:
+                // forced in the background
+        }
+    }
+
+    /**
+     * Forces all entries added so far to the storage device
+     */
+    public void sync() {
+        if (failure != null) {
+            throw failure;
+        }
+        sync(writtenPosition);
+    }
+
+    /**
+     * Waits until records up to the position are forced. If no other thread is forcing the file,
+     * the current thread does it for all records written so far.
+     */
+    private void sync(long position) {
+        while (true) {
+            synchronized (syncLock) {
+                while (syncing && syncedPosition < position) {
+                    awaitSync();
+                }
+                if (syncedPosition >= position) {
+                    return;
+                }
+                syncing = true;
+            }
+            long target = writtenPosition;
+            IOException exception = null;
+            try {
+                channel.force(false);
+            } catch (IOException e) {
+                exception = e;
+            }
+            synchronized (syncLock) {
+                syncing = false;
+                if (exception == null) {
+                    syncedPosition = Math.max(syncedPosition, target);
+                }
+                syncLock.notifyAll();
+            }
+            if (exception != null) {
+                throw new UncheckedIOException("Unable to sync log [" + id + "]", exception);
+            }
+        }
+    }
+
+    private void awaitSync() {
+        try {
+            syncLock.wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(
+                    new InterruptedIOException("Interrupted while waiting for log [" + id + "] to be synced")
+            );
+        }
+    }
+
+    private void syncInBackground() {
+        try {
+            if (syncedPosition < writtenPosition) {
+                sync(writtenPosition);
+            }
+        } catch (UncheckedIOException e) {
+            failure = e;
+        }
+    }
+
+    @Override
+    public synchronized Optional<Entry<Integer, V>> latestBySource(String source) {
+        return entries.latestBySource(source);
+    }
+
+    @Override
+    public synchronized Set<Entry<Integer, V>> latestBySources(Set<String> sources) {
+        return entries.latestBySources(sources);
+    }
+
+    @Override
+    public synchronized int sourceId(String source) {
+        return entries.sourceId(source);
+    }
+
+    @Override
+    public synchronized Optional<Entry<Integer, V>> latestBySourceId(int sourceId) {
+        return entries.latestBySourceId(sourceId);
+    }
+
+    @Override
+    public synchronized Set<String> sources() {
+        return new HashSet<>(entries.sources());
+    }
+
+    /**
+     * Forces all entries added so far and closes the file
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        completeAppends();
+        try {
+            if (scheduler != null) {
+                scheduler.shutdown();
+                scheduler.awaitTermination(1, TimeUnit.MINUTES);
+            }
+            if (failure == null) {
+                sync(writtenPosition);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing log [" + id + "]");
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        WriteAheadLog<?> that = (WriteAheadLog<?>) o;
+        return id.equals(that.id) && file.equals(that.file);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, file);
+    }
+}
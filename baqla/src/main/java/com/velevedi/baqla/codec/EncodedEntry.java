@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.velevedi.baqla.codec;
+
+import com.velevedi.baqla.Log;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * Entry which refers to its value encoded in a buffer. The value is decoded on first access.
+ *
+ * @param <I> type of an index of an entry
+ * @param <V> type of a value of an entry
+ */
+final class EncodedEntry<I extends Comparable<? super I>, V> implements Log.Entry<I, V> {
+
+    private final String source;
+    private final I index;
+    private final ByteBuffer buffer;
+    private final int valueOffset;
+    private final int valueLength;
+    private final ValueCodec<V> codec;
+    private V value;
+
+    EncodedEntry(String source, I index, ByteBuffer buffer, int valueOffset, int valueLength, ValueCodec<V> codec) {
+        this.source = source;
+        this.index = index;
+        this.buffer = buffer;
+        this.valueOffset = valueOffset;
+        this.valueLength = valueLength;
+        this.codec = codec;
+    }
+
+    @Override
+    public String source() {
+        return source;
+    }
+
+    @Override
+    public I index() {
+        return index;
+    }
+
+    @Override
+    public V value() {
+        V result = value;
+        if (result == null) {
+            result = codec.decode(buffer, valueOffset, valueLength);
+            value = result;
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        EncodedEntry<?, ?> that = (EncodedEntry<?, ?>) o;
+        return source.equals(that.source) &&
+                index.equals(that.index) &&
+                value().equals(that.value());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(source, index, value());
+    }
+}
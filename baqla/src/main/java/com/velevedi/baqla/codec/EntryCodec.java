@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.velevedi.baqla.codec;
+
+import com.velevedi.baqla.Log;
+import com.velevedi.baqla.util.SourceDictionary;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Binary format of Log entries shared by Log implementations which keep entries outside of the heap.
+ * An entry is encoded as:
+ * <pre>
+ * | index (varint) | source identifier (varint) | value |
+ * </pre>
+ * Sources are replaced by their identifiers in a {@link SourceDictionary}, values are encoded by
+ * a {@link ValueCodec}. The length of an encoded entry is not stored, a container has to frame entries.
+ * <p>
+ * Decoding does not copy bytes: decoded entries refer to the buffer and decode their values on first access,
+ * so the buffer content must not change while decoded entries are in use.
+ * </p>
+ *
+ * @param <I> type of an index of an entry
+ * @param <V> type of a value of an entry
+ * @see Varints
+ */
+public class EntryCodec<I extends Comparable<? super I>, V> {
+
+    private final IndexCodec<I> indexCodec;
+    private final SourceDictionary dictionary;
+    private final ValueCodec<V> valueCodec;
+
+    public EntryCodec(IndexCodec<I> indexCodec, SourceDictionary dictionary, ValueCodec<V> valueCodec) {
+        if (indexCodec == null) {
+            throw new IllegalArgumentException("Index codec can not be null");
+        }
+        if (dictionary == null) {
+            throw new IllegalArgumentException("Source dictionary can not be null");
+        }
+        if (valueCodec == null) {
+            throw new IllegalArgumentException("Value codec can not be null");
+        }
+        this.indexCodec = indexCodec;
+        this.dictionary = dictionary;
+        this.valueCodec = valueCodec;
+    }
+
+    public SourceDictionary dictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Calculates the number of bytes required to encode an entry. The source of the entry is registered in
+     * the dictionary if it is not known yet.
+     *
+     * @param source source of the entry
+     * @param index  index of the entry
+     * @param value  value of the entry
+     * @return number of bytes the encoded entry will take
+     */
+    public int sizeOf(String source, I index, V value) {
+        return Varints.sizeOf(indexCodec.toLong(index))
+                + Varints.sizeOf(dictionary.idOf(source))
+                + valueCodec.sizeOf(value);
+    }
+
+    public int sizeOf(Log.Entry<I, V> entry) {
+        return sizeOf(entry.source(), entry.index(), entry.value());
+    }
+
+    /**
+     * Writes an entry into the buffer starting at the current position of the buffer.
+     * Exactly {@link #sizeOf(String, Comparable, Object)} bytes will be written.
+     *
+     * @param source source of the entry
+     * @param index  index of the entry
+     * @param value  value of the entry
+     * @param buffer buffer to write to
+     */
+    public void encode(String source, I index, V value, ByteBuffer buffer) {
+        Varints.put(indexCodec.toLong(index), buffer);
+        Varints.put(dictionary.idOf(source), buffer);
+        valueCodec.encode(value, buffer);
+    }
+
+    public void encode(Log.Entry<I, V> entry, ByteBuffer buffer) {
+        encode(entry.source(), entry.index(), entry.value(), buffer);
+    }
+
+    /**
+     * Reads an entry from the buffer. The position of the buffer is not changed.
+     * The value of the entry is decoded when it is accessed for the first time.
+     *
+     * @param buffer buffer to read from
+     * @param offset absolute offset of the first byte of the entry
+     * @param length number of bytes the entry takes
+     * @return decoded entry
+     */
+    public Log.Entry<I, V> decode(ByteBuffer buffer, int offset, int length) {
+        int indexSize = Varints.sizeAt(buffer, offset);
+        int sourceSize = Varints.sizeAt(buffer, offset + indexSize);
+        int valueOffset = offset + indexSize + sourceSize;
+        return new EncodedEntry<>(
+                decodeSource(buffer, offset),
+                decodeIndex(buffer, offset),
+                buffer,
+                valueOffset,
+                length - indexSize - sourceSize,
+                valueCodec
+        );
+    }
+
+    /**
+     * Reads only the index of an entry.
+     *
+     * @param buffer buffer to read from
+     * @param offset absolute offset of the first byte of the entry
+     * @return index of the entry
+     */
+    public I decodeIndex(ByteBuffer buffer, int offset) {
+        return indexCodec.fromLong(Varints.get(buffer, offset));
+    }
+
+    /**
+     * Reads only the source of an entry.
+     *
+     * @param buffer buffer to read from
+     * @param offset absolute offset of the first byte of the entry
+     * @return source of the entry
+     */
+    public String decodeSource(ByteBuffer buffer, int offset) {
+        return dictionary.sourceOf(decodeSourceId(buffer, offset));
+    }
+
+    /**
+     * Reads only the dictionary identifier of the source of an entry.
+     *
+     * @param buffer buffer to read from
+     * @param offset absolute offset of the first byte of the entry
+     * @return identifier of the source in the dictionary of the codec
+     */
+    public int decodeSourceId(ByteBuffer buffer, int offset) {
+        long id = Varints.get(buffer, offset + Varints.sizeAt(buffer, offset));
+        if (id > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Unknown source identifier [" + id + "]");
+        }
+        return (int) id;
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.velevedi.baqla.codec;
+
+/**
+ * Maps indices of Log entries to non-negative long numbers which are stored as variable length integers
+ * by {@link EntryCodec}. Small indices take less bytes.
+ *
+ * @param <I> type of an index of an entry
+ */
+public interface IndexCodec<I> {
+
+    /**
+     * Converts an index into a number to be stored.
+     *
+     * @param index index to convert
+     * @return number representing the index
+     */
+    long toLong(I index);
+
+    /**
+     * Converts a stored number back into an index.
+     *
+     * @param value stored number
+     * @return index represented by the number
+     */
+    I fromLong(long value);
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Codec for Integer values. Each value takes 4 bytes.
+ */
+public class IntegerValueCodec implements ValueCodec<Integer> {
+
+    @Override
+    public int sizeOf(Integer value) {
+        return Integer.BYTES;
+    }
+
+    @Override
+    public void encode(Integer value, ByteBuffer buffer) {
+        buffer.putInt(value);
+    }
+
+    @Override
+    public Integer decode(ByteBuffer buffer, int offset, int length) {
+        if (length != Integer.BYTES) {
+            throw new IllegalArgumentException("Unable to decode integer value of length [" + length + "]");
+        }
+        return buffer.getInt(offset);
+    }
+}
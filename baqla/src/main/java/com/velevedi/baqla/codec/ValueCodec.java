@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts values of Log entries into bytes and back. Persistent Log implementations use a codec to store
+ * values outside of the heap.
+ * Decoding reads bytes at an absolute position and must not change the position of the buffer provided.
+ *
+ * @param <V> type of a value of an entry
+ * @see com.velevedi.baqla.MappedSegmentLog
+ */
+public interface ValueCodec<V> {
+
+    /**
+     * Calculates the number of bytes required to encode a value.
+     *
+     * @param value value to encode
+     * @return number of bytes the encoded value will take
+     */
+    int sizeOf(V value);
+
+    /**
+     * Writes a value into the buffer starting at the current position of the buffer.
+     * Exactly {@link #sizeOf(Object)} bytes will be written.
+     *
+     * @param value  value to encode
+     * @param buffer buffer to write to
+     */
+    void encode(V value, ByteBuffer buffer);
+
+    /**
+     * Reads a value from the buffer. The position of the buffer is not changed.
+     *
+     * @param buffer buffer to read from
+     * @param offset absolute offset of the first byte of the value
+     * @param length number of bytes the value takes
+     * @return decoded value
+     */
+    V decode(ByteBuffer buffer, int offset, int length);
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.velevedi.baqla.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Utility class for variable length integers. A number is stored in groups of 7 bits starting
+ * from the least significant one, the highest bit of a byte is set when more bytes follow.
+ * Negative numbers always take 10 bytes.
+ */
+public final class Varints {
+
+    public static final int MAX_SIZE = 10;
+
+    private Varints() {
+    }
+
+    /**
+     * Calculates the number of bytes required to store a number
+     *
+     * @param value number to store
+     * @return number of bytes from 1 to {@link #MAX_SIZE}
+     */
+    public static int sizeOf(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Writes a number starting at the current position of the buffer
+     *
+     * @param value  number to write
+     * @param buffer buffer to write to
+     */
+    public static void put(long value, ByteBuffer buffer) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Reads a number at an absolute offset. The position of the buffer is not changed.
+     *
+     * @param buffer buffer to read from
+     * @param offset offset of the first byte of the number
+     * @return number read
+     */
+    public static long get(ByteBuffer buffer, int offset) {
+        long result = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            byte b = buffer.get(offset++);
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("Malformed variable length integer");
+    }
+
+    /**
+     * Calculates the number of bytes a number stored at an absolute offset takes.
+     *
+     * @param buffer buffer to read from
+     * @param offset offset of the first byte of the number
+     * @return number of bytes from 1 to {@link #MAX_SIZE}
+     */
+    public static int sizeAt(ByteBuffer buffer, int offset) {
+        int size = 1;
+        while (buffer.get(offset++) < 0) {
+            if (++size > MAX_SIZE) {
+                throw new IllegalArgumentException("Malformed variable length integer");
+            }
+        }
+        return size;
+    }
+}
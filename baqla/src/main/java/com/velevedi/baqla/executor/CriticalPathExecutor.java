@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla.executor;
+
+import com.velevedi.baqla.Executor;
+import com.velevedi.baqla.Graph;
+import com.velevedi.baqla.Log;
+import com.velevedi.baqla.Task;
+import com.velevedi.baqla.graph.DirectedAcyclicGraph;
+import com.velevedi.baqla.graph.DirectedWeightedGraph;
+import com.velevedi.baqla.graph.ExecutionPlan;
+
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Executor which runs all tasks of an acyclic Graph on a pool of workers. A task is ready when all tasks
+ * it depends on have been run. Ready tasks are started in descending order of their critical path lengths
+ * ({@link DirectedWeightedGraph#criticalPathLength(int)}), so long chains of a wide graph are not delayed
+ * behind short branches. Ready tasks of graphs without weights are started in the order of the execution plan.
+ * <p>
+ * Tasks which already have entries in the Log are treated as run. Reads and writes of the Log are serialized
+ * by the executor, so any Log can be used, while tasks calculate their results in parallel.
+ * </p>
+ * The call returns when all tasks have been run. If a task fails, no more tasks are started and the failure
+ * is thrown once the running tasks complete.
+ * <p>
+ * The pool must either run every task it accepts or reject it with {@link RejectedExecutionException}.
+ * A pool which accepts a task and then discards it, like a {@link java.util.concurrent.ThreadPoolExecutor}
+ * with {@link java.util.concurrent.ThreadPoolExecutor.DiscardPolicy} or one shut down with
+ * {@code shutdownNow()}, leaves the call waiting for a completion which never comes.
+ * </p>
+ */
+public class CriticalPathExecutor implements Executor {
+
+    private final java.util.concurrent.Executor workers;
+    private final int parallelism;
+
+    /**
+     * Creates an executor
+     *
+     * @param workers     pool running the tasks, it must run or reject every task given to it
+     * @param parallelism the biggest number of tasks given to the pool at the same time
+     */
+    public CriticalPathExecutor(java.util.concurrent.Executor workers, int parallelism) {
+        if (workers == null) {
+            throw new IllegalArgumentException("Workers can not be null");
+        }
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be more than zero");
+        }
+        this.workers = workers;
+        this.parallelism = parallelism;
+    }
+
+    @Override
+    public <I extends Comparable<? super I>, V> void submit(Graph<V> graph, Log<I, V> log) {
+        if (graph == null) {
+            throw new IllegalArgumentException("Graph argument could not be null");
+        }
+        if (log == null) {
+            throw new IllegalArgumentException("Log arguments could not be null");
+        }
+        if (!(graph instanceof DirectedAcyclicGraph)) {
+            throw new IllegalArgumentException("Graph [" + graph.name() + "] is not known to be acyclic");
+        }
+        ExecutionPlan<V> plan = ((DirectedAcyclicGraph<V>) graph).compile();
+        int numberOfTasks = plan.size();
+        double[] priorities = new double[numberOfTasks];
+        if (graph instanceof DirectedWeightedGraph) {
+            for (int i = 0; i < numberOfTasks; i++) {
+                priorities[i] = ((DirectedWeightedGraph<V>) graph).criticalPathLength(i);
+            }
+        }
+
+        Set<String> sources = log.sources();
+        boolean[] done = new boolean[numberOfTasks];
+        for (int i = 0; i < numberOfTasks; i++) {
+            done[i] = sources.contains(plan.task(i).id());
+        }
+        int[] remaining = new int[numberOfTasks];
+        PriorityQueue<Integer> ready = new PriorityQueue<>(Math.max(1, numberOfTasks), (x, y) -> {
+            int byPriority = Double.compare(priorities[y], priorities[x]);
+            return byPriority != 0 ? byPriority : Integer.compare(x, y);
+        });
+        for (int i = 0; i < numberOfTasks; i++) {
+            if (done[i]) continue;
+            for (int previous : plan.previous(i)) {
+                if (!done[previous]) {
+                    remaining[i]++;
+                }
+            }
+            if (remaining[i] == 0) {
+                ready.add(i);
+            }
+        }
+
+        Object lock = new Object();
+        BlockingQueue<Completion> completions = new LinkedBlockingQueue<>();
+        RuntimeException failure = null;
+        int running = 0;
+        while (running > 0 || (failure == null && !ready.isEmpty())) {
+            while (failure == null && running < parallelism && !ready.isEmpty()) {
+                int index = ready.poll();
+                try {
+                    workers.execute(() -> completions.add(run(plan, index, log, lock)));
+                    running++;
+                } catch (RejectedExecutionException e) {
+                    failure = e;
+                }
+            }
+            if (running == 0) {
+                break;
+            }
+            Completion completion;
+            try {
+                completion = completions.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while running graph [" + graph.name() + "]", e);
+            }
+            running--;
+            if (completion.failure != null) {
+                if (failure == null) {
+                    failure = completion.failure;
+                }
+                continue;
+            }
+            for (int next : plan.next(completion.index)) {
+                if (!done[next] && --remaining[next] == 0) {
+                    ready.add(next);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static <I extends Comparable<? super I>, V> Completion run(ExecutionPlan<V> plan, int index,
+                                                                       Log<I, V> log, Object lock) {
+        Task<V> task = plan.task(index);
+        try {
+            Set<Log.Entry<I, V>> arguments;
+            synchronized (lock) {
+                arguments = log.latestBySources(plan.previousIds(index));
+            }
+            V result = task.callOn(arguments);
+            synchronized (lock) {
+                log.add(task.id(), result);
+            }
+            return new Completion(index, null);
+        } catch (Throwable e) {
+            return new Completion(index, new IllegalStateException("Unable to run task [" + task.id() + "]", e));
+        }
+    }
+
+    private static final class Completion {
+
+        private final int index;
+        private final RuntimeException failure;
+
+        Completion(int index, RuntimeException failure) {
+            this.index = index;
+            this.failure = failure;
+        }
+    }
+}
@@ -14,24 +14,44 @@
 
 package com.velevedi.baqla.executor;
 
+import com.velevedi.baqla.DoubleLog;
+import com.velevedi.baqla.DoubleTask;
 import com.velevedi.baqla.Executor;
 import com.velevedi.baqla.Graph;
 import com.velevedi.baqla.Log;
+import com.velevedi.baqla.LongLog;
+import com.velevedi.baqla.LongTask;
 import com.velevedi.baqla.Task;
-import com.velevedi.baqla.predicate.OneValuePerSource;
+import com.velevedi.baqla.graph.DirectedGraph;
+import com.velevedi.baqla.graph.ExecutionPlan;
 
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Set;
 import java.util.stream.Collectors;
 
-import static java.util.Comparator.reverseOrder;
-
 /**
  * Executor which runs tasks one level at a time. This executor does not progress through entire Graph to run all tasks
  * available. Instead it just runs level after level giving control to the caller on how to progress.
  * The results of the calculations could be taken from the Log.
+ * <p>
+ * Primitive tasks ({@link DoubleTask}, {@link LongTask}) submitted with a Log of the matching primitive type
+ * read their arguments from the columns of the Log and add their results without boxing.
+ * </p>
+ * <p>
+ * For a {@link DirectedGraph} the executor remembers which tasks of the last graph and Log it was given have been
+ * run, so the next level is found from the arrays of the {@link ExecutionPlan} without reading sources of
+ * the Log. The progress is restored from the sources of the Log when another graph or Log is submitted or
+ * when the Log has been changed by someone else.
+ * </p>
  */
 public class IncrementalExecutor implements Executor {
 
+    /**
+     * Progress of the last plan run, guarded by this executor
+     */
+    private Progress<?, ?> last;
+
     @Override
     public <I extends Comparable<? super I>, V> void submit(Graph<V> graph, Log<I, V> log) {
         if (graph == null) {
@@ -41,17 +61,16 @@ public class IncrementalExecutor implements Executor {
             throw new IllegalArgumentException("Log arguments could not be null");
         }
 
+        if (graph instanceof DirectedGraph) {
+            submit(((DirectedGraph<V>) graph).compile(), log);
+            return;
+        }
+
         Set<Task<V>> tasksToRun;
         if (log.isEmpty()) {
             tasksToRun = graph.initialTasks();
         } else {
-            Set<String> latestNodes = log.stream()
-                    .sorted(reverseOrder())
-                    .filter(new OneValuePerSource<>())
-                    .map(Log.Entry::source)
-                    .collect(Collectors.toSet());
-
-            tasksToRun = graph.nextTasks(latestNodes);
+            tasksToRun = graph.nextTasks(log.sources());
         }
 
         for (Task<V> task : tasksToRun) {
@@ -59,12 +78,196 @@ public class IncrementalExecutor implements Executor {
                     .stream()
                     .map(Task::id)
                     .collect(Collectors.toSet());
-            Set<Log.Entry<I, V>> arguments = log.stream()
-                    .filter(new OneValuePerSource<>())
-                    .filter(e -> previousTasksNames.contains(e.source()))
-                    .collect(Collectors.toSet());
-            V result = task.callOn(arguments);
-            log.add(task.id(), result);
+            run(task, previousTasksNames, log);
+        }
+    }
+
+    /**
+     * Runs the next level of a compiled graph. Ids of previous tasks come from the plan, so dependencies
+     * of a task are resolved without building new sets.
+     */
+    private <I extends Comparable<? super I>, V> void submit(ExecutionPlan<V> plan, Log<I, V> log) {
+        Progress<I, V> progress = resume(plan, log);
+        int[] tasksToRun = progress.ready;
+        for (int i = 0; i < progress.readyCount; i++) {
+            int index = tasksToRun[i];
+            Task<V> task = plan.task(index);
+            if (isPrimitive(task, log)) {
+                run(task, plan.previousIds(index), log);
+            } else {
+                V result = task.callOn(progress.arguments(index));
+                log.add(task.id(), result);
+            }
+            progress.identify(index);
+        }
+        progress.advance(log.size());
+        synchronized (this) {
+            last = progress;
+        }
+    }
+
+    /**
+     * Takes the progress of the last run if it belongs to the plan and the Log, otherwise restores it from the Log.
+     * The progress is taken away from the executor while a level runs, so concurrent submissions do not share it.
+     */
+    @SuppressWarnings("unchecked")
+    private <I extends Comparable<? super I>, V> Progress<I, V> resume(ExecutionPlan<V> plan, Log<I, V> log) {
+        synchronized (this) {
+            Progress<?, ?> candidate = last;
+            if (candidate != null && candidate.plan == plan && candidate.log == log
+                    && candidate.logSize == log.size()) {
+                last = null;
+                return (Progress<I, V>) candidate;
+            }
+        }
+        return new Progress<>(plan, log);
+    }
+
+    private static boolean isPrimitive(Task<?> task, Log<?, ?> log) {
+        return task instanceof DoubleTask && log instanceof DoubleLog
+                || task instanceof LongTask && log instanceof LongLog;
+    }
+
+    private <I extends Comparable<? super I>, V> void run(Task<V> task, Set<String> previousTasksNames, Log<I, V> log) {
+        if (task instanceof DoubleTask && log instanceof DoubleLog) {
+            ((DoubleLog) log).run((DoubleTask) task, previousTasksNames);
+            return;
+        }
+        if (task instanceof LongTask && log instanceof LongLog) {
+            ((LongLog) log).run((LongTask) task, previousTasksNames);
+            return;
+        }
+        Set<Log.Entry<I, V>> arguments = log.latestBySources(previousTasksNames);
+        V result = task.callOn(arguments);
+        log.add(task.id(), result);
+    }
+
+    /**
+     * Tasks of a plan which have been run and tasks ready to run next. A task is ready when all its previous tasks
+     * are on the front line, that is they have been run and none of their next tasks has.
+     * <p>
+     * Identifiers the Log gives to the sources of run tasks are kept too, so arguments of a task are read by
+     * identifiers of its previous tasks. Logs which do not identify sources are read by ids of previous tasks.
+     * </p>
+     */
+    private static final class Progress<I extends Comparable<? super I>, V> {
+
+        private final ExecutionPlan<V> plan;
+        private final Log<I, V> log;
+        private final boolean[] completed;
+        private final boolean[] behind;
+        private final int[] sourceIds;
+
+        /**
+         * The last step a task has been checked in, so a task is checked once per step
+         */
+        private final int[] checked;
+        private int step;
+
+        private int[] ready;
+        private int readyCount;
+        private int[] spare;
+        private int logSize;
+
+        Progress(ExecutionPlan<V> plan, Log<I, V> log) {
+            this.plan = plan;
+            this.log = log;
+            int numberOfTasks = plan.size();
+            this.completed = new boolean[numberOfTasks];
+            this.behind = new boolean[numberOfTasks];
+            this.sourceIds = new int[numberOfTasks];
+            Arrays.fill(sourceIds, -1);
+            this.checked = new int[numberOfTasks];
+            this.ready = new int[numberOfTasks];
+            this.spare = new int[numberOfTasks];
+            this.logSize = log.size();
+            if (log.isEmpty()) {
+                for (int index : plan.initialTasks()) {
+                    ready[readyCount++] = index;
+                }
+                return;
+            }
+            Set<String> sources = log.sources();
+            for (int i = 0; i < numberOfTasks; i++) {
+                if (sources.contains(plan.task(i).id())) {
+                    complete(i);
+                    identify(i);
+                }
+            }
+            for (int i = 0; i < numberOfTasks; i++) {
+                if (plan.previous(i).length > 0 && isReady(i)) {
+                    ready[readyCount++] = i;
+                }
+            }
+        }
+
+        /**
+         * Remembers the identifier of the source of a task which has added its result to the Log
+         */
+        void identify(int index) {
+            sourceIds[index] = log.sourceId(plan.task(index).id());
+        }
+
+        /**
+         * Reads the latest entries of the previous tasks of a task
+         */
+        Set<Log.Entry<I, V>> arguments(int index) {
+            int[] previous = plan.previous(index);
+            Set<Log.Entry<I, V>> result = new HashSet<>();
+            for (int task : previous) {
+                int sourceId = sourceIds[task];
+                if (sourceId < 0) {
+                    return log.latestBySources(plan.previousIds(index));
+                }
+                log.latestBySourceId(sourceId).ifPresent(result::add);
+            }
+            return result;
+        }
+
+        private void complete(int index) {
+            completed[index] = true;
+            for (int previous : plan.previous(index)) {
+                behind[previous] = true;
+            }
+        }
+
+        private boolean isReady(int index) {
+            for (int previous : plan.previous(index)) {
+                if (!completed[previous] || behind[previous]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Marks ready tasks as run and finds the tasks to run next among their next tasks
+         *
+         * @param logSize size of the Log after the ready tasks have been run
+         */
+        void advance(int logSize) {
+            for (int i = 0; i < readyCount; i++) {
+                complete(ready[i]);
+            }
+            step++;
+            int count = 0;
+            for (int i = 0; i < readyCount; i++) {
+                int index = ready[i];
+                if (behind[index]) continue;
+                for (int next : plan.next(index)) {
+                    if (checked[next] != step) {
+                        checked[next] = step;
+                        if (isReady(next)) {
+                            spare[count++] = next;
+                        }
+                    }
+                }
+            }
+            int[] run = ready;
+            ready = spare;
+            spare = run;
+            readyCount = count;
+            this.logSize = logSize;
         }
     }
 }
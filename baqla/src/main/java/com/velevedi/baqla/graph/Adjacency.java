@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla.graph;
+
+import com.velevedi.baqla.Graph;
+
+import java.util.Arrays;
+
+/**
+ * Directed links between nodes of a graph of calculations. Nodes are identified by indices from 0 to
+ * {@link #length()} - 1, the mapping between indices and business objects is outside of the implementations.
+ * <p>
+ * Implementations provide the neighbours of a single node. Operations on groups of nodes have default
+ * implementations which collect neighbours of the group and sort them to drop duplicates, so they cost
+ * D log D where D is the sum of degrees of the nodes involved, whatever the number of nodes of the graph.
+ * Initial and final nodes are found by a scan of all nodes.
+ * </p>
+ *
+ * @see AdjacencyMatrix
+ * @see SparseAdjacency
+ */
+public interface Adjacency {
+
+    /**
+     * Returns the number of nodes
+     *
+     * @return number of nodes
+     */
+    int length();
+
+    /**
+     * Returns an array of nodes next to a node provided as argument.
+     *
+     * @param fromNodeIndex index of a node
+     * @return an array of next nodes in ascending order
+     */
+    int[] getNextNodes(int fromNodeIndex);
+
+    /**
+     * Returns an array of nodes previous to a node provided as argument.
+     *
+     * @param toNodeIndex index of a node
+     * @return an array of previous nodes in ascending order
+     */
+    int[] getPreviousNodes(int toNodeIndex);
+
+    /**
+     * Returns an array of next nodes for an array of nodes provided.
+     *
+     * @param fromNodeIndices array of nodes' indices
+     * @return an array of distinct next nodes
+     */
+    default int[] getNextNodes(int[] fromNodeIndices) {
+        if (fromNodeIndices == null) {
+            throw new IllegalArgumentException("Argument can not be null");
+        }
+        int[][] neighbours = new int[fromNodeIndices.length][];
+        for (int i = 0; i < fromNodeIndices.length; i++) {
+            neighbours[i] = getNextNodes(fromNodeIndices[i]);
+        }
+        return union(neighbours);
+    }
+
+    /**
+     * Returns an array of previous nodes for an array of nodes provided.
+     *
+     * @param toNodeIndices array of nodes' indices
+     * @return an array of distinct previous nodes
+     */
+    default int[] getPreviousNodes(int[] toNodeIndices) {
+        if (toNodeIndices == null) {
+            throw new IllegalArgumentException("Argument can not be null");
+        }
+        int[][] neighbours = new int[toNodeIndices.length][];
+        for (int i = 0; i < toNodeIndices.length; i++) {
+            neighbours[i] = getPreviousNodes(toNodeIndices[i]);
+        }
+        return union(neighbours);
+    }
+
+    /**
+     * Merges arrays of nodes into one array of distinct nodes in order of first appearance
+     */
+    private static int[] union(int[][] groups) {
+        int total = 0;
+        for (int[] group : groups) {
+            total += group.length;
+        }
+        int[] distinct = new int[total];
+        int position = 0;
+        for (int[] group : groups) {
+            System.arraycopy(group, 0, distinct, position, group.length);
+            position += group.length;
+        }
+        Arrays.sort(distinct);
+        int distinctCount = 0;
+        for (int i = 0; i < total; i++) {
+            if (distinctCount == 0 || distinct[distinctCount - 1] != distinct[i]) {
+                distinct[distinctCount++] = distinct[i];
+            }
+        }
+        boolean[] seen = new boolean[distinctCount];
+        int[] result = new int[distinctCount];
+        int count = 0;
+        for (int[] group : groups) {
+            for (int node : group) {
+                int rank = Arrays.binarySearch(distinct, 0, distinctCount, node);
+                if (!seen[rank]) {
+                    seen[rank] = true;
+                    result[count++] = node;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns nodes which have no previous nodes. A calculation starts with them.
+     *
+     * @return all initial nodes
+     */
+    default int[] getInitialNodes() {
+        int[] result = new int[length()];
+        int count = 0;
+        for (int i = 0; i < length(); i++) {
+            if (getPreviousNodes(i).length == 0) {
+                result[count++] = i;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Returns nodes which have no next nodes. A calculation stops with them.
+     *
+     * @return all final nodes
+     */
+    default int[] getFinalNodes() {
+        int[] result = new int[length()];
+        int count = 0;
+        for (int i = 0; i < length(); i++) {
+            if (getNextNodes(i).length == 0) {
+                result[count++] = i;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Selects nodes of a group which are not previous to any other node of the group.
+     *
+     * @param nodeIndices node indices to filter
+     * @return front line nodes in the order of the group
+     * @see AdjacencyMatrix#getFrontLineNodes(int[])
+     */
+    default int[] getFrontLineNodes(int[] nodeIndices) {
+        int[] behind = getPreviousNodes(nodeIndices);
+        Arrays.sort(behind);
+        int[] result = new int[nodeIndices.length];
+        int count = 0;
+        for (int nodeIndex : nodeIndices) {
+            if (Arrays.binarySearch(behind, nodeIndex) < 0) {
+                result[count++] = nodeIndex;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Selects next nodes of the front line of a group which have all their previous nodes in the front line.
+     *
+     * @param nodeIndices a group of nodes to filter
+     * @return nodes which can be processed next
+     * @see AdjacencyMatrix#getNodesToProcess(int[])
+     * @see Graph
+     */
+    default int[] getNodesToProcess(int[] nodeIndices) {
+        int[] frontLine = getFrontLineNodes(nodeIndices);
+        int[] sortedFrontLine = frontLine.clone();
+        Arrays.sort(sortedFrontLine);
+        int[] next = getNextNodes(frontLine);
+        int[] result = new int[next.length];
+        int count = 0;
+        for (int candidate : next) {
+            boolean ready = true;
+            for (int previous : getPreviousNodes(candidate)) {
+                if (Arrays.binarySearch(sortedFrontLine, previous) < 0) {
+                    ready = false;
+                    break;
+                }
+            }
+            if (ready) {
+                result[count++] = candidate;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+}
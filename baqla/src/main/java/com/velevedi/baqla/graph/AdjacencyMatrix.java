@@ -38,7 +38,7 @@ import static com.velevedi.baqla.util.ArrayUtils.indexOf;
  * adjacency matrix, it <i>must</i> be synchronized externally.
  * </p>
  */
-public class AdjacencyMatrix {
+public class AdjacencyMatrix implements Adjacency {
 
     /**
      * Array of links [from] [to]
@@ -62,6 +62,7 @@ public class AdjacencyMatrix {
      *
      * @return array's length
      */
+    @Override
     public int length() {
         return links.length;
     }
@@ -93,6 +94,7 @@ public class AdjacencyMatrix {
      * @param fromNodeIndex index of a node
      * @return an array of next nodes
      */
+    @Override
     public int[] getNextNodes(int fromNodeIndex) {
         if (fromNodeIndex < 0) {
             throw new IllegalArgumentException("Node index can not be negative");
@@ -108,6 +110,7 @@ public class AdjacencyMatrix {
      * @param fromNodeIndices array of nodes' indices
      * @return an array of next nodes
      */
+    @Override
     public int[] getNextNodes(int[] fromNodeIndices) {
         if (fromNodeIndices == null) {
             throw new IllegalArgumentException("Argument can not be null");
@@ -126,6 +129,7 @@ public class AdjacencyMatrix {
      * @param toNodeIndex index of a node
      * @return an array of previous nodes
      */
+    @Override
     public int[] getPreviousNodes(int toNodeIndex) {
         if (toNodeIndex < 0) {
             throw new IllegalArgumentException("Node index can not be negative");
@@ -141,6 +145,7 @@ public class AdjacencyMatrix {
      * @param toNodeIndices array of nodes' indices
      * @return an array of previous nodes
      */
+    @Override
     public int[] getPreviousNodes(int[] toNodeIndices) {
         if (toNodeIndices == null) {
             throw new IllegalArgumentException("Argument can not be null");
@@ -158,6 +163,7 @@ public class AdjacencyMatrix {
      *
      * @return all initial nodes of a graph represented by the adjacency matrix.
      */
+    @Override
     public int[] getInitialNodes() {
         return IntStream.range(0, links.length)
                 .filter(i -> getPreviousNodes(i).length == 0)
@@ -169,6 +175,7 @@ public class AdjacencyMatrix {
      *
      * @return all final nodes of a graph represented by the adjacency matrix.
      */
+    @Override
     public int[] getFinalNodes() {
         return IntStream.range(0, links.length)
                 .filter(i -> getNextNodes(i).length == 0)
@@ -207,6 +214,7 @@ public class AdjacencyMatrix {
      * @param nodeIndices node indices to filter
      * @return front line nodes
      */
+    @Override
     public int[] getFrontLineNodes(int[] nodeIndices) {
         final int[] localCopy = Arrays.copyOf(nodeIndices, nodeIndices.length);
 
@@ -246,6 +254,7 @@ public class AdjacencyMatrix {
      * specified by a calculation graph.
      * @see Graph
      */
+    @Override
     public int[] getNodesToProcess(int[] nodeIndices) {
         int[] frontLine = getFrontLineNodes(nodeIndices);
         return Arrays
@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla.graph;
+
+import java.util.Arrays;
+
+/**
+ * Adjacency matrix which keeps links as bits. Each node has a row of bits for its next nodes and a column of bits
+ * for its previous nodes, both packed into longs, so operations on groups of nodes combine 64 nodes at a time.
+ * <code>
+ * memory = 2 * number of nodes * number of nodes / 8 bytes
+ * </code>
+ * <p>
+ * That is 1/16 of the memory of {@link AdjacencyMatrix}, which keeps an int per link: each link takes a bit
+ * in a row and another bit in a column, the columns let previous nodes be read without scanning all rows.
+ * </p>
+ * <p>
+ * The matrix suits dense graphs of moderate size. Arrays returned by the group operations are in ascending order.
+ * </p>
+ * <p><strong>Note that this implementation is not synchronized.</strong> If multiple threads access
+ * the matrix while links are added, it <i>must</i> be synchronized externally.
+ * </p>
+ */
+public class BitAdjacencyMatrix implements Adjacency {
+
+    private final int numberOfNodes;
+    private final int words;
+
+    /**
+     * Rows of next nodes, the row of node i takes words from i * words
+     */
+    private final long[] rows;
+
+    /**
+     * Columns of previous nodes, the column of node i takes words from i * words
+     */
+    private final long[] columns;
+
+    /**
+     * Builds the matrix for a specified number of nodes. Once created the number of nodes can not be changed.
+     *
+     * @param numberOfNodes the number of nodes to represent.
+     */
+    public BitAdjacencyMatrix(int numberOfNodes) {
+        if (numberOfNodes <= 0) {
+            throw new IllegalArgumentException("Number of nodes must be more than zero");
+        }
+        if (bytesFor(numberOfNodes) / Long.BYTES / 2 > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Number of nodes is too big for a bit matrix");
+        }
+        this.numberOfNodes = numberOfNodes;
+        this.words = (numberOfNodes + 63) >>> 6;
+        this.rows = new long[numberOfNodes * words];
+        this.columns = new long[numberOfNodes * words];
+    }
+
+    /**
+     * Calculates the memory the matrix takes
+     *
+     * @param numberOfNodes the number of nodes to represent
+     * @return number of bytes taken by rows and columns
+     */
+    static long bytesFor(int numberOfNodes) {
+        return 2L * numberOfNodes * ((numberOfNodes + 63) >>> 6) * Long.BYTES;
+    }
+
+    @Override
+    public int length() {
+        return numberOfNodes;
+    }
+
+    /**
+     * Links 2 nodes together. The link is directed.
+     *
+     * @param fromNodeIndex source of the link
+     * @param toNodeIndex   destination of the link
+     * @return matrix object to chain method calls.
+     */
+    public BitAdjacencyMatrix link(int fromNodeIndex, int toNodeIndex) {
+        if (fromNodeIndex < 0 || fromNodeIndex >= numberOfNodes || toNodeIndex < 0 || toNodeIndex >= numberOfNodes) {
+            throw new IllegalArgumentException("Link [" + fromNodeIndex + " -> " + toNodeIndex + "] is out of range");
+        }
+        rows[fromNodeIndex * words + (toNodeIndex >>> 6)] |= 1L << toNodeIndex;
+        columns[toNodeIndex * words + (fromNodeIndex >>> 6)] |= 1L << fromNodeIndex;
+        return this;
+    }
+
+    @Override
+    public int[] getNextNodes(int fromNodeIndex) {
+        if (fromNodeIndex < 0) {
+            throw new IllegalArgumentException("Node index can not be negative");
+        }
+        return toArray(rows, fromNodeIndex * words);
+    }
+
+    @Override
+    public int[] getPreviousNodes(int toNodeIndex) {
+        if (toNodeIndex < 0) {
+            throw new IllegalArgumentException("Node index can not be negative");
+        }
+        return toArray(columns, toNodeIndex * words);
+    }
+
+    @Override
+    public int[] getNextNodes(int[] fromNodeIndices) {
+        if (fromNodeIndices == null) {
+            throw new IllegalArgumentException("Argument can not be null");
+        }
+        return toArray(union(rows, fromNodeIndices), 0);
+    }
+
+    @Override
+    public int[] getPreviousNodes(int[] toNodeIndices) {
+        if (toNodeIndices == null) {
+            throw new IllegalArgumentException("Argument can not be null");
+        }
+        return toArray(union(columns, toNodeIndices), 0);
+    }
+
+    @Override
+    public int[] getInitialNodes() {
+        return emptyLines(columns);
+    }
+
+    @Override
+    public int[] getFinalNodes() {
+        return emptyLines(rows);
+    }
+
+    @Override
+    public int[] getFrontLineNodes(int[] nodeIndices) {
+        long[] group = set(nodeIndices);
+        long[] behind = union(columns, nodeIndices);
+        for (int w = 0; w < words; w++) {
+            behind[w] &= group[w];
+        }
+        int[] result = new int[nodeIndices.length];
+        int count = 0;
+        for (int nodeIndex : nodeIndices) {
+            if ((behind[nodeIndex >>> 6] & 1L << nodeIndex) == 0) {
+                result[count++] = nodeIndex;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    @Override
+    public int[] getNodesToProcess(int[] nodeIndices) {
+        int[] frontLine = getFrontLineNodes(nodeIndices);
+        long[] inFrontLine = set(frontLine);
+        long[] next = union(rows, frontLine);
+        for (int w = 0; w < words; w++) {
+            long bits = next[w];
+            while (bits != 0) {
+                long lowest = bits & -bits;
+                int candidate = (w << 6) + Long.numberOfTrailingZeros(bits);
+                // a candidate is ready when it has no previous nodes outside of the front line
+                int offset = candidate * words;
+                for (int v = 0; v < words; v++) {
+                    if ((columns[offset + v] & ~inFrontLine[v]) != 0) {
+                        next[w] &= ~lowest;
+                        break;
+                    }
+                }
+                bits &= ~lowest;
+            }
+        }
+        return toArray(next, 0);
+    }
+
+    private long[] set(int[] nodeIndices) {
+        long[] result = new long[words];
+        for (int nodeIndex : nodeIndices) {
+            result[nodeIndex >>> 6] |= 1L << nodeIndex;
+        }
+        return result;
+    }
+
+    private long[] union(long[] lines, int[] nodeIndices) {
+        long[] result = new long[words];
+        for (int nodeIndex : nodeIndices) {
+            int offset = nodeIndex * words;
+            for (int w = 0; w < words; w++) {
+                result[w] |= lines[offset + w];
+            }
+        }
+        return result;
+    }
+
+    private int[] emptyLines(long[] lines) {
+        int[] result = new int[numberOfNodes];
+        int count = 0;
+        for (int i = 0; i < numberOfNodes; i++) {
+            int offset = i * words;
+            boolean empty = true;
+            for (int w = 0; w < words && empty; w++) {
+                empty = lines[offset + w] == 0;
+            }
+            if (empty) {
+                result[count++] = i;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private int[] toArray(long[] bits, int offset) {
+        int count = 0;
+        for (int w = 0; w < words; w++) {
+            count += Long.bitCount(bits[offset + w]);
+        }
+        int[] result = new int[count];
+        int i = 0;
+        for (int w = 0; w < words; w++) {
+            long word = bits[offset + w];
+            while (word != 0) {
+                result[i++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("from (row) -> to (column)\n");
+        for (int i = 0; i < numberOfNodes; i++) {
+            builder.append("        ").append(Arrays.toString(getNextNodes(i))).append('\n');
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        BitAdjacencyMatrix matrix = (BitAdjacencyMatrix) o;
+        return numberOfNodes == matrix.numberOfNodes && Arrays.equals(rows, matrix.rows);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(rows);
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla.graph;
+
+import com.velevedi.baqla.Task;
+
+import java.util.*;
+
+/**
+ * Directed graph without cycles. The order of tasks is calculated once when the graph is built:
+ * <ul>
+ * <li>topological order, where every task follows all tasks it depends on</li>
+ * <li>levels, where level 0 holds initial tasks and a task is one level above the highest of its previous
+ * tasks, so tasks of one level do not depend on each other and can run together</li>
+ * </ul>
+ * Executors can schedule tasks from these plans instead of looking for the front line of calculated tasks
+ * on every step.
+ *
+ * @param <V> data type of the tasks that will perform calculations
+ */
+public class DirectedAcyclicGraph<V> extends DirectedGraph<V> {
+
+    /**
+     * Node indices sorted by levels
+     */
+    private final int[] order;
+
+    /**
+     * Level i takes positions from levelOffsets[i] to levelOffsets[i + 1] of the order
+     */
+    private final int[] levelOffsets;
+
+    private final List<Task<V>> topologicalOrder;
+    private final List<Set<Task<V>>> levels;
+
+    DirectedAcyclicGraph(String name, Set<Task<V>> tasks, Set<Link> links) {
+        super(name, tasks, links);
+        Adjacency adjacency = adjacency();
+        int numberOfNodes = adjacency.length();
+
+        // Kahn's algorithm taking all nodes without remaining previous nodes as one level
+        int[] remaining = new int[numberOfNodes];
+        int[] sorted = new int[numberOfNodes];
+        int count = 0;
+        for (int i = 0; i < numberOfNodes; i++) {
+            remaining[i] = adjacency.getPreviousNodes(i).length;
+            if (remaining[i] == 0) {
+                sorted[count++] = i;
+            }
+        }
+        int[] offsets = new int[numberOfNodes + 1];
+        int numberOfLevels = 0;
+        int levelStart = 0;
+        while (levelStart < count) {
+            int levelEnd = count;
+            offsets[++numberOfLevels] = levelEnd;
+            for (int i = levelStart; i < levelEnd; i++) {
+                for (int next : adjacency.getNextNodes(sorted[i])) {
+                    if (--remaining[next] == 0) {
+                        sorted[count++] = next;
+                    }
+                }
+            }
+            levelStart = levelEnd;
+        }
+        if (count < numberOfNodes) {
+            throw new IllegalArgumentException("Unable to initialize graph. Links form a cycle among tasks " + cycle(remaining));
+        }
+        this.order = sorted;
+        this.levelOffsets = Arrays.copyOf(offsets, numberOfLevels + 1);
+
+        List<Task<V>> orderedTasks = new ArrayList<>(numberOfNodes);
+        for (int nodeIndex : order) {
+            orderedTasks.add(taskAt(nodeIndex));
+        }
+        this.topologicalOrder = Collections.unmodifiableList(orderedTasks);
+        List<Set<Task<V>>> levelTasks = new ArrayList<>(numberOfLevels);
+        for (int level = 0; level < numberOfLevels; level++) {
+            Set<Task<V>> levelSet = new HashSet<>();
+            for (int i = levelOffsets[level]; i < levelOffsets[level + 1]; i++) {
+                levelSet.add(taskAt(order[i]));
+            }
+            levelTasks.add(Collections.unmodifiableSet(levelSet));
+        }
+        this.levels = Collections.unmodifiableList(levelTasks);
+    }
+
+    /**
+     * Lists ids of tasks on cycles and after them, sorted to make the message stable
+     */
+    private String cycle(int[] remaining) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < remaining.length; i++) {
+            if (remaining[i] > 0) {
+                ids.add(taskAt(i).id());
+            }
+        }
+        Collections.sort(ids);
+        return ids.toString();
+    }
+
+    /**
+     * Node indices in topological order
+     */
+    int[] order() {
+        return order;
+    }
+
+    /**
+     * Tasks in the order where every task follows all tasks it depends on
+     *
+     * @return unmodifiable list of all tasks of the graph
+     */
+    public List<Task<V>> topologicalOrder() {
+        return topologicalOrder;
+    }
+
+    /**
+     * Tasks grouped by levels. Tasks of a level depend only on tasks of lower levels.
+     *
+     * @return unmodifiable list of levels starting with initial tasks
+     */
+    public List<Set<Task<V>>> levels() {
+        return levels;
+    }
+
+    /**
+     * Number of levels of the graph, which is the number of tasks on the longest path
+     *
+     * @return number of levels
+     */
+    public int numberOfLevels() {
+        return levelOffsets.length - 1;
+    }
+}
@@ -18,32 +18,78 @@ import com.velevedi.baqla.Graph;
 import com.velevedi.baqla.Task;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class DirectedGraph<V> implements Graph<V> {
 
-    private final String name;
-    private final Map<String, Integer> idToIndex = new HashMap<>();
-    private final Map<Integer, String> indexToId = new HashMap<>();
-
-    private final Map<String, Task<V>> nameToTask = new HashMap<>();
+    /**
+     * The biggest graph kept in a bit matrix, the matrix of such a graph takes 4 MB
+     */
+    static final int MAX_BIT_MATRIX_NODES = 4096;
 
-    private final AdjacencyMatrix adjacencyMatrix;
+    private final String name;
+    private final Adjacency adjacency;
+    private final ExecutionPlan<V> plan;
 
     DirectedGraph(String name, Set<Task<V>> tasks, Set<Link> links) {
         this.name = name;
-        int counter = 0;
+        List<Task<V>> indexedTasks = new ArrayList<>(tasks.size());
+        Map<String, Integer> idToIndex = new HashMap<>();
         for (Task<V> task : tasks) {
-            int index = counter++;
-            String taskName = task.id();
-            nameToTask.put(taskName, task);
-            idToIndex.put(taskName, index);
-            indexToId.put(index, taskName);
+            idToIndex.put(task.id(), indexedTasks.size());
+            indexedTasks.add(task);
         }
-        adjacencyMatrix = new AdjacencyMatrix(tasks.size());
+        int[] from = new int[links.size()];
+        int[] to = new int[links.size()];
+        int linkIndex = 0;
         for (Link link : links) {
-            adjacencyMatrix.link(idToIndex.get(link.getFrom()), idToIndex.get(link.getTo()));
+            from[linkIndex] = idToIndex.get(link.getFrom());
+            to[linkIndex] = idToIndex.get(link.getTo());
+            linkIndex++;
         }
+        adjacency = adjacency(tasks.size(), from, to);
+        plan = new ExecutionPlan<>(indexedTasks, idToIndex, adjacency);
+    }
+
+    /**
+     * Chooses the representation of links. Dense graphs of moderate size are kept in a bit matrix whose group
+     * operations combine 64 nodes at a time, provided the matrix takes no more than twice the memory of
+     * the sparse form. Other graphs are kept in the sparse form which takes memory proportional to the number
+     * of links.
+     *
+     * @param numberOfNodes the number of nodes
+     * @param from          source nodes of the links
+     * @param to            destination nodes of the links
+     * @return adjacency of the graph
+     */
+    static Adjacency adjacency(int numberOfNodes, int[] from, int[] to) {
+        long sparseBytes = 2L * Integer.BYTES * (numberOfNodes + 1 + from.length);
+        if (numberOfNodes <= MAX_BIT_MATRIX_NODES && BitAdjacencyMatrix.bytesFor(numberOfNodes) <= 2 * sparseBytes) {
+            BitAdjacencyMatrix matrix = new BitAdjacencyMatrix(numberOfNodes);
+            for (int i = 0; i < from.length; i++) {
+                matrix.link(from[i], to[i]);
+            }
+            return matrix;
+        }
+        return new SparseAdjacency(numberOfNodes, from, to);
+    }
+
+    Adjacency adjacency() {
+        return adjacency;
+    }
+
+    Task<V> taskAt(int nodeIndex) {
+        return plan.task(nodeIndex);
+    }
+
+    /**
+     * Freezes the graph into a plan where tasks, their previous and next tasks and the ids of previous tasks
+     * are addressed by indices. The graph does not change after it is built, so the plan is made once and
+     * shared by all callers.
+     *
+     * @return execution plan of the graph
+     */
+    public ExecutionPlan<V> compile() {
+        return plan;
     }
 
     @Override
@@ -52,16 +98,11 @@ public class DirectedGraph<V> implements Graph<V> {
     }
 
     private Set<Task<V>> nodeIndexToTask(int... nodeIndices) {
-        return Arrays.stream(nodeIndices)
-                .mapToObj(i -> nameToTask.get(indexToId.get(i)))
-                .collect(Collectors.toSet());
-    }
-
-    private int[] taskIdToNodeIndex(Set<String> taskIds) {
-        return taskIds.stream()
-                .filter(i -> idToIndex.get(i) != null)
-                .mapToInt(idToIndex::get)
-                .toArray();
+        Set<Task<V>> result = new HashSet<>();
+        for (int nodeIndex : nodeIndices) {
+            result.add(plan.task(nodeIndex));
+        }
+        return result;
     }
 
     @Override
@@ -69,9 +110,7 @@ public class DirectedGraph<V> implements Graph<V> {
         if (taskIds == null || taskIds.isEmpty()) {
             return Collections.emptySet();
         }
-        return nodeIndexToTask(
-                adjacencyMatrix.getNodesToProcess(taskIdToNodeIndex(taskIds))
-        );
+        return nodeIndexToTask(plan.nextTasks(taskIds));
     }
 
     @Override
@@ -82,12 +121,11 @@ public class DirectedGraph<V> implements Graph<V> {
         Set<Task<V>> result = new HashSet<>();
         for (String taskId : taskIds) {
 
-            Integer index = idToIndex.get(taskId);
-            if (index == null) continue;
+            int index = plan.indexOf(taskId);
+            if (index < 0) continue;
 
-            int[] nodes = adjacencyMatrix.getPreviousNodes(index);
-            for (int id : nodes) {
-                result.add(nameToTask.get(indexToId.get(id)));
+            for (int nodeIndex : plan.previous(index)) {
+                result.add(plan.task(nodeIndex));
             }
         }
         return result;
@@ -95,25 +133,17 @@ public class DirectedGraph<V> implements Graph<V> {
 
     @Override
     public Set<Task<V>> initialTasks() {
-        return Arrays.stream(adjacencyMatrix.getInitialNodes())
-                .mapToObj(
-                        id -> nameToTask.get(indexToId.get(id))
-                )
-                .collect(Collectors.toSet());
+        return nodeIndexToTask(plan.initialTasks());
     }
 
     @Override
     public Set<Task<V>> finalTasks() {
-        return Arrays.stream(adjacencyMatrix.getFinalNodes())
-                .mapToObj(
-                        id -> nameToTask.get(indexToId.get(id))
-                )
-                .collect(Collectors.toSet());
+        return nodeIndexToTask(plan.finalTasks());
     }
 
     @Override
     public int numberOfTasks() {
-        return adjacencyMatrix.length();
+        return plan.size();
     }
 
 }
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla.graph;
+
+import com.velevedi.baqla.Task;
+
+import java.util.*;
+
+/**
+ * Directed graph without cycles where links have weights. A weight is the cost of the link, for example
+ * the time to pass data between tasks. The critical path length of a task is the biggest sum of weights along
+ * a path from the task to a final task, it is calculated once when the graph is built.
+ * <p>
+ * Tasks with longer critical paths hold up the end of calculation more, so executors running tasks
+ * in parallel start them first.
+ * </p>
+ * When two tasks are connected with links of different weights the biggest weight is used.
+ *
+ * @param <V> data type of the tasks that will perform calculations
+ */
+public class DirectedWeightedGraph<V> extends DirectedAcyclicGraph<V> {
+
+    /**
+     * Weights of links in the order of next nodes of the execution plan
+     */
+    private final double[][] nextWeights;
+
+    /**
+     * Critical path lengths by node index
+     */
+    private final double[] criticalPaths;
+
+    DirectedWeightedGraph(String name, Set<Task<V>> tasks, Set<Link> links) {
+        super(name, tasks, links);
+        ExecutionPlan<V> plan = compile();
+        int numberOfNodes = plan.size();
+        this.nextWeights = new double[numberOfNodes][];
+        for (int i = 0; i < numberOfNodes; i++) {
+            nextWeights[i] = new double[plan.next(i).length];
+        }
+        for (Link link : links) {
+            int from = plan.indexOf(link.getFrom());
+            int position = Arrays.binarySearch(plan.next(from), plan.indexOf(link.getTo()));
+            nextWeights[from][position] = Math.max(nextWeights[from][position], link.getWeight());
+        }
+
+        // every task follows the tasks it depends on, so walking the order backwards visits next tasks first
+        this.criticalPaths = new double[numberOfNodes];
+        int[] order = order();
+        for (int i = order.length - 1; i >= 0; i--) {
+            int nodeIndex = order[i];
+            int[] next = plan.next(nodeIndex);
+            double longest = 0;
+            for (int j = 0; j < next.length; j++) {
+                longest = Math.max(longest, nextWeights[nodeIndex][j] + criticalPaths[next[j]]);
+            }
+            criticalPaths[nodeIndex] = longest;
+        }
+    }
+
+    /**
+     * Weight of the link between two tasks
+     *
+     * @param fromTaskId id of the task sending data
+     * @param toTaskId   id of the task receiving data
+     * @return weight of the link
+     */
+    public double weight(String fromTaskId, String toTaskId) {
+        ExecutionPlan<V> plan = compile();
+        int from = plan.indexOf(fromTaskId);
+        int to = plan.indexOf(toTaskId);
+        int position = from < 0 || to < 0 ? -1 : Arrays.binarySearch(plan.next(from), to);
+        if (position < 0) {
+            throw new IllegalArgumentException("Graph does not have a link from [" + fromTaskId + "] to [" + toTaskId + "]");
+        }
+        return nextWeights[from][position];
+    }
+
+    /**
+     * Critical path length of a task
+     *
+     * @param taskId id of the task
+     * @return the biggest sum of link weights on a path from the task to a final task
+     */
+    public double criticalPathLength(String taskId) {
+        int index = compile().indexOf(taskId);
+        if (index < 0) {
+            throw new IllegalArgumentException("Graph does not have task [" + taskId + "]");
+        }
+        return criticalPaths[index];
+    }
+
+    /**
+     * Critical path length of a task of the execution plan
+     *
+     * @param index index of the task in the plan
+     * @return the biggest sum of link weights on a path from the task to a final task
+     * @see #compile()
+     */
+    public double criticalPathLength(int index) {
+        return criticalPaths[index];
+    }
+
+    /**
+     * The critical path of the graph, which is the path with the biggest sum of link weights
+     *
+     * @return tasks of the path from an initial task to a final task
+     */
+    public List<Task<V>> criticalPath() {
+        ExecutionPlan<V> plan = compile();
+        List<Task<V>> path = new ArrayList<>();
+        int current = -1;
+        for (int nodeIndex : plan.initialTasks()) {
+            if (current < 0 || criticalPaths[nodeIndex] > criticalPaths[current]) {
+                current = nodeIndex;
+            }
+        }
+        while (current >= 0) {
+            path.add(plan.task(current));
+            int[] next = plan.next(current);
+            int following = -1;
+            for (int j = 0; j < next.length && following < 0; j++) {
+                if (nextWeights[current][j] + criticalPaths[next[j]] == criticalPaths[current]) {
+                    following = next[j];
+                }
+            }
+            current = following;
+        }
+        return Collections.unmodifiableList(path);
+    }
+}
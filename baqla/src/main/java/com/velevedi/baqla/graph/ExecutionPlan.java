@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla.graph;
+
+import com.velevedi.baqla.Task;
+
+import java.util.*;
+
+/**
+ * Frozen form of a {@link DirectedGraph} where tasks are addressed by indices from 0 to {@link #size()} - 1.
+ * Previous and next tasks of every task and the ids of previous tasks are calculated once, so executors
+ * resolve dependencies of a task with array reads only.
+ * <p>
+ * Arrays returned by the plan are shared and must not be modified.
+ * </p>
+ *
+ * @param <V> data type of the tasks that will perform calculations
+ * @see DirectedGraph#compile()
+ */
+public final class ExecutionPlan<V> {
+
+    private final Task<V>[] tasks;
+    private final Map<String, Integer> idToIndex;
+    private final Adjacency adjacency;
+    private final int[][] previous;
+    private final int[][] next;
+    private final List<Set<String>> previousIds;
+    private final int[] initial;
+    private final int[] finals;
+
+    ExecutionPlan(List<Task<V>> tasks, Map<String, Integer> idToIndex, Adjacency adjacency) {
+        int numberOfTasks = tasks.size();
+        @SuppressWarnings("unchecked")
+        Task<V>[] indexed = (Task<V>[]) new Task<?>[numberOfTasks];
+        this.tasks = tasks.toArray(indexed);
+        this.idToIndex = idToIndex;
+        this.adjacency = adjacency;
+        this.previous = new int[numberOfTasks][];
+        this.next = new int[numberOfTasks][];
+        List<Set<String>> ids = new ArrayList<>(numberOfTasks);
+        for (int i = 0; i < numberOfTasks; i++) {
+            previous[i] = adjacency.getPreviousNodes(i);
+            next[i] = adjacency.getNextNodes(i);
+            Set<String> previousTaskIds = new HashSet<>();
+            for (int nodeIndex : previous[i]) {
+                previousTaskIds.add(this.tasks[nodeIndex].id());
+            }
+            ids.add(Collections.unmodifiableSet(previousTaskIds));
+        }
+        this.previousIds = Collections.unmodifiableList(ids);
+        this.initial = adjacency.getInitialNodes();
+        this.finals = adjacency.getFinalNodes();
+    }
+
+    /**
+     * Number of tasks of the plan
+     *
+     * @return number of tasks
+     */
+    public int size() {
+        return tasks.length;
+    }
+
+    /**
+     * Task at an index of the plan
+     *
+     * @param index index of the task
+     * @return the task
+     */
+    public Task<V> task(int index) {
+        return tasks[index];
+    }
+
+    /**
+     * Index of a task in the plan
+     *
+     * @param taskId id of the task
+     * @return index of the task or -1 if the graph does not have such a task
+     */
+    public int indexOf(String taskId) {
+        Integer index = idToIndex.get(taskId);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Indices of tasks a task depends on
+     *
+     * @param index index of the task
+     * @return indices of previous tasks in ascending order
+     */
+    public int[] previous(int index) {
+        return previous[index];
+    }
+
+    /**
+     * Indices of tasks depending on a task
+     *
+     * @param index index of the task
+     * @return indices of next tasks in ascending order
+     */
+    public int[] next(int index) {
+        return next[index];
+    }
+
+    /**
+     * Ids of tasks a task depends on, which are the sources of its arguments in a Log
+     *
+     * @param index index of the task
+     * @return unmodifiable set of ids of previous tasks
+     */
+    public Set<String> previousIds(int index) {
+        return previousIds.get(index);
+    }
+
+    /**
+     * Indices of tasks which initiate calculation
+     *
+     * @return indices of initial tasks
+     */
+    public int[] initialTasks() {
+        return initial;
+    }
+
+    /**
+     * Indices of tasks which end calculation
+     *
+     * @return indices of final tasks
+     */
+    public int[] finalTasks() {
+        return finals;
+    }
+
+    /**
+     * Indices of tasks ready to run after the given tasks have been run. Ids unknown to the plan are ignored.
+     * The ids are translated and the adjacency is searched on every call, executors which run a plan step by step
+     * keep track of run tasks with {@link #previous(int)} and {@link #next(int)} instead.
+     *
+     * @param taskIds ids of tasks which have been run
+     * @return indices of tasks to run next
+     * @see Adjacency#getNodesToProcess(int[])
+     */
+    public int[] nextTasks(Set<String> taskIds) {
+        if (taskIds == null || taskIds.isEmpty()) {
+            return new int[0];
+        }
+        int[] nodeIndices = new int[taskIds.size()];
+        int count = 0;
+        for (String taskId : taskIds) {
+            Integer index = idToIndex.get(taskId);
+            if (index != null) {
+                nodeIndices[count++] = index;
+            }
+        }
+        return adjacency.getNodesToProcess(Arrays.copyOf(nodeIndices, count));
+    }
+}
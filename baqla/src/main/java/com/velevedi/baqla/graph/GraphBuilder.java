@@ -50,6 +50,36 @@ public class GraphBuilder<V> {
         return builder;
     }
 
+    /**
+     * Creates a builder for directed acyclic graph. Building the graph fails if its links form a cycle.
+     *
+     * @param name name of the graph
+     * @param <V> data type of the tasks that will perform calculations
+     * @return graph builder for directed acyclic graphs
+     * @see DirectedAcyclicGraph
+     */
+    public static <V> GraphBuilder<V> directedAcyclicGraph(String name) {
+        GraphBuilder<V> builder = directedGraph(name);
+        builder.type = Graph.Type.DIRECTED_ACYCLIC;
+        return builder;
+    }
+
+    /**
+     * Creates a builder for directed weighted graph. Weights of links are costs of passing data between tasks,
+     * the graph calculates the longest weighted path from every task to a final task. Building the graph fails
+     * if its links form a cycle.
+     *
+     * @param name name of the graph
+     * @param <V> data type of the tasks that will perform calculations
+     * @return graph builder for directed weighted graphs
+     * @see DirectedWeightedGraph
+     */
+    public static <V> GraphBuilder<V> directedWeightedGraph(String name) {
+        GraphBuilder<V> builder = directedGraph(name);
+        builder.type = Graph.Type.DIRECTED_WEIGHTED;
+        return builder;
+    }
+
     /**
      * Connects two tasks together to form  directed link
      *
@@ -58,12 +88,25 @@ public class GraphBuilder<V> {
      * @return graph builder to chain methods
      */
     public GraphBuilder<V> connect(Task<V> from, Task<V> to) {
+        return connect(from, to, 0);
+    }
+
+    /**
+     * Connects two tasks together to form directed link with a weight. Weights are used by weighted graphs only.
+     *
+     * @param from   the data from "from" task will be sent to "to" task
+     * @param to     the task that will be run after "from" task
+     * @param weight non negative weight of the link
+     * @return graph builder to chain methods
+     */
+    public GraphBuilder<V> connect(Task<V> from, Task<V> to, int weight) {
         if (from == null || to == null) {
             throw new IllegalArgumentException("Tasks can not be null values");
         }
         links.add(new Link()
                 .from(from.id())
                 .to(to.id())
+                .weight(weight)
         );
         tasks.add(from);
         tasks.add(to);
@@ -83,6 +126,12 @@ public class GraphBuilder<V> {
         if (Graph.Type.DIRECTED.equals(type)) {
             return new DirectedGraph<>(name, tasks, links);
         }
+        if (Graph.Type.DIRECTED_ACYCLIC.equals(type)) {
+            return new DirectedAcyclicGraph<>(name, tasks, links);
+        }
+        if (Graph.Type.DIRECTED_WEIGHTED.equals(type)) {
+            return new DirectedWeightedGraph<>(name, tasks, links);
+        }
         throw new IllegalArgumentException("Unrecognizable graph type");
     }
 
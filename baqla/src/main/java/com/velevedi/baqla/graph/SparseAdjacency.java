@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla.graph;
+
+import java.util.Arrays;
+
+/**
+ * Adjacency of a sparse graph in compressed sparse row form. Next nodes of all nodes are kept in one array,
+ * the next nodes of node <code>i</code> take positions from <code>nextOffsets[i]</code> to
+ * <code>nextOffsets[i + 1]</code>. Previous nodes are kept the same way, so both directions cost the degree
+ * of a node.
+ * <code>
+ * memory = O(number of nodes + number of links)
+ * </code>
+ * <p>
+ * The structure is immutable. Links are provided when it is created.
+ * </p>
+ */
+public class SparseAdjacency implements Adjacency {
+
+    private final int[] nextOffsets;
+    private final int[] nextNodes;
+    private final int[] previousOffsets;
+    private final int[] previousNodes;
+
+    /**
+     * Builds the adjacency from links. Duplicate links are ignored.
+     *
+     * @param numberOfNodes the number of nodes to represent
+     * @param from          source nodes of the links
+     * @param to            destination nodes of the links, to[i] is linked from from[i]
+     */
+    public SparseAdjacency(int numberOfNodes, int[] from, int[] to) {
+        if (numberOfNodes <= 0) {
+            throw new IllegalArgumentException("Number of nodes must be more than zero");
+        }
+        if (from == null || to == null || from.length != to.length) {
+            throw new IllegalArgumentException("Links must have both source and destination nodes");
+        }
+        for (int i = 0; i < from.length; i++) {
+            if (from[i] < 0 || from[i] >= numberOfNodes || to[i] < 0 || to[i] >= numberOfNodes) {
+                throw new IllegalArgumentException("Link [" + from[i] + " -> " + to[i] + "] is out of range");
+            }
+        }
+        this.nextOffsets = new int[numberOfNodes + 1];
+        this.nextNodes = compress(from, to, nextOffsets);
+        this.previousOffsets = new int[numberOfNodes + 1];
+        this.previousNodes = compress(to, from, previousOffsets);
+    }
+
+    /**
+     * Sorts links by their rows and fills offsets of the rows
+     *
+     * @return columns of the links sorted within each row
+     */
+    private static int[] compress(int[] rows, int[] columns, int[] offsets) {
+        long[] links = new long[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            links[i] = (long) rows[i] << 32 | columns[i];
+        }
+        Arrays.sort(links);
+        int[] result = new int[links.length];
+        int count = 0;
+        for (int i = 0; i < links.length; i++) {
+            if (i > 0 && links[i] == links[i - 1]) {
+                continue;
+            }
+            offsets[(int) (links[i] >>> 32) + 1]++;
+            result[count++] = (int) links[i];
+        }
+        for (int i = 1; i < offsets.length; i++) {
+            offsets[i] += offsets[i - 1];
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    @Override
+    public int length() {
+        return nextOffsets.length - 1;
+    }
+
+    /**
+     * Returns the number of distinct links
+     *
+     * @return number of links
+     */
+    public int numberOfLinks() {
+        return nextNodes.length;
+    }
+
+    @Override
+    public int[] getNextNodes(int fromNodeIndex) {
+        if (fromNodeIndex < 0) {
+            throw new IllegalArgumentException("Node index can not be negative");
+        }
+        return Arrays.copyOfRange(nextNodes, nextOffsets[fromNodeIndex], nextOffsets[fromNodeIndex + 1]);
+    }
+
+    @Override
+    public int[] getPreviousNodes(int toNodeIndex) {
+        if (toNodeIndex < 0) {
+            throw new IllegalArgumentException("Node index can not be negative");
+        }
+        return Arrays.copyOfRange(previousNodes, previousOffsets[toNodeIndex], previousOffsets[toNodeIndex + 1]);
+    }
+
+    @Override
+    public int[] getInitialNodes() {
+        int[] result = new int[length()];
+        int count = 0;
+        for (int i = 0; i < length(); i++) {
+            if (previousOffsets[i] == previousOffsets[i + 1]) {
+                result[count++] = i;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    @Override
+    public int[] getFinalNodes() {
+        int[] result = new int[length()];
+        int count = 0;
+        for (int i = 0; i < length(); i++) {
+            if (nextOffsets[i] == nextOffsets[i + 1]) {
+                result[count++] = i;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("from -> to\n");
+        for (int i = 0; i < length(); i++) {
+            builder.append("        ").append(i).append(" -> ")
+                    .append(Arrays.toString(getNextNodes(i))).append('\n');
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        SparseAdjacency that = (SparseAdjacency) o;
+        return Arrays.equals(nextOffsets, that.nextOffsets) && Arrays.equals(nextNodes, that.nextNodes);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(nextOffsets) + Arrays.hashCode(nextNodes);
+    }
+}
@@ -3,7 +3,6 @@ package com.velevedi.baqla.util;
 import com.velevedi.baqla.Graph;
 import com.velevedi.baqla.Log;
 import com.velevedi.baqla.Task;
-import com.velevedi.baqla.predicate.OneValuePerSource;
 
 import java.util.List;
 import java.util.Set;
@@ -17,10 +16,8 @@ public final class GraphUtils {
         Set<String> finalTasksNames = graph.finalTasks().stream()
                 .map(Task::id)
                 .collect(Collectors.toSet());
-        return log.stream()
+        return log.latestBySources(finalTasksNames).stream()
                 .sorted(reverseOrder())
-                .filter(e -> finalTasksNames.contains(e.source()))
-                .filter(new OneValuePerSource<>())
                 .collect(Collectors.toList());
     }
 
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla.util;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Generates indices with a hybrid logical clock. An index combines the wall clock time with a logical counter,
+ * so indices stay close to the physical time, grow even when the wall clock goes backwards and are consistent
+ * with causality across processes: a node which has observed a timestamp of another node generates bigger ones.
+ * Identifiers of nodes break ties, so indices generated by different processes are totally ordered.
+ * <p>
+ * A node passes timestamps it receives from other nodes to {@link #observe(HybridTimestamp)} before adding
+ * entries which depend on them.
+ * </p>
+ */
+public class HybridLogicalClock implements IndexFactory<HybridTimestamp> {
+
+    private final int node;
+    private final LongSupplier wallClock;
+    private long physicalTime;
+    private int logical;
+
+    /**
+     * Creates the clock which reads the system time
+     *
+     * @param node identifier of the node, unique among processes which exchange indices
+     */
+    public HybridLogicalClock(int node) {
+        this(node, System::currentTimeMillis);
+    }
+
+    /**
+     * @param node      identifier of the node, unique among processes which exchange indices
+     * @param wallClock source of the physical time in milliseconds
+     */
+    public HybridLogicalClock(int node, LongSupplier wallClock) {
+        if (wallClock == null) {
+            throw new IllegalArgumentException("Wall clock can not be null");
+        }
+        this.node = node;
+        this.wallClock = wallClock;
+    }
+
+    @Override
+    public synchronized HybridTimestamp nextIndex() {
+        long now = wallClock.getAsLong();
+        if (now > physicalTime) {
+            physicalTime = now;
+            logical = 0;
+        } else {
+            tick();
+        }
+        return new HybridTimestamp(physicalTime, logical, node);
+    }
+
+    /**
+     * Merges a timestamp received from another node into the clock. Indices generated after this call
+     * are bigger than the observed timestamp.
+     *
+     * @param timestamp timestamp generated by another node
+     * @return timestamp of the receive event
+     */
+    public synchronized HybridTimestamp observe(HybridTimestamp timestamp) {
+        if (timestamp == null) {
+            throw new IllegalArgumentException("Timestamp can not be null");
+        }
+        long now = wallClock.getAsLong();
+        long previous = physicalTime;
+        physicalTime = Math.max(Math.max(previous, timestamp.physicalTime()), now);
+        if (physicalTime == previous && physicalTime == timestamp.physicalTime()) {
+            logical = Math.max(logical, timestamp.logical());
+            tick();
+        } else if (physicalTime == previous) {
+            tick();
+        } else if (physicalTime == timestamp.physicalTime()) {
+            logical = timestamp.logical();
+            tick();
+        } else {
+            logical = 0;
+        }
+        return new HybridTimestamp(physicalTime, logical, node);
+    }
+
+    private void tick() {
+        if (logical == Integer.MAX_VALUE) {
+            // the counter wraps into the next millisecond
+            physicalTime++;
+            logical = 0;
+        } else {
+            logical++;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla.util;
+
+import java.util.Objects;
+
+/**
+ * Index generated by {@link HybridLogicalClock}. Timestamps are ordered by physical time, then by the logical
+ * counter and then by the node which generated them, so timestamps of all nodes form one total order.
+ */
+public final class HybridTimestamp implements Comparable<HybridTimestamp> {
+
+    private final long physicalTime;
+    private final int logical;
+    private final int node;
+
+    public HybridTimestamp(long physicalTime, int logical, int node) {
+        if (physicalTime < 0) {
+            throw new IllegalArgumentException("Physical time can not be negative");
+        }
+        if (logical < 0) {
+            throw new IllegalArgumentException("Logical counter can not be negative");
+        }
+        this.physicalTime = physicalTime;
+        this.logical = logical;
+        this.node = node;
+    }
+
+    /**
+     * @return the biggest physical time in milliseconds seen by the clock which generated the timestamp
+     */
+    public long physicalTime() {
+        return physicalTime;
+    }
+
+    /**
+     * @return counter which orders timestamps with the same physical time
+     */
+    public int logical() {
+        return logical;
+    }
+
+    /**
+     * @return identifier of the node which generated the timestamp
+     */
+    public int node() {
+        return node;
+    }
+
+    @Override
+    public int compareTo(HybridTimestamp other) {
+        int result = Long.compare(physicalTime, other.physicalTime);
+        if (result == 0) {
+            result = Integer.compare(logical, other.logical);
+        }
+        return result == 0 ? Integer.compare(node, other.node) : result;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        HybridTimestamp that = (HybridTimestamp) o;
+        return physicalTime == that.physicalTime && logical == that.logical && node == that.node;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(physicalTime, logical, node);
+    }
+
+    @Override
+    public String toString() {
+        return physicalTime + "." + logical + "@" + node;
+    }
+}
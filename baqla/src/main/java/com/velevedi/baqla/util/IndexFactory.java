@@ -14,6 +14,9 @@
 
 package com.velevedi.baqla.util;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Each entry has index associated with it. Entries are being added to Log sequentially.
  * The index is a way to let the Log know what is the latest entry added.
@@ -34,4 +37,24 @@ public interface IndexFactory<I extends Comparable<? super I>> {
      */
     I nextIndex();
 
+    /**
+     * Generates a block of indices at once. Indices of the block are in ascending order and no other call
+     * generates an index between the first and the last one of the block.
+     * Implementations generate the block with one update of their state, the default implementation
+     * calls {@link #nextIndex()} for every index.
+     *
+     * @param count number of indices to generate
+     * @return generated indices in ascending order
+     */
+    default List<I> reserve(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Number of indices can not be negative");
+        }
+        List<I> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(nextIndex());
+        }
+        return result;
+    }
+
 }
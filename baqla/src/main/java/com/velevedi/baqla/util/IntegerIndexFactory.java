@@ -14,6 +14,9 @@
 
 package com.velevedi.baqla.util;
 
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -21,10 +24,73 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 public class IntegerIndexFactory implements IndexFactory<Integer> {
 
-    private final AtomicInteger generator = new AtomicInteger(0);
+    private final AtomicInteger generator;
+
+    public IntegerIndexFactory() {
+        this(0);
+    }
+
+    /**
+     * Creates the factory which continues an existing sequence of indices.
+     *
+     * @param initialValue the first value this factory will provide
+     */
+    public IntegerIndexFactory(int initialValue) {
+        if (initialValue < 0) {
+            throw new IllegalArgumentException("Initial index value can not be negative");
+        }
+        this.generator = new AtomicInteger(initialValue);
+    }
 
     @Override
     public Integer nextIndex() {
         return generator.getAndIncrement();
     }
+
+    /**
+     * Reserves a range of consecutive indices with one atomic update
+     *
+     * @param count number of indices to generate
+     * @return the range of indices
+     */
+    @Override
+    public List<Integer> reserve(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Number of indices can not be negative");
+        }
+        int first = generator.getAndUpdate(current -> {
+            if (current > Integer.MAX_VALUE - count) {
+                throw new IndexOutOfBoundsException("Maximum capacity has been reached");
+            }
+            return current + count;
+        });
+        return new IndexRange(first, count);
+    }
+
+    /**
+     * Consecutive indices which are boxed only when they are read
+     */
+    private static final class IndexRange extends AbstractList<Integer> implements RandomAccess {
+
+        private final int first;
+        private final int size;
+
+        IndexRange(int first, int size) {
+            this.first = first;
+            this.size = size;
+        }
+
+        @Override
+        public Integer get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return first + index;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
 }
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla.util;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates Long indices without a counter shared by every call. Each thread takes a block of indices from
+ * a shared counter and hands out indices of its block until the block is used up, so threads touch the shared
+ * counter once per block.
+ * <p>
+ * Indices are unique and grow for every thread. Indices generated by different threads are not ordered by the time
+ * of generation: a thread which took a block earlier can produce smaller indices later than another thread.
+ * Logs which need indices ordered across threads use {@link IntegerIndexFactory} or a block size of 1.
+ * </p>
+ */
+public class LongIndexFactory implements IndexFactory<Long> {
+
+    private static final int DEFAULT_BLOCK_SIZE = 1024;
+
+    private final AtomicLong generator;
+    private final int blockSize;
+    private final ThreadLocal<Block> blocks = ThreadLocal.withInitial(Block::new);
+
+    public LongIndexFactory() {
+        this(0, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Creates the factory which continues an existing sequence of indices.
+     *
+     * @param initialValue the smallest value this factory will provide
+     * @param blockSize    number of indices a thread takes at once
+     */
+    public LongIndexFactory(long initialValue, int blockSize) {
+        if (initialValue < 0) {
+            throw new IllegalArgumentException("Initial index value can not be negative");
+        }
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be more than zero");
+        }
+        this.generator = new AtomicLong(initialValue);
+        this.blockSize = blockSize;
+    }
+
+    @Override
+    public Long nextIndex() {
+        Block block = blocks.get();
+        if (block.next == block.limit) {
+            block.next = take(blockSize);
+            block.limit = block.next + blockSize;
+        }
+        return block.next++;
+    }
+
+    /**
+     * Takes consecutive indices from the shared counter. The block of the calling thread is kept for
+     * later calls of {@link #nextIndex()}.
+     *
+     * @param count number of indices to generate
+     * @return the range of indices
+     */
+    @Override
+    public List<Long> reserve(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Number of indices can not be negative");
+        }
+        return new IndexRange(take(count), count);
+    }
+
+    private long take(int count) {
+        return generator.getAndUpdate(current -> {
+            if (current > Long.MAX_VALUE - count) {
+                throw new IndexOutOfBoundsException("Maximum capacity has been reached");
+            }
+            return current + count;
+        });
+    }
+
+    private static final class Block {
+
+        private long next;
+        private long limit;
+    }
+
+    /**
+     * Consecutive indices which are boxed only when they are read
+     */
+    private static final class IndexRange extends AbstractList<Long> implements RandomAccess {
+
+        private final long first;
+        private final int size;
+
+        IndexRange(long first, int size) {
+            this.first = first;
+            this.size = size;
+        }
+
+        @Override
+        public Long get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return first + index;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
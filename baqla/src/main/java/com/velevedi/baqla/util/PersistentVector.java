@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla.util;
+
+import java.util.*;
+
+/**
+ * Append only List which shares its structure with forked copies.
+ * <p>
+ * Elements are kept in a tree of 32 element wide arrays with the last, incomplete, array kept aside as a tail.
+ * Forking a vector takes constant time as the forked vector references the same tree. Both vectors lose
+ * ownership of the shared arrays. An array is copied only when an owner needs to change it, this is
+ * when a new element is appended to a path shared with another vector. All other arrays stay shared.
+ * </p>
+ * Elements can be appended and read, modifications of existing elements are not supported.
+ *
+ * <p><strong>Note that this implementation is not synchronized.</strong> If multiple threads access
+ * the vector, it <i>must</i> be synchronized externally.
+ * </p>
+ *
+ * @param <E> type of elements
+ */
+public class PersistentVector<E> extends AbstractList<E> implements RandomAccess {
+
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    private static final Node EMPTY_NODE = new Node(null, new Object[WIDTH]);
+
+    /**
+     * Token which marks arrays this vector is allowed to change in place
+     */
+    private Object owner = new Object();
+    private Node root = EMPTY_NODE;
+    private int shift = BITS;
+    private Object[] tail = new Object[WIDTH];
+    private boolean tailOwned = true;
+    private int size;
+
+    public PersistentVector() {
+    }
+
+    public PersistentVector(Collection<? extends E> elements) {
+        addAll(elements);
+    }
+
+    /**
+     * Creates a copy of this vector. Both vectors share all elements added so far, the operation takes
+     * constant time. Elements added later to one of the vectors are not visible in the other.
+     *
+     * @return a new vector with the same elements
+     */
+    public PersistentVector<E> fork() {
+        PersistentVector<E> result = new PersistentVector<>();
+        result.root = root;
+        result.shift = shift;
+        result.tail = tail;
+        result.tailOwned = false;
+        result.size = size;
+
+        owner = new Object();
+        tailOwned = false;
+        return result;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        Objects.checkIndex(index, size);
+        return (E) arrayFor(index)[index & MASK];
+    }
+
+    @Override
+    public boolean add(E element) {
+        int tailSize = size - tailOffset();
+        if (tailSize < WIDTH) {
+            if (!tailOwned) {
+                tail = Arrays.copyOf(tail, WIDTH);
+                tailOwned = true;
+            }
+            tail[tailSize] = element;
+        } else {
+            Node tailNode = new Node(owner, tail);
+            if ((size >>> BITS) > (1 << shift)) {
+                Node newRoot = new Node(owner, new Object[WIDTH]);
+                newRoot.array[0] = root;
+                newRoot.array[1] = newPath(shift, tailNode);
+                root = newRoot;
+                shift += BITS;
+            } else {
+                root = pushTail(shift, root, tailNode);
+            }
+            tail = new Object[WIDTH];
+            tail[0] = element;
+            tailOwned = true;
+        }
+        size++;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new VectorIterator(0, size);
+    }
+
+    /**
+     * Index of the first element kept in the tail
+     */
+    private int tailOffset() {
+        return size < WIDTH ? 0 : ((size - 1) >>> BITS) << BITS;
+    }
+
+    private Object[] arrayFor(int index) {
+        if (index >= tailOffset()) {
+            return tail;
+        }
+        Node node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Node) node.array[(index >>> level) & MASK];
+        }
+        return node.array;
+    }
+
+    private Node pushTail(int level, Node parent, Node tailNode) {
+        Node result = editable(parent);
+        int subIndex = ((size - 1) >>> level) & MASK;
+        Node child;
+        if (level == BITS) {
+            child = tailNode;
+        } else {
+            Node existing = (Node) result.array[subIndex];
+            child = existing != null
+                    ? pushTail(level - BITS, existing, tailNode)
+                    : newPath(level - BITS, tailNode);
+        }
+        result.array[subIndex] = child;
+        return result;
+    }
+
+    private Node newPath(int level, Node node) {
+        if (level == 0) {
+            return node;
+        }
+        Node result = new Node(owner, new Object[WIDTH]);
+        result.array[0] = newPath(level - BITS, node);
+        return result;
+    }
+
+    private Node editable(Node node) {
+        if (node.owner == owner) {
+            return node;
+        }
+        return new Node(owner, node.array.clone());
+    }
+
+    /**
+     * Iterates over leaf arrays instead of walking the tree for each element
+     */
+    private class VectorIterator implements Iterator<E> {
+
+        private final int end;
+        private int index;
+        private Object[] array;
+
+        VectorIterator(int start, int end) {
+            this.index = start;
+            this.end = end;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index < end;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public E next() {
+            if (index >= end) {
+                throw new NoSuchElementException();
+            }
+            if (array == null || (index & MASK) == 0) {
+                array = arrayFor(index);
+            }
+            return (E) array[index++ & MASK];
+        }
+    }
+
+    private static final class Node {
+        private final Object owner;
+        private final Object[] array;
+
+        Node(Object owner, Object[] array) {
+            this.owner = owner;
+            this.array = array;
+        }
+    }
+}
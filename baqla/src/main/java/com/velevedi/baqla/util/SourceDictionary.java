@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.velevedi.baqla.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns sequential int identifiers to sources of Log entries. The first source gets identifier 0.
+ * Identifiers never change, so the list of sources in the order of registration is enough to restore
+ * a dictionary.
+ * <p>
+ * The dictionary keeps one String instance per source. Entries which refer to the canonical instance share it
+ * and compare their sources by reference first.
+ * </p>
+ * Lookups do not lock, registration of new sources is synchronized.
+ */
+public class SourceDictionary {
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] sources = new String[8];
+    private volatile int size;
+
+    public SourceDictionary() {
+    }
+
+    /**
+     * Restores a dictionary
+     *
+     * @param sources sources in the order of registration
+     */
+    public SourceDictionary(List<String> sources) {
+        if (sources == null) {
+            throw new IllegalArgumentException("Sources can not be null");
+        }
+        for (String source : sources) {
+            idOf(source);
+        }
+    }
+
+    /**
+     * Gets the identifier of a source registering the source if necessary
+     *
+     * @param source source to get identifier for
+     * @return identifier of the source
+     */
+    public int idOf(String source) {
+        if (source == null) {
+            throw new IllegalArgumentException("Source can not be null");
+        }
+        Integer id = ids.get(source);
+        return id != null ? id : register(source);
+    }
+
+    private synchronized int register(String source) {
+        Integer id = ids.get(source);
+        if (id != null) {
+            return id;
+        }
+        int next = size;
+        String[] current = sources;
+        if (next == current.length) {
+            current = Arrays.copyOf(current, next * 2);
+        }
+        current[next] = source;
+        // the array is published before the identifier becomes visible
+        sources = current;
+        size = next + 1;
+        ids.put(source, next);
+        return next;
+    }
+
+    /**
+     * Gets the identifier of a source without registering it
+     *
+     * @param source source to find
+     * @return identifier of the source or -1 if the source is not registered
+     */
+    public int find(String source) {
+        if (source == null) {
+            throw new IllegalArgumentException("Source can not be null");
+        }
+        Integer id = ids.get(source);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Gets the source by its identifier. The same String instance is returned for all calls.
+     *
+     * @param id identifier of the source
+     * @return source
+     */
+    public String sourceOf(int id) {
+        // size is read first, the array it covers has been published before it
+        int count = size;
+        String[] current = sources;
+        if (id < 0 || id >= count) {
+            throw new IllegalArgumentException("Unknown source identifier [" + id + "]");
+        }
+        return current[id];
+    }
+
+    /**
+     * Gets the canonical instance of a source registering the source if necessary
+     *
+     * @param source source
+     * @return String instance kept by the dictionary which is equal to the source
+     */
+    public String canonical(String source) {
+        return sourceOf(idOf(source));
+    }
+
+    /**
+     * @return number of registered sources
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return registered sources in the order of registration
+     */
+    public List<String> sources() {
+        int count = size;
+        return Collections.unmodifiableList(Arrays.asList(Arrays.copyOf(sources, count)));
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla;
+
+import com.velevedi.baqla.codec.StringValueCodec;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.core.Is.is;
+
+class ArenaLogTest {
+
+    @Test
+    void creation() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new ArenaLog<String>(null));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new ArenaLog<>(UUID.randomUUID(), 4, new StringValueCodec()));
+    }
+
+    @Test
+    void addingValues() {
+        ArenaLog<String> log = new ArenaLog<>(UUID.randomUUID(), 64, new StringValueCodec());
+        String big = "x".repeat(1000);
+
+        for (int i = 0; i < 20; i++) {
+            log.add("source" + i % 2, "value" + i);
+        }
+        // a value bigger than a slab gets a slab of its own
+        log.add("big", big);
+        log.addAll(List.of(new ComparableIdEntry<>("source0", 30, "value30")));
+
+        assertThat(log.size(), is(22));
+        assertThat(log.latestBySource("big").map(Log.Entry::value).orElse(null), is(big));
+        assertThat(log.latestBySource("source0").map(Log.Entry::value).orElse(null), is("value30"));
+        assertThat(log.stream().limit(3).map(Log.Entry::value).collect(Collectors.toList()),
+                contains("value0", "value1", "value2"));
+        assertThat(log.iterator().next(), is(log.iterator().next()));
+
+        Assertions.assertThrows(NullPointerException.class, () -> log.add("source", null));
+    }
+
+    @Test
+    void forkingAndCompaction() {
+        ArenaLog<String> log = new ArenaLog<>(UUID.randomUUID(), 1024, new StringValueCodec());
+        for (int i = 0; i < 100; i++) {
+            log.add("source" + i % 5, "value" + i);
+        }
+        long allocated = log.allocatedBytes();
+
+        ArenaLog<String> fork = (ArenaLog<String>) log.fork();
+        fork.add("source0", "forked");
+        log.add("source0", "parent");
+
+        assertThat(fork.latestBySource("source0").map(Log.Entry::value).orElse(null), is("forked"));
+        assertThat(log.latestBySource("source0").map(Log.Entry::value).orElse(null), is("parent"));
+        assertThat(fork.stream().map(Log.Entry::value).skip(99).findFirst().orElse(null), is("value99"));
+
+        ArenaLog<String> compacted = (ArenaLog<String>) log.compact(2);
+
+        assertThat(compacted.id(), is(log.id()));
+        assertThat(compacted.size(), is(5));
+        assertThat(compacted.allocatedBytes(), is(lessThan(allocated)));
+        assertThat(compacted.latestBySource("source4").map(Log.Entry::value).orElse(null), is("value99"));
+        assertThat(compacted, is(log.compact(2)));
+    }
+}
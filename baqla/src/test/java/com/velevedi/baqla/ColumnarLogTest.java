@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.core.Is.is;
+
+class ColumnarLogTest {
+
+    @Test
+    void addingEntries() {
+        Log<Integer, String> log = new ColumnarLog<>();
+
+        for (int i = 0; i < 100; i++) {
+            log.add("source" + i % 4, "value" + i);
+        }
+        log.add(new ComparableIdEntry<>("other", 150, "value150"));
+
+        assertThat(log.size(), is(101));
+        assertThat(log.sources(), is(Set.of("source0", "source1", "source2", "source3", "other")));
+        assertThat(log.latestBySource("source2").map(Log.Entry::value).orElse(null), is("value98"));
+        assertThat(log.latestBySource("other").map(Log.Entry::index).orElse(null), is(150));
+        assertThat(log.stream().skip(10).findFirst().map(Log.Entry::value).orElse(null), is("value10"));
+
+        log.add("source0", "next");
+        assertThat(log.latestBySource("source0").map(Log.Entry::index).orElse(null), is(151));
+
+        Assertions.assertThrows(NullPointerException.class, () -> log.add(null, "value"));
+        Assertions.assertThrows(NullPointerException.class, () -> log.add("source", null));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> log.latestBySource(null));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> log.addAll(null));
+    }
+
+    @Test
+    void flyweightEntries() {
+        Log<Integer, String> log = new ColumnarLog<>();
+        log.add("a", "value0");
+        log.add("b", "value1");
+
+        Log.Entry<Integer, String> first = log.iterator().next();
+        Log<Integer, String> fork = log.fork();
+        // the columns are copied here, existing entries keep reading the same values
+        log.add("a", "value2");
+        fork.add("a", "value3");
+
+        assertThat(first.source(), is("a"));
+        assertThat(first.index(), is(0));
+        assertThat(first.value(), is("value0"));
+        assertThat(first, is(fork.iterator().next()));
+        assertThat(first.hashCode(), is(fork.iterator().next().hashCode()));
+        assertThat(first.compareTo(log.latestBySource("a").orElseThrow()), is(-1));
+        assertThat(log.stream().map(Log.Entry::value).collect(Collectors.toList()),
+                contains("value0", "value1", "value2"));
+        assertThat(fork.stream().map(Log.Entry::value).collect(Collectors.toList()),
+                contains("value0", "value1", "value3"));
+        assertThat(fork.parent(), is(log.id()));
+    }
+
+    @Test
+    void compaction() {
+        Log<Integer, String> log = new ColumnarLog<>();
+        for (int i = 0; i < 10; i++) {
+            log.add("source" + i % 2, "value" + i);
+        }
+
+        Log<Integer, String> compacted = log.compact(3);
+
+        assertThat(compacted.id(), is(log.id()));
+        assertThat(compacted.stream().map(Log.Entry::index).collect(Collectors.toList()), contains(7, 8, 9));
+
+        List<Log.Entry<Integer, String>> copied = new ArrayList<>();
+        log.fork(e -> e.index() < 2).forEach(copied::add);
+        assertThat(copied.size(), is(2));
+        assertThat(log.fork(e -> e.index() < 2), is(not(log)));
+        assertThat(log.compact(10), is(log));
+    }
+}
@@ -0,0 +1,365 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.core.Is.is;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class ConcurrentLogTest {
+
+    @Test
+    void creation() {
+        Log<Integer, String> log = new ConcurrentLog<>();
+
+        assertNotNull(log);
+
+        assertThat(log.isEmpty(), is(true));
+        assertThat(log.size(), is(0));
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new ConcurrentLog<>(null));
+    }
+
+    @Test
+    void addingEntries() {
+        Log<Integer, String> log = new ConcurrentLog<>();
+
+        log.add("source", "value1");
+        log.add(new ComparableIdEntry<>("source", log.size(), "value2"));
+        log.addAll(Collections.singleton(new ComparableIdEntry<>("source", log.size(), "value3")));
+
+        assertThat(log.size(), is(3));
+        assertThat(log.stream().map(Log.Entry::value).collect(Collectors.toList()),
+                contains("value1", "value2", "value3"));
+        assertThat(log.latestBySource("source").map(Log.Entry::value).orElse(null), is("value3"));
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> log.add(null));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> log.addAll(null));
+        Assertions.assertThrows(NullPointerException.class,
+                () -> log.add("source", null));
+
+        // failed additions do not block entries added later
+        log.add("source", "value4");
+        assertThat(log.size(), is(4));
+    }
+
+    @Test
+    void tryingToRemove() {
+        Log<Integer, String> log = new ConcurrentLog<>();
+
+        log.add("source", "value1");
+
+        Assertions.assertThrows(UnsupportedOperationException.class,
+                () -> log.iterator().remove());
+    }
+
+    @Test
+    void addingFromMultipleThreads() throws Exception {
+        Log<Integer, Integer> log = new ConcurrentLog<>();
+        int threads = 8;
+        int entriesPerThread = 20_000;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                String source = "source" + t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < entriesPerThread; i++) {
+                        log.add(source, i);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(log.size(), is(threads * entriesPerThread));
+
+        int expectedIndex = 0;
+        for (Log.Entry<Integer, Integer> entry : log) {
+            assertThat(entry.index(), is(expectedIndex++));
+        }
+        for (int t = 0; t < threads; t++) {
+            assertThat(log.latestBySource("source" + t).map(Log.Entry::value).orElse(null), is(entriesPerThread - 1));
+        }
+    }
+
+    @Test
+    void subscribingToAppendsFromMultipleThreads() throws Exception {
+        Log<Integer, Integer> log = new ConcurrentLog<>();
+        int threads = 4;
+        int entriesPerThread = 5_000;
+
+        Set<Integer> received = ConcurrentHashMap.newKeySet();
+        CountDownLatch completed = new CountDownLatch(1);
+        log.appends().subscribe(new Flow.Subscriber<>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(Log.Entry<Integer, Integer> item) {
+                received.add(item.index());
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+                completed.countDown();
+            }
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                String source = "source" + t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < entriesPerThread; i++) {
+                        log.add(source, i);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        log.close();
+
+        assertThat(completed.await(10, TimeUnit.SECONDS), is(true));
+        assertThat(received.size(), is(threads * entriesPerThread));
+    }
+
+    @Test
+    void splittingEntries() {
+        Log<Integer, Integer> log = new ConcurrentLog<>();
+        for (int i = 0; i < 3000; i++) {
+            log.add("source", i);
+        }
+
+        Spliterator<Log.Entry<Integer, Integer>> spliterator = log.spliterator();
+
+        assertThat(spliterator.hasCharacteristics(Spliterator.SIZED | Spliterator.SORTED | Spliterator.IMMUTABLE), is(true));
+        assertThat(spliterator.trySplit().estimateSize(), is(1500L));
+        assertThat(log.parallelStream().mapToLong(Log.Entry::value).sum(), is(2999L * 3000 / 2));
+
+        log.addAll(List.of(new ComparableIdEntry<>("source", 5, 5)));
+
+        assertThat(log.spliterator().hasCharacteristics(Spliterator.SORTED), is(false));
+    }
+
+    @Test
+    void descendingIteration() {
+        Log<Integer, String> log = new ConcurrentLog<>();
+        log.add("source1", "value0");
+        log.add("source2", "value1");
+        log.add("source1", "value2");
+
+        assertThat(log.descendingStream().map(Log.Entry::index).collect(Collectors.toList()), contains(2, 1, 0));
+
+        log.addAll(List.of(new ComparableIdEntry<>("source3", 10, "value10")));
+
+        assertThat(log.descendingStream().map(Log.Entry::index).collect(Collectors.toList()), contains(10, 2, 1, 0));
+    }
+
+    @Test
+    void forking() {
+        Log<Integer, String> log = new ConcurrentLog<>();
+
+        log.add("source1", "value1");
+        log.add("source2", "value2");
+        log.add("source1", "value3");
+
+        Log<Integer, String> forked = log.fork(e -> e.source().equals("source1"));
+
+        assertThat(forked.parent(), is(log.id()));
+        assertThat(forked.id(), is(not(log.id())));
+        assertThat(forked.size(), is(2));
+
+        forked.add("source2", "value4");
+
+        assertThat(forked.stream().map(Log.Entry::index).collect(Collectors.toList()), contains(0, 2, 3));
+        assertThat(log.size(), is(3));
+    }
+
+    @Test
+    void keepingFilteredCopiesOrdered() {
+        Log<Integer, Integer> log = new ConcurrentLog<>();
+        for (int i = 0; i < 100; i++) {
+            log.add("source" + i % 4, i);
+        }
+
+        Log<Integer, Integer> forked = log.fork(e -> e.value() % 3 == 0);
+        Log<Integer, Integer> compacted = log.compact(10);
+
+        for (Log<Integer, Integer> copy : List.of(forked, compacted)) {
+            List<Integer> indices = copy.stream().map(Log.Entry::index).collect(Collectors.toList());
+            assertThat(copy.spliterator().hasCharacteristics(Spliterator.SORTED), is(true));
+            assertThat(copy.since(50).map(Log.Entry::index).collect(Collectors.toList()),
+                    is(indices.stream().filter(i -> i >= 50).collect(Collectors.toList())));
+            assertThat(copy.range(20, 95).map(Log.Entry::index).collect(Collectors.toList()),
+                    is(indices.stream().filter(i -> i >= 20 && i < 95).collect(Collectors.toList())));
+            assertThat(copy.tail(2).map(Log.Entry::index).collect(Collectors.toList()),
+                    is(indices.subList(indices.size() - 2, indices.size())));
+        }
+        assertThat(forked.since(50).map(Log.Entry::index).collect(Collectors.toList()), contains(51, 54, 57, 60,
+                63, 66, 69, 72, 75, 78, 81, 84, 87, 90, 93, 96, 99));
+
+        // an index smaller than the one before it
+        forked.addAll(List.of(new ComparableIdEntry<>("source1", 1, 1)));
+
+        assertThat(forked.spliterator().hasCharacteristics(Spliterator.SORTED), is(false));
+        assertThat(forked.since(98).map(Log.Entry::index).collect(Collectors.toList()), contains(99));
+        assertThat(forked.tail(2).map(Log.Entry::index).collect(Collectors.toList()), contains(96, 99));
+    }
+
+    @Test
+    void rejectingInvalidEntries() {
+        Log<Integer, String> log = new ConcurrentLog<>();
+        log.add("a", "value1");
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> log.addAll(List.of(new ComparableIdEntry<>("b", 1, "value2"), new MissingIndexEntry("b"))));
+
+        assertThat(log.size(), is(1));
+        assertThat(log.latestBySource("b").isPresent(), is(false));
+
+        log.add("b", "value3");
+
+        assertThat(log.size(), is(2));
+        assertThat(log.latestBySource("b").map(Log.Entry::value).orElse(null), is("value3"));
+    }
+
+    @Test
+    void hashCodeEquals() {
+        UUID id = UUID.randomUUID();
+        Log<Integer, String> log1 = new ConcurrentLog<>(id);
+        Log<Integer, String> log2 = new ConcurrentLog<>(id);
+
+        log1.add("source", "value1");
+        log2.add("source", "value1");
+
+        assertThat(log1, is(log2));
+        assertThat(log1.hashCode(), is(log2.hashCode()));
+
+        log2.add("source", "value2");
+
+        assertThat(log1, is(not(log2)));
+        assertThat(log1, is(not(new ConcurrentLog<>())));
+    }
+
+    @Test
+    void addingBatchesFromMultipleThreads() throws Exception {
+        Log<Integer, Integer> log = new ConcurrentLog<>();
+        int threads = 4;
+        int batches = 50;
+        List<Integer> batch = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            batch.add(i);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                String source = "source" + t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < batches; i++) {
+                        log.addAll(source, batch);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(log.size(), is(threads * batches * batch.size()));
+        // a batch takes consecutive indices
+        Iterator<Log.Entry<Integer, Integer>> iterator = log.iterator();
+        while (iterator.hasNext()) {
+            Log.Entry<Integer, Integer> first = iterator.next();
+            for (int i = 1; i < batch.size(); i++) {
+                Log.Entry<Integer, Integer> next = iterator.next();
+                assertThat(next.source(), is(first.source()));
+                assertThat(next.value(), is(i));
+            }
+        }
+        Log.Entry<Integer, Integer> latest = log.latestBySource("source2").orElseThrow();
+        assertThat(latest.value(), is(99));
+
+        Assertions.assertThrows(NullPointerException.class, () -> log.addAll("source", Arrays.asList(1, null)));
+        assertThat(log.size(), is(threads * batches * batch.size()));
+    }
+
+    private static final class MissingIndexEntry implements Log.Entry<Integer, String> {
+
+        private final String source;
+
+        MissingIndexEntry(String source) {
+            this.source = source;
+        }
+
+        @Override
+        public String source() {
+            return source;
+        }
+
+        @Override
+        public Integer index() {
+            return null;
+        }
+
+        @Override
+        public String value() {
+            return "value";
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.core.Is.is;
+
+class DoubleLogTest {
+
+    @Test
+    void addingValues() {
+        DoubleLog log = new DoubleLog();
+
+        assertThat(log.isEmpty(), is(true));
+
+        // enough values to grow the columns
+        for (int i = 0; i < 100; i++) {
+            log.addDouble("source" + i % 3, i * 0.5);
+        }
+        log.add("boxed", 1.0);
+        log.addAll(List.of(new ComparableIdEntry<>("boxed", 200, 2.0)));
+
+        assertThat(log.size(), is(102));
+        assertThat(log.values().sum(), is(2478.0));
+        assertThat(log.latestDouble("source0").getAsDouble(), is(49.5));
+        assertThat(log.latestDouble("boxed").getAsDouble(), is(2.0));
+        assertThat(log.latestDouble("unknown").isPresent(), is(false));
+        assertThat(log.sources(), is(Set.of("source0", "source1", "source2", "boxed")));
+
+        Log.Entry<Integer, Double> entry = log.latestBySource("source1").orElseThrow();
+        assertThat(entry, is(new ComparableIdEntry<>("source1", 97, 48.5)));
+        assertThat(log.stream().map(Log.Entry::index).collect(Collectors.toList()).get(101), is(200));
+
+        Assertions.assertThrows(NullPointerException.class, () -> log.addDouble(null, 1.0));
+        Assertions.assertThrows(NullPointerException.class, () -> log.add("source", null));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> log.latestDouble(null));
+        assertThat(log.size(), is(102));
+    }
+
+    @Test
+    void forkingSharesColumns() {
+        DoubleLog log = new DoubleLog();
+        log.addDouble("a", 1.0);
+        log.addDouble("b", 2.0);
+
+        DoubleLog fork = (DoubleLog) log.fork();
+        fork.addDouble("a", 3.0);
+        log.addDouble("b", 4.0);
+
+        assertThat(fork.parent(), is(log.id()));
+        assertThat(fork.values().boxed().collect(Collectors.toList()), contains(1.0, 2.0, 3.0));
+        assertThat(log.values().boxed().collect(Collectors.toList()), contains(1.0, 2.0, 4.0));
+        assertThat(fork.latestDouble("a").getAsDouble(), is(3.0));
+        assertThat(log.latestDouble("a").getAsDouble(), is(1.0));
+
+        Log<Integer, Double> filtered = log.fork(e -> e.value() > 1.0);
+        assertThat(filtered.size(), is(2));
+        assertThat(filtered.sources(), is(Set.of("b")));
+
+        Log<Integer, Double> compacted = log.compact(0);
+        assertThat(compacted.id(), is(log.id()));
+        assertThat(compacted.stream().map(Log.Entry::value).collect(Collectors.toList()), contains(1.0, 4.0));
+        compacted.add("c", 5.0);
+        assertThat(compacted.latestBySource("c").map(Log.Entry::index).orElse(null), is(3));
+    }
+
+    @Test
+    void readingThroughLogView() {
+        DoubleLog log = new DoubleLog();
+        for (int i = 0; i < 10; i++) {
+            log.addDouble("source", i);
+        }
+
+        assertThat(log.spliterator().hasCharacteristics(Spliterator.SIZED | Spliterator.SORTED), is(true));
+        assertThat(log.range(3, 6).map(Log.Entry::value).collect(Collectors.toList()), contains(3.0, 4.0, 5.0));
+        assertThat(log.tail(2).map(Log.Entry::index).collect(Collectors.toList()), contains(8, 9));
+        assertThat(log.descendingStream().limit(2).map(Log.Entry::index).collect(Collectors.toList()), contains(9, 8));
+        assertThat(log.parallelStream().mapToDouble(Log.Entry::value).sum(), is(45.0));
+    }
+
+    @Test
+    void runningPrimitiveTasks() {
+        DoubleLog log = new DoubleLog();
+        log.addDouble("a", 2.0);
+        log.addDouble("b", 3.0);
+        DoubleTask product = new DoubleTask() {
+            @Override
+            public String id() {
+                return "product";
+            }
+
+            @Override
+            public double callOnValues(String[] sources, double[] values) {
+                double result = 1;
+                for (double value : values) {
+                    result *= value;
+                }
+                return result;
+            }
+        };
+
+        log.run(product, Set.of("a", "b", "missing"));
+
+        assertThat(log.latestDouble("product").getAsDouble(), is(6.0));
+        assertThat(product.callOn(log.latestBySources(Set.of("a", "product"))), is(12.0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> log.run(null, Set.of()));
+    }
+
+    @Test
+    void hashCodeEquals() {
+        DoubleLog log = new DoubleLog();
+        log.addDouble("a", 1.0);
+        Log<Integer, Double> copy = log.compact(10);
+
+        assertThat(copy, is(log));
+        assertThat(copy.hashCode(), is(log.hashCode()));
+        assertThat(log.fork(), is(not(log)));
+    }
+}
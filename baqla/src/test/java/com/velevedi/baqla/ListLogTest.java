@@ -19,12 +19,17 @@ import com.velevedi.baqla.predicate.RefuseAll;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 import static java.util.Comparator.reverseOrder;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.hamcrest.core.Is.is;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 
@@ -100,6 +105,67 @@ class ListLogTest {
         assertThat(forked.size(), is(3));
     }
 
+    @Test
+    void forkingSharesEntries() {
+        Log<Integer, String> log = new ListLog<>();
+
+        log.add("source", "value1");
+        log.add("source", "value2");
+
+        Log<Integer, String> forked = log.fork();
+
+        log.add("source", "value3");
+        forked.add("source", "value4");
+
+        assertThat(forked.parent(), is(log.id()));
+        assertThat(log.stream().map(Log.Entry::value).collect(Collectors.toList()),
+                contains("value1", "value2", "value3"));
+        assertThat(forked.stream().map(Log.Entry::value).collect(Collectors.toList()),
+                contains("value1", "value2", "value4"));
+        // indices of the forked log continue the sequence of the parent
+        assertThat(forked.latestBySource("source").map(Log.Entry::index).orElse(null), is(2));
+        assertThat(forked.latestBySource("source").map(Log.Entry::value).orElse(null), is("value4"));
+
+        Log<Integer, String> filtered = log.fork(e -> !e.value().equals("value2"));
+
+        assertThat(filtered.stream().map(Log.Entry::value).collect(Collectors.toList()),
+                contains("value1", "value3"));
+    }
+
+    @Test
+    void lazyForking() {
+        Log<Integer, String> log = new ListLog<>();
+
+        log.add("source1", "value11");
+        log.add("source2", "value21");
+        log.add("source1", "value12");
+
+        Log<Integer, String> forked = log.lazyFork(e -> !e.value().equals("value12"));
+        log.add("source2", "value22");
+
+        assertThat(forked.parent(), is(log.id()));
+        assertThat(forked.size(), is(2));
+        assertThat(forked.stream().map(Log.Entry::value).collect(Collectors.toList()),
+                contains("value11", "value21"));
+        assertThat(forked.latestBySource("source1").map(Log.Entry::value).orElse(null), is("value11"));
+
+        forked.add("source3", "value31");
+        forked.add("source2", "value23");
+
+        assertThat(forked.size(), is(4));
+        assertThat(log.size(), is(4));
+        assertThat(forked.sources(), is(Set.of("source1", "source2", "source3")));
+        assertThat(forked.latestBySource("source2").map(Log.Entry::value).orElse(null), is("value23"));
+        assertThat(forked.latestBySource("source2").map(Log.Entry::index).orElse(-1)
+                > forked.latestBySource("source3").map(Log.Entry::index).orElse(-1), is(true));
+
+        Log<Integer, String> second = forked.fork(e -> !e.source().equals("source1"));
+
+        assertThat(second.parent(), is(forked.id()));
+        assertThat(second.stream().map(Log.Entry::value).collect(Collectors.toList()),
+                contains("value21", "value31", "value23"));
+    }
+
     @Test
     void sameValueCanBeInsertedMultipleTimes() {
         Log<Integer, String> log = new ListLog<>(new ArrayList<>());
@@ -173,6 +239,310 @@ class ListLogTest {
         assertThat(firstValue.index(), is(5));
     }
 
+    @Test
+    void latestEntriesBySource() {
+        Log<Integer, String> log = new ListLog<>(new ArrayList<>());
+
+        log.add("source1", "value11");
+        log.add("source2", "value21");
+        log.add("source1", "value12");
+        log.add("source3", "value31");
+
+        assertThat(log.latestBySource("source1").map(Log.Entry::value).orElse(null), is("value12"));
+        assertThat(log.latestBySource("source2").map(Log.Entry::value).orElse(null), is("value21"));
+        assertThat(log.latestBySource("unknown").isPresent(), is(false));
+
+        Set<String> latestValues = log.latestBySources(Set.of("source1", "source2", "unknown")).stream()
+                .map(Log.Entry::value)
+                .collect(Collectors.toSet());
+        assertThat(latestValues, is(Set.of("value12", "value21")));
+
+        assertThat(log.sources(), is(Set.of("source1", "source2", "source3")));
+    }
+
+    @Test
+    void compaction() {
+        Log<Integer, String> log = new ListLog<>(new ArrayList<>());
+
+        log.add("source1", "value11");
+        log.add("source2", "value21");
+        log.add("source1", "value12");
+        log.add("source1", "value13");
+        log.add("source3", "value31");
+        log.add("source3", "value32");
+
+        Log<Integer, String> compacted = log.compact(1);
+
+        assertThat(compacted.id(), is(log.id()));
+        assertThat(compacted.parent(), is(log.parent()));
+        assertThat(compacted.stream().map(Log.Entry::value).collect(Collectors.toList()),
+                contains("value21", "value13", "value32"));
+        assertThat(log.compact(3).stream().map(Log.Entry::value).collect(Collectors.toList()),
+                contains("value21", "value13", "value31", "value32"));
+        assertThat(log.size(), is(6));
+
+        compacted.add("source2", "value22");
+
+        assertThat(compacted.latestBySource("source2").map(Log.Entry::index).orElse(null), is(6));
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> log.compact(-1));
+    }
+
+    @Test
+    void indexQueries() {
+        Log<Integer, String> log = new ListLog<>();
+        for (int i = 0; i < 10; i++) {
+            log.add("source", "value" + i);
+        }
+
+        assertThat(log.since(7).map(Log.Entry::index).collect(Collectors.toList()), contains(7, 8, 9));
+        assertThat(log.since(10).count(), is(0L));
+        assertThat(log.range(2, 5).map(Log.Entry::index).collect(Collectors.toList()), contains(2, 3, 4));
+        assertThat(log.range(3, 3).count(), is(0L));
+        assertThat(log.tail(2).map(Log.Entry::index).collect(Collectors.toList()), contains(8, 9));
+        assertThat(log.tail(20).count(), is(10L));
+
+        // entries added out of order are scanned
+        log.addAll(List.of(new ComparableIdEntry<>("source", 15, "value15"), new ComparableIdEntry<>("source", 12, "value12")));
+
+        assertThat(log.since(9).map(Log.Entry::index).collect(Collectors.toList()), contains(9, 12, 15));
+        assertThat(log.range(11, 13).map(Log.Entry::index).collect(Collectors.toList()), contains(12));
+        assertThat(log.tail(2).map(Log.Entry::index).collect(Collectors.toList()), contains(12, 15));
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> log.since(null));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> log.range(5, 2));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> log.tail(-1));
+    }
+
+    @Test
+    void subscribingToAppends() throws IOException {
+        Log<Integer, String> log = new ListLog<>();
+        log.add("source", "value0");
+
+        List<String> received = new ArrayList<>();
+        List<Flow.Subscription> subscriptions = new ArrayList<>();
+        boolean[] completed = new boolean[1];
+        log.appends(Runnable::run).subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscriptions.add(subscription);
+                subscription.request(2);
+            }
+
+            @Override
+            public void onNext(Log.Entry<Integer, String> item) {
+                received.add(item.value());
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+                completed[0] = true;
+            }
+        });
+
+        log.add("source", "value1");
+        log.add("source", "value2");
+        log.add("source", "value3");
+
+        // entries which are not requested are buffered
+        assertThat(received, contains("value1", "value2"));
+
+        subscriptions.get(0).request(5);
+
+        assertThat(received, contains("value1", "value2", "value3"));
+
+        log.close();
+
+        assertThat(completed[0], is(true));
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> log.appends(null));
+    }
+
+    @Test
+    void failingSubscribersWithoutFailingAppends() {
+        Log<Integer, String> log = new ListLog<>();
+        List<Throwable> errors = new ArrayList<>();
+        Flow.Subscriber<Log.Entry<Integer, String>> slow = new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(Log.Entry<Integer, String> item) {
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                errors.add(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        };
+
+        log.appends(Runnable::run, 2).subscribe(slow);
+        for (int i = 0; i < 4; i++) {
+            log.add("source", "value" + i);
+        }
+
+        assertThat(log.size(), is(4));
+        assertThat(errors.size(), is(1));
+        assertThat(errors.get(0) instanceof IllegalStateException, is(true));
+
+        log.appends(task -> {
+            throw new RejectedExecutionException();
+        }).subscribe(slow);
+        log.add("source", "value4");
+
+        assertThat(log.size(), is(5));
+        assertThat(errors.size(), is(2));
+        assertThat(errors.get(1) instanceof RejectedExecutionException, is(true));
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> log.appends(Runnable::run, 0));
+    }
+
+    @Test
+    void splittingEntries() {
+        Log<Integer, Integer> log = new ListLog<>();
+        for (int i = 0; i < 1000; i++) {
+            log.add("source" + i % 7, i);
+        }
+
+        Spliterator<Log.Entry<Integer, Integer>> spliterator = log.spliterator();
+
+        assertThat(spliterator.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.SORTED), is(true));
+        assertThat(spliterator.getComparator() == null, is(true));
+
+        Spliterator<Log.Entry<Integer, Integer>> prefix = spliterator.trySplit();
+
+        assertThat(prefix.estimateSize(), is(500L));
+        assertThat(spliterator.estimateSize(), is(500L));
+
+        List<Integer> indices = log.parallelStream()
+                .filter(e -> e.value() % 2 == 0)
+                .sorted()
+                .map(Log.Entry::index)
+                .collect(Collectors.toList());
+
+        assertThat(indices.size(), is(500));
+        for (int i = 0; i < indices.size(); i++) {
+            assertThat(indices.get(i), is(i * 2));
+        }
+
+        log.addAll(List.of(new ComparableIdEntry<>("source", 0, 0)));
+
+        assertThat(log.spliterator().hasCharacteristics(Spliterator.SORTED), is(false));
+        assertThat(log.stream().sorted().findFirst().map(Log.Entry::index).orElse(null), is(0));
+    }
+
+    @Test
+    void descendingIteration() {
+        Log<Integer, String> log = new ListLog<>();
+        log.add("source1", "value0");
+        log.add("source2", "value1");
+        log.add("source1", "value2");
+
+        assertThat(log.descendingStream().map(Log.Entry::index).collect(Collectors.toList()), contains(2, 1, 0));
+        assertThat(log.descendingStream().limit(1).map(Log.Entry::value).collect(Collectors.toList()), contains("value2"));
+
+        Iterator<Log.Entry<Integer, String>> iterator = log.descendingIterator();
+        iterator.next();
+
+        Assertions.assertThrows(UnsupportedOperationException.class,
+                iterator::remove);
+
+        log.addAll(List.of(new ComparableIdEntry<>("source3", 1, "value3")));
+
+        assertThat(log.descendingStream().map(Log.Entry::value).collect(Collectors.toList()).get(0), is("value2"));
+        assertThat(log.descendingStream().count(), is(4L));
+    }
+
+    @Test
+    void addingWhileIteratingDescending() {
+        Log<Integer, String> log = new ListLog<>();
+        Log<Integer, String> arrayLog = new ListLog<>(new ArrayList<>());
+        for (Log<Integer, String> each : List.of(log, arrayLog)) {
+            each.add("source1", "value0");
+            each.add("source2", "value1");
+
+            Iterator<Log.Entry<Integer, String>> iterator = each.descendingIterator();
+            List<String> visited = new ArrayList<>();
+            visited.add(iterator.next().value());
+            each.add("source1", "value2");
+            iterator.forEachRemaining(entry -> visited.add(entry.value()));
+
+            assertThat(visited, contains("value1", "value0"));
+            assertThat(each.descendingStream().map(Log.Entry::value).collect(Collectors.toList()),
+                    contains("value2", "value1", "value0"));
+        }
+    }
+
+    @Test
+    void addingBatches() {
+        ListLog<String> log = new ListLog<>();
+        log.add("source1", "value0");
+        log.addAll("source2", List.of("value1", "value2", "value3"));
+        log.add("source1", "value4");
+
+        assertThat(log.stream().map(Log.Entry::index).collect(Collectors.toList()), contains(0, 1, 2, 3, 4));
+        assertThat(log.latestBySource("source2").map(Log.Entry::value).orElse(null), is("value3"));
+        assertThat(log.since(2).count(), is(3L));
+
+        Assertions.assertThrows(NullPointerException.class, () -> log.addAll("source3", Arrays.asList("a", null)));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> log.addAll("source3", null));
+        assertThat(log.size(), is(5));
+        assertThat(log.sources(), is(Set.of("source1", "source2")));
+    }
+
+    @Test
+    void sharingSourceInstances() {
+        ListLog<String> log = new ListLog<>();
+        log.add(new String("source1"), "value0");
+        log.add(new String("source1"), "value1");
+        Log<Integer, String> fork = log.fork();
+        fork.add(new String("source1"), "value2");
+
+        String source = log.latestBySource("source1").map(Log.Entry::source).orElse(null);
+        assertThat(log.stream().findFirst().map(Log.Entry::source).orElse(null), is(sameInstance(source)));
+        assertThat(fork.latestBySource("source1").map(Log.Entry::source).orElse(null), is(sameInstance(source)));
+        assertThat(log.latestBySource("source2").isPresent(), is(false));
+        assertThat(fork.sources(), is(Set.of("source1")));
+    }
+
+    @Test
+    void identifyingSources() {
+        ListLog<String> log = new ListLog<>();
+        log.add("source1", "value0");
+        log.add("source2", "value1");
+        log.add("source1", "value2");
+        Log<Integer, String> fork = log.fork();
+        fork.add("source1", "value3");
+
+        int sourceId = log.sourceId("source1");
+
+        assertThat(fork.sourceId("source1"), is(sourceId));
+        assertThat(log.latestBySourceId(sourceId).map(Log.Entry::value).orElse(null), is("value2"));
+        assertThat(fork.latestBySourceId(sourceId).map(Log.Entry::value).orElse(null), is("value3"));
+        assertThat(log.sourceId("unknown"), is(-1));
+        assertThat(log.latestBySourceId(-1).isPresent(), is(false));
+        assertThat(log.latestBySourceId(100).isPresent(), is(false));
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> log.sourceId(null));
+    }
+
     @Test
     void hashCodeEquals() {
         Log<Integer, String> log1 = new ListLog<>(new ArrayList<>());
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Flow;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.core.Is.is;
+
+class LongLogTest {
+
+    @Test
+    void addingValues() {
+        LongLog log = new LongLog();
+
+        for (long i = 0; i < 1000; i++) {
+            log.addLong("source" + i % 10, i);
+        }
+
+        assertThat(log.size(), is(1000));
+        assertThat(log.values().sum(), is(499500L));
+        assertThat(log.latestLong("source7").getAsLong(), is(997L));
+        assertThat(log.sources().size(), is(10));
+        assertThat(log.latestBySources(Set.of("source1", "source2")).stream()
+                .map(Log.Entry::value).sorted().collect(Collectors.toList()), contains(991L, 992L));
+    }
+
+    @Test
+    void addingEntriesOutOfOrder() {
+        LongLog log = new LongLog();
+        log.addAll(List.of(
+                new ComparableIdEntry<>("a", 5, 1L),
+                new ComparableIdEntry<>("a", 2, 2L),
+                new ComparableIdEntry<>("b", 3, 3L)
+        ));
+        log.addLong("b", 4L);
+
+        assertThat(log.latestLong("a").getAsLong(), is(1L));
+        assertThat(log.latestBySource("b").map(Log.Entry::index).orElse(null), is(6));
+        assertThat(log.descendingStream().map(Log.Entry::index).collect(Collectors.toList()), contains(6, 5, 3, 2));
+        assertThat(log.since(3).map(Log.Entry::value).sorted().collect(Collectors.toList()), contains(1L, 3L, 4L));
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> log.addAll(null));
+    }
+
+    @Test
+    void subscribingToAppends() throws Exception {
+        LongLog log = new LongLog();
+        List<Long> received = new ArrayList<>();
+        log.appends(Runnable::run).subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(Log.Entry<Integer, Long> item) {
+                received.add(item.value());
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+                received.add(-1L);
+            }
+        });
+
+        log.addLong("a", 1L);
+        log.add("a", 2L);
+        log.close();
+
+        assertThat(received, contains(1L, 2L, -1L));
+    }
+}
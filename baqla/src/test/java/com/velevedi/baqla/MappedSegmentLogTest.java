@@ -0,0 +1,392 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla;
+
+import com.velevedi.baqla.codec.StringValueCodec;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.core.Is.is;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class MappedSegmentLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void creation() {
+        Log<Integer, String> log = new MappedSegmentLog<>(directory, new StringValueCodec());
+
+        assertNotNull(log);
+
+        assertThat(log.isEmpty(), is(true));
+        assertThat(log.size(), is(0));
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new MappedSegmentLog<>(null, new StringValueCodec()));
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new MappedSegmentLog<String>(directory, null));
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new MappedSegmentLog<>(UUID.randomUUID(), directory, 0, new StringValueCodec()));
+    }
+
+    @Test
+    void addingEntries() {
+        Log<Integer, String> log = new MappedSegmentLog<>(directory, new StringValueCodec());
+
+        log.add("source", "value1");
+        log.add(new ComparableIdEntry<>("source", log.size(), "value2"));
+        log.addAll(Collections.singleton(new ComparableIdEntry<>("source", log.size(), "value3")));
+
+        assertThat(log.isEmpty(), is(false));
+        assertThat(log.size(), is(3));
+        assertThat(log.iterator().next().value(), is("value1"));
+        assertThat(values(log), contains("value1", "value2", "value3"));
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> log.add(null));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> log.addAll(null));
+    }
+
+    @Test
+    void tryingToRemove() {
+        Log<Integer, String> log = new MappedSegmentLog<>(directory, new StringValueCodec());
+
+        log.add("source", "value1");
+
+        Assertions.assertThrows(UnsupportedOperationException.class,
+                () -> log.iterator().remove());
+    }
+
+    @Test
+    void entriesSpanMultipleSegments() throws IOException {
+        Log<Integer, String> log = new MappedSegmentLog<>(UUID.randomUUID(), directory, 64, new StringValueCodec());
+
+        for (int i = 0; i < 20; i++) {
+            log.add("source" + i, "value" + i);
+        }
+
+        assertThat(log.size(), is(20));
+        assertThat(Files.list(directory).count() > 1, is(true));
+
+        List<Log.Entry<Integer, String>> entries = log.stream().collect(Collectors.toList());
+        for (int i = 0; i < 20; i++) {
+            assertThat(entries.get(i).index(), is(i));
+            assertThat(entries.get(i).source(), is("source" + i));
+            assertThat(entries.get(i).value(), is("value" + i));
+        }
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> log.add("source", "a value which is too long to fit into a single segment of the log"));
+    }
+
+    @Test
+    void reopeningExistingSegments() throws IOException {
+        UUID id = UUID.randomUUID();
+        Log<Integer, String> log = new MappedSegmentLog<>(id, directory, 128, new StringValueCodec());
+        log.add("source1", "value1");
+        log.add("source2", "value2");
+        log.add("source3", "value3");
+        log.close();
+
+        Log<Integer, String> reopened = new MappedSegmentLog<>(id, directory, 128, new StringValueCodec());
+
+        assertThat(reopened.size(), is(3));
+        assertThat(values(reopened), contains("value1", "value2", "value3"));
+
+        reopened.add("source4", "value4");
+
+        assertThat(reopened.size(), is(4));
+        assertThat(reopened.stream().map(Log.Entry::index).collect(Collectors.toList()), contains(0, 1, 2, 3));
+        reopened.close();
+    }
+
+    @Test
+    void reopeningFromCheckpoint() throws IOException {
+        UUID id = UUID.randomUUID();
+        MappedSegmentLog<String> log = new MappedSegmentLog<>(id, directory, 64, new StringValueCodec());
+        for (int i = 0; i < 10; i++) {
+            log.add("source" + i % 3, "value" + i);
+        }
+        log.checkpoint();
+        assertThat(Files.exists(directory.resolve("checkpoint")), is(true));
+
+        // entries added after the checkpoint are found by scanning the tail
+        for (int i = 10; i < 15; i++) {
+            log.add("source" + i % 4, "value" + i);
+        }
+
+        MappedSegmentLog<String> reopened = new MappedSegmentLog<>(id, directory, 64, new StringValueCodec());
+
+        assertThat(reopened.size(), is(15));
+        assertThat(reopened.latestBySource("source0").map(Log.Entry::value).orElse(null), is("value12"));
+        assertThat(reopened.latestBySource("source1").map(Log.Entry::value).orElse(null), is("value13"));
+        assertThat(reopened.latestBySource("source2").map(Log.Entry::value).orElse(null), is("value14"));
+        assertThat(reopened.latestBySource("source3").map(Log.Entry::value).orElse(null), is("value11"));
+
+        reopened.add("source0", "value15");
+
+        assertThat(reopened.latestBySource("source0").map(Log.Entry::index).orElse(null), is(15));
+        reopened.close();
+        log.close();
+
+        // a damaged checkpoint is ignored
+        Files.write(directory.resolve("checkpoint"), new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17});
+
+        MappedSegmentLog<String> recovered = new MappedSegmentLog<>(id, directory, 64, new StringValueCodec());
+
+        assertThat(recovered.size(), is(16));
+        assertThat(recovered.latestBySource("source0").map(Log.Entry::value).orElse(null), is("value15"));
+        recovered.close();
+    }
+
+    @Test
+    void keepingCheckpointsSmall() throws IOException {
+        UUID id = UUID.randomUUID();
+        MappedSegmentLog<String> log = new MappedSegmentLog<>(id, directory, 1024 * 1024, new StringValueCodec());
+        for (int i = 0; i < 1000; i++) {
+            log.add("source" + i % 3, "value" + i);
+        }
+        log.checkpoint();
+        long size = Files.size(directory.resolve("checkpoint"));
+        for (int i = 1000; i < 2000; i++) {
+            log.add("source" + i % 3, "value" + i);
+        }
+        log.close();
+
+        assertThat(Files.size(directory.resolve("checkpoint")), is(size));
+
+        MappedSegmentLog<String> reopened = new MappedSegmentLog<>(id, directory, 1024 * 1024, new StringValueCodec());
+
+        assertThat(reopened.latestBySource("source1").map(Log.Entry::value).orElse(null), is("value1999"));
+        assertThat(values(reopened), is(IntStream.range(0, 2000).mapToObj(i -> "value" + i).collect(Collectors.toList())));
+        reopened.add("source1", "value2000");
+        assertThat(reopened.size(), is(2001));
+        reopened.close();
+    }
+
+    @Test
+    void splittingEntriesAcrossSegments() throws IOException {
+        MappedSegmentLog<String> log = new MappedSegmentLog<>(UUID.randomUUID(), directory, 128, new StringValueCodec());
+        for (int i = 0; i < 100; i++) {
+            log.add("source", "value" + i);
+        }
+
+        Spliterator<Log.Entry<Integer, String>> spliterator = log.spliterator();
+
+        assertThat(spliterator.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED), is(true));
+        assertThat(spliterator.trySplit().estimateSize(), is(50L));
+        assertThat(log.parallelStream().map(Log.Entry::index).collect(Collectors.toList()),
+                is(IntStream.range(0, 100).boxed().collect(Collectors.toList())));
+        log.close();
+    }
+
+    @Test
+    void forking() throws IOException {
+        Log<Integer, String> log = new MappedSegmentLog<>(directory.resolve("log"), new StringValueCodec());
+
+        log.add("source1", "value1");
+        log.add("source2", "value2");
+        log.add("source1", "value3");
+
+        Log<Integer, String> forked = log.fork(e -> e.source().equals("source1"));
+
+        assertThat(forked.parent(), is(log.id()));
+        assertThat(forked.id(), is(not(log.id())));
+        assertThat(forked.size(), is(2));
+        assertThat(values(forked), contains("value1", "value3"));
+
+        forked.add("source2", "value4");
+
+        assertThat(forked.size(), is(3));
+        assertThat(log.size(), is(3));
+        assertThat(forked.stream().map(Log.Entry::index).collect(Collectors.toList()), contains(0, 2, 3));
+
+        forked.close();
+        log.close();
+    }
+
+    @Test
+    void forkingIntoChosenDirectory() throws IOException {
+        MappedSegmentLog<String> log = new MappedSegmentLog<>(directory.resolve("log"), new StringValueCodec());
+        log.add("source1", "value1");
+        log.add("source2", "value2");
+        Path target = directory.resolve("forks").resolve("fork");
+
+        MappedSegmentLog<String> forked = log.fork(target);
+
+        assertThat(forked.directory(), is(target));
+        assertThat(forked.parent(), is(log.id()));
+        assertThat(values(forked), contains("value1", "value2"));
+        assertThat(Files.list(directory).count(), is(2L));
+
+        forked.close();
+        log.close();
+    }
+
+    @Test
+    void forkingWhileAdding() throws Exception {
+        MappedSegmentLog<String> log = new MappedSegmentLog<>(directory.resolve("log"), new StringValueCodec());
+        AtomicBoolean forking = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> adding = executor.submit(() -> {
+                for (int i = 0; forking.get() && i < 100_000; i++) {
+                    log.add("source" + i % 5, "value" + i);
+                }
+            });
+            for (int i = 0; i < 20; i++) {
+                MappedSegmentLog<String> forked = log.fork(directory.resolve("fork" + i));
+                forked.add("fork", "value");
+
+                List<Integer> indices = forked.stream().map(Log.Entry::index).collect(Collectors.toList());
+                int last = forked.latestBySource("fork").map(Log.Entry::index).orElseThrow();
+                assertThat(indices.stream().distinct().count(), is((long) indices.size()));
+                assertThat(indices.get(indices.size() - 1), is(last));
+                forked.close();
+            }
+            forking.set(false);
+            adding.get();
+        } finally {
+            forking.set(false);
+            executor.shutdown();
+            log.close();
+        }
+    }
+
+    @Test
+    void latestEntriesBySource() {
+        Log<Integer, String> log = new MappedSegmentLog<>(directory, new StringValueCodec());
+
+        log.add("source1", "value11");
+        log.add("source2", "value21");
+        log.add("source1", "value12");
+        log.add("source3", "value31");
+
+        assertThat(log.latestBySource("source1").map(Log.Entry::value).orElse(null), is("value12"));
+        assertThat(log.latestBySource("source2").map(Log.Entry::value).orElse(null), is("value21"));
+        assertThat(log.latestBySource("unknown").isPresent(), is(false));
+
+        Set<String> latestValues = log.latestBySources(Set.of("source1", "source2", "unknown")).stream()
+                .map(Log.Entry::value)
+                .collect(Collectors.toSet());
+        assertThat(latestValues, is(Set.of("value12", "value21")));
+
+        assertThat(log.sources(), is(Set.of("source1", "source2", "source3")));
+    }
+
+    @Test
+    void compaction() throws IOException {
+        UUID id = UUID.randomUUID();
+        MappedSegmentLog<String> log = new MappedSegmentLog<>(id, directory, 64, new StringValueCodec());
+
+        for (int i = 0; i < 20; i++) {
+            log.add("source" + i % 2, "value" + i);
+        }
+        long segments = Files.list(directory).count();
+
+        assertThat(log.compact(1), is(log));
+        assertThat(Files.list(directory).count() < segments, is(true));
+        assertThat(log.size(), is(2));
+        assertThat(values(log), contains("value18", "value19"));
+        assertThat(log.latestBySource("source0").map(Log.Entry::value).orElse(null), is("value18"));
+
+        log.add("source0", "value20");
+        log.close();
+
+        MappedSegmentLog<String> reopened = new MappedSegmentLog<>(id, directory, 64, new StringValueCodec());
+
+        assertThat(values(reopened), contains("value18", "value19", "value20"));
+        assertThat(reopened.stream().map(Log.Entry::index).collect(Collectors.toList()), contains(18, 19, 20));
+        reopened.close();
+    }
+
+    @Test
+    void compactionInBackground() throws Exception {
+        MappedSegmentLog<String> log = new MappedSegmentLog<>(UUID.randomUUID(), directory, 64, new StringValueCodec());
+
+        for (int i = 0; i < 10; i++) {
+            log.add("source" + i % 3, "value" + i);
+        }
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CompletableFuture<Void> compaction = log.compactAsync(0, executor);
+            for (int i = 10; i < 20; i++) {
+                log.add("source" + i % 3, "value" + i);
+            }
+            compaction.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(log.latestBySources(log.sources()).stream()
+                        .map(Log.Entry::value)
+                        .collect(Collectors.toSet()),
+                is(Set.of("value17", "value18", "value19")));
+        assertThat(log.stream().map(Log.Entry::index).sorted().collect(Collectors.toList()),
+                is(log.stream().map(Log.Entry::index).collect(Collectors.toList())));
+        assertThat(log.stream().map(Log.Entry::value).collect(Collectors.toList()),
+                hasItems("value10", "value19"));
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> log.compactAsync(-1, Runnable::run));
+        log.close();
+    }
+
+    @Test
+    void hashCodeEquals() {
+        UUID id = UUID.randomUUID();
+        Log<Integer, String> log1 = new MappedSegmentLog<>(id, directory, 1024, new StringValueCodec());
+        Log<Integer, String> log2 = new MappedSegmentLog<>(id, directory, 1024, new StringValueCodec());
+
+        assertThat(log1, is(log2));
+        assertThat(log1.hashCode(), is(log2.hashCode()));
+
+        Log<Integer, String> log3 = new MappedSegmentLog<>(directory, new StringValueCodec());
+
+        assertThat(log1, is(not(log3)));
+    }
+
+    private static List<String> values(Log<Integer, String> log) {
+        return log.stream().map(Log.Entry::value).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.core.Is.is;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class ShardedLogTest {
+
+    @Test
+    void creation() {
+        ShardedLog<String> log = new ShardedLog<>(4);
+
+        assertNotNull(log);
+
+        assertThat(log.isEmpty(), is(true));
+        assertThat(log.size(), is(0));
+        assertThat(log.numberOfShards(), is(4));
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new ShardedLog<>(0));
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new ShardedLog<>(null, 2));
+    }
+
+    @Test
+    void addingEntries() {
+        Log<Long, String> log = new ShardedLog<>(4);
+
+        for (int i = 0; i < 10; i++) {
+            log.add("source" + i % 3, "value" + i);
+        }
+
+        assertThat(log.size(), is(10));
+        assertThat(log.sources(), is(Set.of("source0", "source1", "source2")));
+        assertThat(log.latestBySource("source0").map(Log.Entry::value).orElse(null), is("value9"));
+        assertThat(log.latestBySource("source1").map(Log.Entry::value).orElse(null), is("value7"));
+
+        // entries of a source keep the order they have been added in
+        List<String> source1 = log.stream()
+                .filter(e -> e.source().equals("source1"))
+                .map(Log.Entry::value)
+                .collect(Collectors.toList());
+        assertThat(source1, contains("value1", "value4", "value7"));
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> log.add(null));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> log.addAll(null));
+    }
+
+    @Test
+    void entriesAreMergedInIndexOrder() {
+        Log<Long, Integer> log = new ShardedLog<>(8);
+
+        for (int i = 0; i < 1000; i++) {
+            log.add("source" + i % 50, i);
+        }
+
+        List<Long> indices = log.stream().map(Log.Entry::index).collect(Collectors.toList());
+        List<Long> sorted = new ArrayList<>(indices);
+        Collections.sort(sorted);
+
+        assertThat(indices.size(), is(1000));
+        assertThat(indices, is(sorted));
+        assertThat(new HashSet<>(indices).size(), is(1000));
+    }
+
+    @Test
+    void queryingIndicesAcrossShards() {
+        Log<Long, Integer> log = new ShardedLog<>(4);
+        for (int i = 0; i < 200; i++) {
+            log.add("source" + i % 7, i);
+        }
+        List<Log.Entry<Long, Integer>> all = log.stream().collect(Collectors.toList());
+        long from = all.get(100).index();
+        long to = all.get(150).index();
+
+        assertThat(log.since(from).collect(Collectors.toList()), is(all.subList(100, 200)));
+        assertThat(log.range(from, to).collect(Collectors.toList()), is(all.subList(100, 150)));
+        assertThat(log.tail(3).collect(Collectors.toList()), is(all.subList(197, 200)));
+        assertThat(log.tail(0).count(), is(0L));
+        assertThat(log.tail(500).collect(Collectors.toList()), is(all));
+
+        Log<Long, Integer> compacted = log.compact(5);
+        assertThat(compacted.tail(5).collect(Collectors.toList()), is(all.subList(195, 200)));
+        assertThat(compacted.sources(), is(log.sources()));
+
+        long previous = compacted.latestBySource("source1").map(Log.Entry::index).orElseThrow();
+        compacted.add("source1", 200);
+        assertThat(compacted.latestBySource("source1").map(Log.Entry::index).orElseThrow() > previous, is(true));
+    }
+
+    @Test
+    void addingEntriesWithTheirIndices() {
+        Log<Long, String> original = new ShardedLog<>(4);
+        original.add("source1", "value1");
+        original.add("source2", "value2");
+        original.add("source1", "value3");
+        long last = original.latestBySource("source1").map(Log.Entry::index).orElseThrow();
+        long other = original.latestBySource("source2").map(Log.Entry::index).orElseThrow();
+
+        Log<Long, String> copy = new ShardedLog<>(4);
+        copy.addAll(original.stream().collect(Collectors.toList()));
+        copy.add("source1", "value4");
+
+        assertThat(copy.size(), is(4));
+        assertThat(copy.latestBySource("source1").map(Log.Entry::index).orElse(null), is(last + 4));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> copy.addAll(List.of(new ComparableIdEntry<>("source2", other + 1, "value5"))));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> copy.addAll(List.of(new ComparableIdEntry<>("source1", last, "value6"))));
+        assertThat(copy.size(), is(4));
+    }
+
+    @Test
+    void descendingIteration() {
+        Log<Long, Integer> log = new ShardedLog<>(4);
+
+        for (int i = 0; i < 100; i++) {
+            log.add("source" + i % 10, i);
+        }
+
+        List<Long> descending = log.descendingStream().map(Log.Entry::index).collect(Collectors.toList());
+        List<Long> expected = log.stream().map(Log.Entry::index).collect(Collectors.toList());
+        Collections.reverse(expected);
+
+        assertThat(descending, is(expected));
+    }
+
+    @Test
+    void addingFromMultipleThreads() throws Exception {
+        Log<Long, Integer> log = new ShardedLog<>(16);
+        int threads = 8;
+        int entriesPerThread = 10_000;
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                String source = "source" + t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < entriesPerThread; i++) {
+                        log.add(source, i);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(log.size(), is(threads * entriesPerThread));
+        for (int t = 0; t < threads; t++) {
+            assertThat(log.latestBySource("source" + t).map(Log.Entry::value).orElse(null), is(entriesPerThread - 1));
+        }
+    }
+
+    @Test
+    void forking() {
+        Log<Long, String> log = new ShardedLog<>(2);
+
+        log.add("source1", "value1");
+        log.add("source2", "value2");
+        log.add("source1", "value3");
+
+        Log<Long, String> forked = log.fork();
+        Log<Long, String> filtered = log.fork(e -> e.source().equals("source1"));
+
+        log.add("source1", "value4");
+        forked.add("source2", "value5");
+        filtered.add("source1", "value6");
+
+        assertThat(forked.parent(), is(log.id()));
+        assertThat(forked.id(), is(not(log.id())));
+        assertThat(log.size(), is(4));
+        assertThat(forked.size(), is(4));
+        assertThat(forked.latestBySource("source2").map(Log.Entry::value).orElse(null), is("value5"));
+        assertThat(filtered.stream().map(Log.Entry::value).collect(Collectors.toList()),
+                contains("value1", "value3", "value6"));
+    }
+
+    @Test
+    void hashCodeEquals() {
+        UUID id = UUID.randomUUID();
+        Log<Long, String> log1 = new ShardedLog<>(id, 2);
+        Log<Long, String> log2 = new ShardedLog<>(id, 2);
+
+        log1.add("source", "value1");
+        log2.add("source", "value1");
+
+        assertThat(log1, is(log2));
+        assertThat(log1.hashCode(), is(log2.hashCode()));
+
+        log2.add("source", "value2");
+
+        assertThat(log1, is(not(log2)));
+    }
+}
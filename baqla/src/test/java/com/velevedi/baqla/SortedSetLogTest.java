@@ -25,6 +25,7 @@ import java.util.stream.Collectors;
 
 import static java.util.Comparator.reverseOrder;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.core.Is.is;
 import static org.junit.jupiter.api.Assertions.*;
@@ -105,6 +106,40 @@ class SortedSetLogTest {
         assertThat(forked.size(), is(3));
     }
 
+    @Test
+    void lazyForking() {
+        Log<Integer, String> log = new SortedSetLog<>(new IntegerIndexFactory(), new TreeSet<>());
+
+        log.add("source1", "value11");
+        log.add("source2", "value21");
+        log.add("source1", "value12");
+
+        Log<Integer, String> forked = log.lazyFork(e -> !e.value().equals("value12"));
+        log.add("source2", "value22");
+
+        assertThat(forked.parent(), is(log.id()));
+        assertThat(forked.size(), is(2));
+        assertThat(forked.stream().map(Log.Entry::value).collect(Collectors.toList()),
+                contains("value11", "value21"));
+        assertThat(forked.latestBySource("source1").map(Log.Entry::value).orElse(null), is("value11"));
+
+        forked.add("source3", "value31");
+        forked.add("source2", "value23");
+
+        assertThat(forked.size(), is(4));
+        assertThat(log.size(), is(4));
+        assertThat(forked.sources(), is(Set.of("source1", "source2", "source3")));
+        assertThat(forked.latestBySource("source2").map(Log.Entry::value).orElse(null), is("value23"));
+        assertThat(forked.latestBySource("source2").map(Log.Entry::index).orElse(-1)
+                > forked.latestBySource("source3").map(Log.Entry::index).orElse(-1), is(true));
+
+        Log<Integer, String> second = forked.fork(e -> !e.source().equals("source1"));
+
+        assertThat(second.parent(), is(forked.id()));
+        assertThat(second.stream().map(Log.Entry::value).collect(Collectors.toList()),
+                contains("value21", "value31", "value23"));
+    }
+
     @Test
     void sameValueCanBeInsertedMultipleTimes() {
         Log<Integer, String> log = new SortedSetLog<>(new IntegerIndexFactory(), new TreeSet<>());
@@ -178,6 +213,92 @@ class SortedSetLogTest {
         assertThat(firstValue.index(), is(5));
     }
 
+    @Test
+    void latestEntriesBySource() {
+        Log<Integer, String> log = new SortedSetLog<>(new IntegerIndexFactory(), new TreeSet<>());
+
+        log.add("source1", "value11");
+        log.add("source2", "value21");
+        log.add("source1", "value12");
+        log.add("source3", "value31");
+
+        assertThat(log.latestBySource("source1").map(Log.Entry::value).orElse(null), is("value12"));
+        assertThat(log.latestBySource("source2").map(Log.Entry::value).orElse(null), is("value21"));
+        assertThat(log.latestBySource("unknown").isPresent(), is(false));
+
+        Set<String> latestValues = log.latestBySources(Set.of("source1", "source2", "unknown")).stream()
+                .map(Log.Entry::value)
+                .collect(Collectors.toSet());
+        assertThat(latestValues, is(Set.of("value12", "value21")));
+
+        assertThat(log.sources(), is(Set.of("source1", "source2", "source3")));
+    }
+
+    @Test
+    void compaction() {
+        Log<Integer, String> log = new SortedSetLog<>(new IntegerIndexFactory(), new TreeSet<>());
+
+        log.add("source1", "value11");
+        log.add("source2", "value21");
+        log.add("source1", "value12");
+        log.add("source3", "value31");
+
+        Log<Integer, String> compacted = log.compact(0);
+
+        assertThat(compacted.id(), is(log.id()));
+        assertThat(compacted.size(), is(3));
+        assertThat(compacted.stream().map(Log.Entry::value).collect(Collectors.toList()),
+                contains("value21", "value12", "value31"));
+        assertThat(log.size(), is(4));
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> log.compact(-1));
+    }
+
+    @Test
+    void indexQueries() {
+        Log<Integer, String> log = new SortedSetLog<>(new IntegerIndexFactory(), new TreeSet<>());
+        for (int i = 0; i < 10; i++) {
+            log.add("source", "value" + i);
+        }
+
+        assertThat(log.since(7).map(Log.Entry::index).collect(Collectors.toList()), contains(7, 8, 9));
+        assertThat(log.range(2, 5).map(Log.Entry::value).collect(Collectors.toList()),
+                contains("value2", "value3", "value4"));
+        assertThat(log.tail(3).map(Log.Entry::index).collect(Collectors.toList()), contains(7, 8, 9));
+        assertThat(log.tail(0).count(), is(0L));
+
+        Log<Integer, String> reversed = new SortedSetLog<>(new IntegerIndexFactory(), new TreeSet<>(reverseOrder()));
+        for (int i = 0; i < 5; i++) {
+            reversed.add("source", "value" + i);
+        }
+
+        assertThat(reversed.since(3).map(Log.Entry::index).collect(Collectors.toList()), contains(3, 4));
+        assertThat(reversed.tail(2).map(Log.Entry::index).collect(Collectors.toList()), contains(3, 4));
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> log.range(null, 2));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> log.range(5, 2));
+    }
+
+    @Test
+    void descendingIteration() {
+        Log<Integer, String> log = new SortedSetLog<>(new IntegerIndexFactory(), new TreeSet<>());
+        log.add("source1", "value0");
+        log.add("source2", "value1");
+        log.add("source1", "value2");
+
+        assertThat(log.descendingStream().map(Log.Entry::value).collect(Collectors.toList()),
+                contains("value2", "value1", "value0"));
+
+        Iterator<Log.Entry<Integer, String>> iterator = log.descendingIterator();
+        iterator.next();
+
+        Assertions.assertThrows(UnsupportedOperationException.class,
+                iterator::remove);
+    }
+
     @Test
     void hashCodeEquals() {
         Log<Integer, String> log1 = new SortedSetLog<>(new IntegerIndexFactory(), new TreeSet<>());
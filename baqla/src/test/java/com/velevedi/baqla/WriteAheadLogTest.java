@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla;
+
+import com.velevedi.baqla.codec.StringValueCodec;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.core.Is.is;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class WriteAheadLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void creation() throws IOException {
+        Log<Integer, String> log = new WriteAheadLog<>(
+                directory.resolve("log.wal"), new StringValueCodec(), SyncPolicy.everyAppend()
+        );
+
+        assertNotNull(log);
+        assertThat(log.isEmpty(), is(true));
+        assertThat(log.size(), is(0));
+        log.close();
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new WriteAheadLog<>(null, new StringValueCodec(), SyncPolicy.everyAppend()));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new WriteAheadLog<String>(directory.resolve("log.wal"), null, SyncPolicy.everyAppend()));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new WriteAheadLog<>(directory.resolve("log.wal"), new StringValueCodec(), null));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> SyncPolicy.everyMillis(0));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> SyncPolicy.everyBytes(-1));
+    }
+
+    @Test
+    void addingEntries() throws IOException {
+        Log<Integer, String> log = new WriteAheadLog<>(
+                directory.resolve("log.wal"), new StringValueCodec(), SyncPolicy.everyBytes(1024)
+        );
+
+        log.add("source", "value1");
+        log.add(new ComparableIdEntry<>("source", log.size(), "value2"));
+        log.addAll(Collections.singleton(new ComparableIdEntry<>("source", log.size(), "value3")));
+
+        assertThat(log.size(), is(3));
+        assertThat(values(log), contains("value1", "value2", "value3"));
+        assertThat(log.latestBySource("source").map(Log.Entry::value).orElse(null), is("value3"));
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> log.addAll(null));
+        Assertions.assertThrows(UnsupportedOperationException.class,
+                () -> log.iterator().remove());
+
+        log.close();
+
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> log.add("source", "value4"));
+    }
+
+    @Test
+    void replayingAfterReopening() throws IOException {
+        UUID id = UUID.randomUUID();
+        Path file = directory.resolve("log.wal");
+        Log<Integer, String> log = new WriteAheadLog<>(id, file, new StringValueCodec(), SyncPolicy.everyMillis(10));
+        log.add("source1", "value1");
+        log.add("source2", "value2");
+        log.add("source1", "value3");
+        log.close();
+
+        // a record written partially before a crash
+        Files.write(file, new byte[]{0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+
+        Log<Integer, String> reopened = new WriteAheadLog<>(id, file, new StringValueCodec(), SyncPolicy.everyAppend());
+
+        assertThat(values(reopened), contains("value1", "value2", "value3"));
+        assertThat(reopened.sources(), is(Set.of("source1", "source2")));
+
+        reopened.add("source3", "value4");
+        reopened.close();
+
+        Log<Integer, String> reopenedAgain = new WriteAheadLog<>(id, file, new StringValueCodec(), SyncPolicy.everyAppend());
+
+        assertThat(values(reopenedAgain), contains("value1", "value2", "value3", "value4"));
+        assertThat(reopenedAgain.stream().map(Log.Entry::index).collect(Collectors.toList()), contains(0, 1, 2, 3));
+        assertThat(reopenedAgain.latestBySource("source3").map(Log.Entry::value).orElse(null), is("value4"));
+        reopenedAgain.close();
+    }
+
+    @Test
+    void replayingFileBiggerThanOneMapping() throws IOException {
+        UUID id = UUID.randomUUID();
+        Path file = directory.resolve("log.wal");
+        Log<Integer, String> log = new WriteAheadLog<>(id, file, new StringValueCodec(), SyncPolicy.everyAppend());
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String value = "value" + "x".repeat(i % 13);
+            log.add("source" + i % 7, value);
+            expected.add(value);
+        }
+        log.close();
+        long fileSize = Files.size(file);
+
+        // records cross the ends of mappings of 64 bytes
+        Log<Integer, String> reopened = new WriteAheadLog<>(
+                id, file, new StringValueCodec(), SyncPolicy.everyAppend(), 0, 64
+        );
+
+        assertThat(values(reopened), is(expected));
+        assertThat(Files.size(file), is(fileSize));
+        reopened.add("source1", "last");
+        reopened.close();
+
+        Assertions.assertThrows(UncheckedIOException.class, () -> new WriteAheadLog<>(
+                id, file, new StringValueCodec(), SyncPolicy.everyAppend(), 0, 16
+        ));
+        assertThat(Files.size(file) > fileSize, is(true));
+    }
+
+    @Test
+    void addingBatches() throws IOException {
+        UUID id = UUID.randomUUID();
+        Path file = directory.resolve("log.wal");
+        Log<Integer, String> log = new WriteAheadLog<>(id, file, new StringValueCodec(), SyncPolicy.everyAppend());
+        log.add("source1", "value0");
+        log.addAll("source2", List.of("value1", "value2", "value3"));
+        log.addAll("source2", List.of());
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> log.addAll("source2", null));
+        log.close();
+
+        Log<Integer, String> reopened = new WriteAheadLog<>(id, file, new StringValueCodec(), SyncPolicy.everyAppend());
+
+        assertThat(values(reopened), contains("value0", "value1", "value2", "value3"));
+        assertThat(reopened.latestBySource("source2").map(Log.Entry::index).orElse(null), is(3));
+        reopened.close();
+    }
+
+    @Test
+    void addingFromMultipleThreads() throws Exception {
+        Path file = directory.resolve("log.wal");
+        WriteAheadLog<String> log = new WriteAheadLog<>(file, new StringValueCodec(), SyncPolicy.everyAppend());
+
+        int threads = 4;
+        int perThread = 250;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                String source = "source" + t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        log.add(source, "value" + i);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(log.size(), is(threads * perThread));
+        assertThat(log.stream().map(Log.Entry::index).distinct().count(), is((long) threads * perThread));
+        log.close();
+
+        Log<Integer, String> reopened = new WriteAheadLog<>(file, new StringValueCodec(), SyncPolicy.everyAppend());
+
+        assertThat(reopened.size(), is(threads * perThread));
+        assertThat(reopened.latestBySource("source2").map(Log.Entry::value).orElse(null), is("value" + (perThread - 1)));
+        reopened.close();
+    }
+
+    @Test
+    void forking() throws IOException {
+        Log<Integer, String> log = new WriteAheadLog<>(
+                directory.resolve("log.wal"), new StringValueCodec(), SyncPolicy.everyAppend()
+        );
+        log.add("source1", "value1");
+        log.add("source2", "value2");
+        log.add("source1", "value3");
+
+        Log<Integer, String> forked = log.fork(e -> e.source().equals("source1"));
+
+        assertThat(forked.parent(), is(log.id()));
+        assertThat(forked.id(), is(not(log.id())));
+        assertThat(values(forked), contains("value1", "value3"));
+
+        forked.add("source2", "value4");
+
+        assertThat(forked.stream().map(Log.Entry::index).collect(Collectors.toList()), contains(0, 2, 3));
+        assertThat(log.size(), is(3));
+
+        forked.close();
+        log.close();
+    }
+
+    @Test
+    void forkingIntoChosenFile() throws IOException {
+        WriteAheadLog<String> log = new WriteAheadLog<>(
+                directory.resolve("log.wal"), new StringValueCodec(), SyncPolicy.everyAppend()
+        );
+        log.add("source1", "value1");
+        log.add("source2", "value2");
+        Path target = directory.resolve("forks").resolve("fork.wal");
+        Files.createDirectories(target.getParent());
+
+        WriteAheadLog<String> forked = log.fork(e -> e.source().equals("source2"), target);
+
+        assertThat(forked.file(), is(target));
+        assertThat(forked.parent(), is(log.id()));
+        assertThat(values(forked), contains("value2"));
+        forked.close();
+
+        WriteAheadLog<String> reopened = new WriteAheadLog<>(target, new StringValueCodec(), SyncPolicy.everyAppend());
+        assertThat(values(reopened), contains("value2"));
+        reopened.close();
+        log.close();
+    }
+
+    @Test
+    void compaction() throws IOException {
+        UUID id = UUID.randomUUID();
+        Path file = directory.resolve("log.wal");
+        Log<Integer, String> log = new WriteAheadLog<>(id, file, new StringValueCodec(), SyncPolicy.everyAppend());
+        for (int i = 0; i < 100; i++) {
+            log.add("source" + i % 3, "value" + i);
+        }
+        long fileSize = Files.size(file);
+
+        assertThat(log.compact(1), is(log));
+        assertThat(Files.size(file) < fileSize, is(true));
+        assertThat(values(log), contains("value97", "value98", "value99"));
+
+        log.add("source0", "value100");
+        log.close();
+
+        Log<Integer, String> reopened = new WriteAheadLog<>(id, file, new StringValueCodec(), SyncPolicy.everyAppend());
+
+        assertThat(values(reopened), contains("value97", "value98", "value99", "value100"));
+        assertThat(reopened.sources(), is(Set.of("source0", "source1", "source2")));
+        reopened.close();
+    }
+
+    @Test
+    void hashCodeEquals() throws IOException {
+        UUID id = UUID.randomUUID();
+        Log<Integer, String> log1 = new WriteAheadLog<>(
+                id, directory.resolve("log.wal"), new StringValueCodec(), SyncPolicy.everyAppend()
+        );
+        log1.close();
+        Log<Integer, String> log2 = new WriteAheadLog<>(
+                id, directory.resolve("log.wal"), new StringValueCodec(), SyncPolicy.everyAppend()
+        );
+
+        assertThat(log1, is(log2));
+        assertThat(log1.hashCode(), is(log2.hashCode()));
+        log2.close();
+    }
+
+    private static List<String> values(Log<Integer, String> log) {
+        return log.stream().map(Log.Entry::value).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla.codec;
+
+import com.velevedi.baqla.Log;
+import com.velevedi.baqla.util.SourceDictionary;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
+
+class EntryCodecTest {
+
+    @Test
+    void creation() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new EntryCodec<>(null, new SourceDictionary(), new StringValueCodec()));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new EntryCodec<>(new IntegerIndexCodec(), null, new StringValueCodec()));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new EntryCodec<>(new IntegerIndexCodec(), new SourceDictionary(), null));
+    }
+
+    @Test
+    void encodingAndDecoding() {
+        EntryCodec<Long, String> codec = new EntryCodec<>(
+                new LongIndexCodec(), new SourceDictionary(), new StringValueCodec()
+        );
+        ByteBuffer buffer = ByteBuffer.allocate(128);
+
+        int size1 = codec.sizeOf("source1", 1L, "value1");
+        codec.encode("source1", 1L, "value1", buffer);
+        int size2 = codec.sizeOf("source2", 300L, "value2");
+        codec.encode("source2", 300L, "value2", buffer);
+
+        assertThat(size1, is(1 + 1 + 6));
+        assertThat(size2, is(2 + 1 + 6));
+        assertThat(buffer.position(), is(size1 + size2));
+        assertThat(codec.dictionary().sources(), is(List.of("source1", "source2")));
+
+        Log.Entry<Long, String> entry = codec.decode(buffer, size1, size2);
+
+        assertThat(entry.index(), is(300L));
+        assertThat(entry.source(), is("source2"));
+        assertThat(entry.value(), is("value2"));
+        assertThat(entry.source(), sameInstance(codec.dictionary().sourceOf(1)));
+        assertThat(buffer.position(), is(size1 + size2));
+
+        assertThat(codec.decodeIndex(buffer, 0), is(1L));
+        assertThat(codec.decodeSource(buffer, 0), is("source1"));
+        assertThat(codec.decode(buffer, 0, size1), is(codec.decode(buffer, 0, size1)));
+    }
+
+    @Test
+    void variableLengthIntegers() {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        long[] values = {0, 127, 128, 16384, Integer.MAX_VALUE, Long.MAX_VALUE, -1};
+
+        for (long value : values) {
+            int offset = buffer.position();
+            Varints.put(value, buffer);
+
+            assertThat(buffer.position() - offset, is(Varints.sizeOf(value)));
+            assertThat(Varints.sizeAt(buffer, offset), is(Varints.sizeOf(value)));
+            assertThat(Varints.get(buffer, offset), is(value));
+        }
+        assertThat(Varints.sizeOf(127), is(1));
+        assertThat(Varints.sizeOf(128), is(2));
+        assertThat(Varints.sizeOf(-1), is(Varints.MAX_SIZE));
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla.executor;
+
+import com.velevedi.baqla.*;
+import com.velevedi.baqla.executor.IncrementalExecutorTest.Constant;
+import com.velevedi.baqla.executor.IncrementalExecutorTest.Multiply;
+import com.velevedi.baqla.executor.IncrementalExecutorTest.Sum;
+import com.velevedi.baqla.graph.GraphBuilder;
+import com.velevedi.baqla.util.GraphUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+class CriticalPathExecutorTest {
+
+    @Test
+    void performRun() throws Exception {
+        Sum sum = new Sum("sum");
+        Multiply multiply = new Multiply("multiply");
+        Graph<Integer> graph = GraphBuilder.<Integer>directedWeightedGraph("test")
+                .connect(new Constant("5", 5), sum, 2)
+                .connect(new Constant("3", 3), sum, 2)
+                .connect(sum, multiply, 1)
+                .connect(new Constant("2", 2), multiply, 1)
+                .build();
+        Log<Integer, Integer> log = new ListLog<>(new ArrayList<>());
+
+        ExecutorService workers = Executors.newFixedThreadPool(4);
+        try {
+            new CriticalPathExecutor(workers, 4).submit(graph, log);
+        } finally {
+            workers.shutdown();
+        }
+
+        assertThat(log.size(), is(5));
+        List<Log.Entry<Integer, Integer>> result = GraphUtils.extractResults(graph, log);
+        assertThat(result.size(), is(1));
+        assertThat(result.get(0).value(), is(16));
+    }
+
+    @Test
+    void startingLongestPathsFirst() {
+        List<String> started = Collections.synchronizedList(new ArrayList<>());
+        Recording shortBranch = new Recording("short", started);
+        Recording longBranch = new Recording("long", started);
+        Recording middle = new Recording("middle", started);
+        Recording end = new Recording("end", started);
+        Graph<Integer> graph = GraphBuilder.<Integer>directedWeightedGraph("test")
+                .connect(shortBranch, end, 1)
+                .connect(longBranch, middle, 5)
+                .connect(middle, end, 5)
+                .build();
+
+        new CriticalPathExecutor(Runnable::run, 1).submit(graph, new ListLog<>());
+
+        assertThat(started, is(List.of("long", "middle", "short", "end")));
+    }
+
+    @Test
+    void skippingTasksAlreadyRun() {
+        List<String> started = Collections.synchronizedList(new ArrayList<>());
+        Recording first = new Recording("first", started);
+        Recording second = new Recording("second", started);
+        Graph<Integer> graph = GraphBuilder.<Integer>directedAcyclicGraph("test")
+                .connect(first, second)
+                .build();
+        Log<Integer, Integer> log = new ListLog<>();
+        log.add("first", 1);
+
+        new CriticalPathExecutor(Runnable::run, 2).submit(graph, log);
+
+        assertThat(started, is(List.of("second")));
+    }
+
+    @Test
+    void stoppingOnFailure() {
+        List<String> started = Collections.synchronizedList(new ArrayList<>());
+        Task<Integer> failing = new AbstractTask<>("failing") {
+            @Override
+            public <I extends Comparable<? super I>> Integer callOn(Set<Log.Entry<I, Integer>> entries) {
+                throw new ArithmeticException();
+            }
+        };
+        Graph<Integer> graph = GraphBuilder.<Integer>directedAcyclicGraph("test")
+                .connect(failing, new Recording("next", started))
+                .build();
+        Executor executor = new CriticalPathExecutor(Runnable::run, 1);
+
+        IllegalStateException thrown = Assertions.assertThrows(IllegalStateException.class,
+                () -> executor.submit(graph, new ListLog<>()));
+
+        assertThat(thrown.getCause() instanceof ArithmeticException, is(true));
+        assertThat(started.isEmpty(), is(true));
+    }
+
+    @Test
+    void failingOnErrorsThrownByTasks() {
+        Task<Integer> failing = new AbstractTask<>("failing") {
+            @Override
+            public <I extends Comparable<? super I>> Integer callOn(Set<Log.Entry<I, Integer>> entries) {
+                throw new AssertionError("broken task");
+            }
+        };
+        Graph<Integer> graph = GraphBuilder.<Integer>directedAcyclicGraph("test")
+                .connect(failing, new Sum("sum"))
+                .build();
+        ExecutorService workers = Executors.newFixedThreadPool(2);
+        try {
+            Executor executor = new CriticalPathExecutor(workers, 2);
+
+            IllegalStateException thrown = Assertions.assertTimeoutPreemptively(Duration.ofSeconds(10),
+                    () -> Assertions.assertThrows(IllegalStateException.class,
+                            () -> executor.submit(graph, new ListLog<>())));
+
+            assertThat(thrown.getCause() instanceof AssertionError, is(true));
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    @Test
+    void rejectingGraphsWhichMayHaveCycles() {
+        Graph<Integer> graph = GraphBuilder.<Integer>directedGraph("test")
+                .connect(new Constant("1", 1), new Sum("sum"))
+                .build();
+        Executor executor = new CriticalPathExecutor(Runnable::run, 1);
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> executor.submit(graph, new ListLog<>()));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new CriticalPathExecutor(Runnable::run, 0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new CriticalPathExecutor(null, 1));
+    }
+
+    static class Recording extends AbstractTask<Integer> {
+
+        private final List<String> started;
+
+        Recording(String id, List<String> started) {
+            super(id);
+            this.started = started;
+        }
+
+        @Override
+        public <I extends Comparable<? super I>> Integer callOn(Set<Log.Entry<I, Integer>> entries) {
+            started.add(id());
+            return 1;
+        }
+    }
+}
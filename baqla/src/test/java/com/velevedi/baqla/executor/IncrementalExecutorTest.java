@@ -142,6 +142,47 @@ class IncrementalExecutorTest {
         assertThat(result2.get(0).value(), is(16));
     }
 
+    @Test
+    void keepingProgressBetweenLevels() {
+        Sum a = new Sum("a");
+        Sum b = new Sum("b");
+        Sum c = new Sum("c");
+        Sum d = new Sum("d");
+        Graph<Integer> graph = GraphBuilder.<Integer>directedGraph("levels")
+                .connect(new Constant("x", 1), a)
+                .connect(new Constant("y", 2), b)
+                .connect(a, c)
+                .connect(b, c)
+                .connect(c, d)
+                .build();
+        Log<Integer, Integer> kept = new ListLog<>();
+        Log<Integer, Integer> restored = new ListLog<>();
+
+        for (int level = 0; level < 6; level++) {
+            executor.submit(graph, kept);
+            // a new executor restores the progress from the sources of the Log on every level
+            new IncrementalExecutor().submit(graph, restored);
+
+            assertThat(kept.sources(), is(restored.sources()));
+            assertThat(kept.size(), is(restored.size()));
+        }
+        assertThat(kept.size(), is(6));
+        assertThat(kept.latestBySource("d").map(Log.Entry::value).orElse(null), is(3));
+    }
+
+    @Test
+    void restoringProgressOfChangedLog() {
+        Log<Integer, Integer> log = new ListLog<>();
+
+        executor.submit(graph, log);
+        // the sum is calculated outside of the executor
+        log.add("sum", 8);
+        executor.submit(graph, log);
+
+        assertThat(log.size(), is(5));
+        assertThat(log.latestBySource("multiply").map(Log.Entry::value).orElse(null), is(16));
+    }
+
     @Test
     void incorrectArgumentsSupplied() {
         Log<Integer, Integer> log = new ListLog<>(new ArrayList<>());
@@ -156,6 +197,29 @@ class IncrementalExecutorTest {
                 () -> executor.submit(null, null));
     }
 
+    @Test
+    void performRunOfPrimitiveTasks() {
+        DoubleSum sum = new DoubleSum("sum");
+        Graph<Double> graph = GraphBuilder.<Double>directedGraph("primitive")
+                .connect(new DoubleConstant("a", 1.5), sum)
+                .connect(new DoubleConstant("b", 2.25), sum)
+                .build();
+
+        DoubleLog log = new DoubleLog();
+        executor.submit(graph, log);
+        executor.submit(graph, log);
+
+        assertThat(log.latestDouble("sum").getAsDouble(), is(3.75));
+        assertThat(log.size(), is(3));
+
+        // the same tasks run on boxed entries of other logs
+        Log<Integer, Double> boxed = new ListLog<>(new ArrayList<>());
+        executor.submit(graph, boxed);
+        executor.submit(graph, boxed);
+
+        assertThat(boxed.latestBySource("sum").map(Log.Entry::value).orElse(null), is(3.75));
+    }
+
     static class Multiply extends AbstractTask<Integer> {
 
         public Multiply(String id) {
@@ -188,6 +252,37 @@ class IncrementalExecutorTest {
         }
     }
 
+    static class DoubleSum extends AbstractTask<Double> implements DoubleTask {
+
+        public DoubleSum(String id) {
+            super(id);
+        }
+
+        @Override
+        public double callOnValues(String[] sources, double[] values) {
+            double result = 0;
+            for (double value : values) {
+                result += value;
+            }
+            return result;
+        }
+    }
+
+    static class DoubleConstant extends AbstractTask<Double> implements DoubleTask {
+
+        private final double value;
+
+        public DoubleConstant(String id, double value) {
+            super(id);
+            this.value = value;
+        }
+
+        @Override
+        public double callOnValues(String[] sources, double[] values) {
+            return value;
+        }
+    }
+
     static class Constant extends AbstractTask<Integer> {
 
         private final Integer value;
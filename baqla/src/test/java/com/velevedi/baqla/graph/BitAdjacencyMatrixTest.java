@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla.graph;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+
+class BitAdjacencyMatrixTest {
+
+    @Test
+    void creation() {
+        BitAdjacencyMatrix matrix = new BitAdjacencyMatrix(3).link(0, 1).link(1, 2);
+
+        assertThat(matrix.length(), is(3));
+        assertThat(matrix.toString(),
+                is("from (row) -> to (column)\n" +
+                        "        [1]\n" +
+                        "        [2]\n" +
+                        "        []\n"));
+        assertThat(matrix, is(new BitAdjacencyMatrix(3).link(1, 2).link(0, 1)));
+    }
+
+    @Test
+    void incorrectCreation() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new BitAdjacencyMatrix(0));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new BitAdjacencyMatrix(2).link(0, 2));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new BitAdjacencyMatrix(Integer.MAX_VALUE));
+    }
+
+    @Test
+    void getNodesToProcess() {
+        List<String> nodes = Arrays.asList("a", "b", "c", "d", "e", "f");
+        BitAdjacencyMatrix matrix = new BitAdjacencyMatrix(nodes.size())
+                .link(nodes.indexOf("a"), nodes.indexOf("d"))
+                .link(nodes.indexOf("b"), nodes.indexOf("d"))
+                .link(nodes.indexOf("c"), nodes.indexOf("e"))
+                .link(nodes.indexOf("d"), nodes.indexOf("e"))
+                .link(nodes.indexOf("d"), nodes.indexOf("f"));
+
+        assertThat(matrix.getFrontLineNodes(new int[]{nodes.indexOf("d"), nodes.indexOf("c")}),
+                is(new int[]{nodes.indexOf("d"), nodes.indexOf("c")}));
+        assertThat(matrix.getNodesToProcess(new int[]{nodes.indexOf("c"), nodes.indexOf("d")}),
+                is(new int[]{nodes.indexOf("e"), nodes.indexOf("f")}));
+        assertThat(matrix.getNodesToProcess(new int[]{nodes.indexOf("a")}), is(new int[0]));
+    }
+
+    @Test
+    void sameResultsAsMatrix() {
+        Random random = new Random(7);
+        // more than one word per row
+        int numberOfNodes = 150;
+        AdjacencyMatrix expected = new AdjacencyMatrix(numberOfNodes);
+        BitAdjacencyMatrix matrix = new BitAdjacencyMatrix(numberOfNodes);
+        for (int i = 0; i < 2_000; i++) {
+            int from = random.nextInt(numberOfNodes);
+            int to = random.nextInt(numberOfNodes);
+            expected.link(from, to);
+            matrix.link(from, to);
+        }
+
+        for (int i = 0; i < numberOfNodes; i++) {
+            assertThat(matrix.getNextNodes(i), is(expected.getNextNodes(i)));
+            assertThat(matrix.getPreviousNodes(i), is(expected.getPreviousNodes(i)));
+        }
+        assertThat(matrix.getInitialNodes(), is(expected.getInitialNodes()));
+        assertThat(matrix.getFinalNodes(), is(expected.getFinalNodes()));
+        for (int i = 0; i < 50; i++) {
+            int[] group = random.ints(random.nextInt(20) + 1, 0, numberOfNodes).distinct().toArray();
+            assertThat(matrix.getNextNodes(group), is(sorted(expected.getNextNodes(group))));
+            assertThat(matrix.getPreviousNodes(group), is(sorted(expected.getPreviousNodes(group))));
+            assertThat(matrix.getFrontLineNodes(group), is(expected.getFrontLineNodes(group)));
+            assertThat(matrix.getNodesToProcess(group), is(sorted(expected.getNodesToProcess(group))));
+        }
+    }
+
+    @Test
+    void choosingRepresentation() {
+        int[] from = {0, 1, 2, 3};
+        int[] to = {1, 2, 3, 0};
+        assertThat(DirectedGraph.adjacency(4, from, to), is(instanceOf(BitAdjacencyMatrix.class)));
+
+        int numberOfNodes = 1_000;
+        int[] chainFrom = new int[numberOfNodes - 1];
+        int[] chainTo = new int[numberOfNodes - 1];
+        for (int i = 1; i < numberOfNodes; i++) {
+            chainFrom[i - 1] = i - 1;
+            chainTo[i - 1] = i;
+        }
+        assertThat(DirectedGraph.adjacency(numberOfNodes, chainFrom, chainTo), is(instanceOf(SparseAdjacency.class)));
+    }
+
+    private static int[] sorted(int[] array) {
+        int[] result = array.clone();
+        Arrays.sort(result);
+        return result;
+    }
+}
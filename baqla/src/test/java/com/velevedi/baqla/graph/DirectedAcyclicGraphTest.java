@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla.graph;
+
+import com.velevedi.baqla.Graph;
+import com.velevedi.baqla.Task;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+
+class DirectedAcyclicGraphTest {
+
+    TestTask a = new TestTask("a");
+    TestTask b = new TestTask("b");
+    TestTask c = new TestTask("c");
+    TestTask d = new TestTask("d");
+    TestTask e = new TestTask("e");
+    TestTask f = new TestTask("f");
+    DirectedAcyclicGraph<Integer> graph;
+
+    @BeforeEach
+    void setUp() {
+        Graph<Integer> built = GraphBuilder.<Integer>directedAcyclicGraph("test")
+                .connect(a, d)
+                .connect(b, d)
+                .connect(c, e)
+                .connect(d, e)
+                .connect(d, f)
+                .build();
+        assertThat(built, is(instanceOf(DirectedAcyclicGraph.class)));
+        graph = (DirectedAcyclicGraph<Integer>) built;
+    }
+
+    @Test
+    void levels() {
+        assertThat(graph.numberOfLevels(), is(3));
+        assertThat(graph.levels(), is(List.of(Set.of(a, b, c), Set.of(d), Set.of(e, f))));
+        assertThat(graph.levels().get(0), is(graph.initialTasks()));
+
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> graph.levels().clear());
+    }
+
+    @Test
+    void topologicalOrder() {
+        List<Task<Integer>> order = graph.topologicalOrder();
+
+        assertThat(order.size(), is(6));
+        assertThat(order.indexOf(a), is(lessThan(order.indexOf(d))));
+        assertThat(order.indexOf(b), is(lessThan(order.indexOf(d))));
+        assertThat(order.indexOf(c), is(lessThan(order.indexOf(e))));
+        assertThat(order.indexOf(d), is(lessThan(order.indexOf(e))));
+        assertThat(order.indexOf(d), is(lessThan(order.indexOf(f))));
+    }
+
+    @Test
+    void behavesAsDirectedGraph() {
+        assertThat(graph.nextTasks(Set.of("a", "b")), is(Set.of(d)));
+        assertThat(graph.previousTasks(Set.of("e")), is(Set.of(c, d)));
+        assertThat(graph.finalTasks(), is(Set.of(e, f)));
+    }
+
+    @Test
+    void cyclesAreRejected() {
+        IllegalArgumentException error = Assertions.assertThrows(IllegalArgumentException.class,
+                () -> GraphBuilder.<Integer>directedAcyclicGraph("cycle")
+                        .connect(a, b)
+                        .connect(b, c)
+                        .connect(c, a)
+                        .connect(d, a)
+                        .build());
+        assertThat(error.getMessage(), is("Unable to initialize graph. Links form a cycle among tasks [a, b, c]"));
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> GraphBuilder.<Integer>directedAcyclicGraph("loop")
+                        .connect(a, a)
+                        .build());
+        // the same links are accepted by a directed graph
+        assertThat(GraphBuilder.<Integer>directedGraph("cycle").connect(a, b).connect(b, a).build().numberOfTasks(),
+                is(2));
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla.graph;
+
+import com.velevedi.baqla.Graph;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsInstanceOf.instanceOf;
+
+class DirectedWeightedGraphTest {
+
+    TestTask a = new TestTask("a");
+    TestTask b = new TestTask("b");
+    TestTask c = new TestTask("c");
+    TestTask d = new TestTask("d");
+    TestTask e = new TestTask("e");
+    DirectedWeightedGraph<Integer> graph;
+
+    @BeforeEach
+    void setUp() {
+        Graph<Integer> built = GraphBuilder.<Integer>directedWeightedGraph("test")
+                .connect(a, b, 3)
+                .connect(b, d, 4)
+                .connect(a, c, 1)
+                .connect(c, d, 1)
+                .connect(e, d, 5)
+                .build();
+        assertThat(built, is(instanceOf(DirectedWeightedGraph.class)));
+        graph = (DirectedWeightedGraph<Integer>) built;
+    }
+
+    @Test
+    void weights() {
+        assertThat(graph.weight("a", "b"), is(3.0));
+        assertThat(graph.weight("e", "d"), is(5.0));
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> graph.weight("b", "a"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> graph.weight("a", "unknown"));
+    }
+
+    @Test
+    void criticalPathLengths() {
+        assertThat(graph.criticalPathLength("a"), is(7.0));
+        assertThat(graph.criticalPathLength("b"), is(4.0));
+        assertThat(graph.criticalPathLength("c"), is(1.0));
+        assertThat(graph.criticalPathLength("d"), is(0.0));
+        assertThat(graph.criticalPathLength("e"), is(5.0));
+
+        ExecutionPlan<Integer> plan = graph.compile();
+        assertThat(graph.criticalPathLength(plan.indexOf("a")), is(7.0));
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> graph.criticalPathLength("unknown"));
+    }
+
+    @Test
+    void criticalPath() {
+        assertThat(graph.criticalPath(), is(List.of(a, b, d)));
+    }
+
+    @Test
+    void keepingBiggestWeightOfRepeatedLinks() {
+        DirectedWeightedGraph<Integer> repeated = (DirectedWeightedGraph<Integer>) GraphBuilder.<Integer>directedWeightedGraph("test")
+                .connect(a, b, 2)
+                .connect(a, b, 6)
+                .connect(a, b)
+                .build();
+
+        assertThat(repeated.weight("a", "b"), is(6.0));
+        assertThat(repeated.criticalPathLength("a"), is(6.0));
+    }
+
+    @Test
+    void rejectingCycles() {
+        GraphBuilder<Integer> builder = GraphBuilder.<Integer>directedWeightedGraph("test")
+                .connect(a, b, 1)
+                .connect(b, a, 1);
+
+        Assertions.assertThrows(IllegalArgumentException.class, builder::build);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> GraphBuilder.<Integer>directedWeightedGraph("test").connect(a, b, -1));
+    }
+
+    @Test
+    void behavesAsDirectedGraph() {
+        assertThat(graph.initialTasks(), is(Set.of(a, e)));
+        assertThat(graph.previousTasks(Set.of("d")), is(Set.of(b, c, e)));
+        assertThat(graph.numberOfLevels(), is(3));
+    }
+}
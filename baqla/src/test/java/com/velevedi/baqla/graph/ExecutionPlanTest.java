@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla.graph;
+
+import com.velevedi.baqla.Graph;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
+
+class ExecutionPlanTest {
+
+    TestTask a = new TestTask("a");
+    TestTask b = new TestTask("b");
+    TestTask c = new TestTask("c");
+    TestTask d = new TestTask("d");
+    TestTask e = new TestTask("e");
+    DirectedGraph<Integer> graph;
+    ExecutionPlan<Integer> plan;
+
+    @BeforeEach
+    void setUp() {
+        Graph<Integer> built = GraphBuilder.<Integer>directedGraph("test")
+                .connect(a, c)
+                .connect(b, c)
+                .connect(c, d)
+                .connect(c, e)
+                .build();
+        graph = (DirectedGraph<Integer>) built;
+        plan = graph.compile();
+    }
+
+    private Set<String> ids(int[] indices) {
+        return Arrays.stream(indices)
+                .mapToObj(i -> plan.task(i).id())
+                .collect(Collectors.toSet());
+    }
+
+    @Test
+    void compilingOnce() {
+        assertThat(graph.compile(), is(sameInstance(plan)));
+        assertThat(plan.size(), is(5));
+    }
+
+    @Test
+    void indexingTasks() {
+        for (String id : Set.of("a", "b", "c", "d", "e")) {
+            assertThat(plan.task(plan.indexOf(id)).id(), is(id));
+        }
+        assertThat(plan.indexOf("unknown"), is(-1));
+    }
+
+    @Test
+    void resolvingDependencies() {
+        int index = plan.indexOf("c");
+
+        assertThat(ids(plan.previous(index)), is(Set.of("a", "b")));
+        assertThat(ids(plan.next(index)), is(Set.of("d", "e")));
+        assertThat(plan.previousIds(index), is(Set.of("a", "b")));
+        assertThat(plan.previousIds(plan.indexOf("a")), is(Set.of()));
+        assertThat(plan.previousIds(index), is(sameInstance(plan.previousIds(index))));
+
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> plan.previousIds(index).clear());
+    }
+
+    @Test
+    void findingTasksToRun() {
+        assertThat(ids(plan.initialTasks()), is(Set.of("a", "b")));
+        assertThat(ids(plan.finalTasks()), is(Set.of("d", "e")));
+        assertThat(ids(plan.nextTasks(Set.of("a", "b"))), is(Set.of("c")));
+        assertThat(ids(plan.nextTasks(Set.of("a", "b", "c", "unknown"))), is(Set.of("d", "e")));
+        assertThat(plan.nextTasks(Set.of()).length, is(0));
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla.graph;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+class SparseAdjacencyTest {
+
+    @Test
+    void creation() {
+        SparseAdjacency adjacency = new SparseAdjacency(3, new int[]{0, 0, 1}, new int[]{1, 1, 2});
+
+        assertThat(adjacency.length(), is(3));
+        assertThat(adjacency.numberOfLinks(), is(2));
+        assertThat(adjacency.toString(),
+                is("from -> to\n" +
+                        "        0 -> [1]\n" +
+                        "        1 -> [2]\n" +
+                        "        2 -> []\n"));
+    }
+
+    @Test
+    void incorrectCreation() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new SparseAdjacency(0, new int[0], new int[0]));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new SparseAdjacency(2, new int[]{0}, new int[0]));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new SparseAdjacency(2, new int[]{0}, new int[]{2}));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new SparseAdjacency(2, null, new int[0]));
+    }
+
+    @Test
+    void getNodesToProcess() {
+        List<String> nodes = Arrays.asList("a", "b", "c", "d", "e", "f");
+        SparseAdjacency adjacency = new SparseAdjacency(nodes.size(),
+                new int[]{nodes.indexOf("a"), nodes.indexOf("b"), nodes.indexOf("c"), nodes.indexOf("d"), nodes.indexOf("d")},
+                new int[]{nodes.indexOf("d"), nodes.indexOf("d"), nodes.indexOf("e"), nodes.indexOf("e"), nodes.indexOf("f")}
+        );
+
+        int[] frontLine = adjacency.getFrontLineNodes(
+                new int[]{nodes.indexOf("a"), nodes.indexOf("b"), nodes.indexOf("d")}
+        );
+        assertThat(frontLine, is(new int[]{nodes.indexOf("d")}));
+
+        int[] toProcess = adjacency.getNodesToProcess(new int[]{nodes.indexOf("a"), nodes.indexOf("b")});
+        assertThat(toProcess, is(new int[]{nodes.indexOf("d")}));
+
+        // "e" needs "c" as well
+        toProcess = adjacency.getNodesToProcess(new int[]{nodes.indexOf("a"), nodes.indexOf("b"), nodes.indexOf("d")});
+        assertThat(toProcess, is(new int[]{nodes.indexOf("f")}));
+
+        assertThat(adjacency.getInitialNodes(), is(new int[]{0, 1, 2}));
+        assertThat(adjacency.getFinalNodes(), is(new int[]{4, 5}));
+    }
+
+    @Test
+    void sameResultsAsMatrix() {
+        Random random = new Random(42);
+        int numberOfNodes = 60;
+        int numberOfLinks = 150;
+        int[] from = new int[numberOfLinks];
+        int[] to = new int[numberOfLinks];
+        AdjacencyMatrix matrix = new AdjacencyMatrix(numberOfNodes);
+        for (int i = 0; i < numberOfLinks; i++) {
+            from[i] = random.nextInt(numberOfNodes);
+            to[i] = random.nextInt(numberOfNodes);
+            matrix.link(from[i], to[i]);
+        }
+        SparseAdjacency adjacency = new SparseAdjacency(numberOfNodes, from, to);
+
+        for (int i = 0; i < numberOfNodes; i++) {
+            assertThat(adjacency.getNextNodes(i), is(matrix.getNextNodes(i)));
+            assertThat(adjacency.getPreviousNodes(i), is(matrix.getPreviousNodes(i)));
+        }
+        assertThat(adjacency.getInitialNodes(), is(matrix.getInitialNodes()));
+        assertThat(adjacency.getFinalNodes(), is(matrix.getFinalNodes()));
+        for (int i = 0; i < 20; i++) {
+            int[] group = random.ints(5, 0, numberOfNodes).distinct().toArray();
+            assertThat(adjacency.getNextNodes(group), is(matrix.getNextNodes(group)));
+            assertThat(adjacency.getPreviousNodes(group), is(matrix.getPreviousNodes(group)));
+            assertThat(adjacency.getFrontLineNodes(group), is(matrix.getFrontLineNodes(group)));
+            assertThat(adjacency.getNodesToProcess(group), is(matrix.getNodesToProcess(group)));
+        }
+    }
+
+    @Test
+    void largeGraph() {
+        int numberOfNodes = 50_000;
+        int[] from = new int[numberOfNodes - 1];
+        int[] to = new int[numberOfNodes - 1];
+        for (int i = 1; i < numberOfNodes; i++) {
+            from[i - 1] = (i - 1) / 2;
+            to[i - 1] = i;
+        }
+        SparseAdjacency adjacency = new SparseAdjacency(numberOfNodes, from, to);
+
+        assertThat(adjacency.getNextNodes(0), is(new int[]{1, 2}));
+        assertThat(adjacency.getPreviousNodes(49_999), is(new int[]{24_999}));
+        assertThat(adjacency.getInitialNodes(), is(new int[]{0}));
+        assertThat(adjacency.getFinalNodes().length, is(25_000));
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla.util;
+
+import com.velevedi.baqla.Log;
+import com.velevedi.baqla.SortedSetLog;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.core.Is.is;
+
+class HybridLogicalClockTest {
+
+    @Test
+    void generatingIndices() {
+        AtomicLong time = new AtomicLong(100);
+        HybridLogicalClock clock = new HybridLogicalClock(1, time::get);
+
+        assertThat(clock.nextIndex(), is(new HybridTimestamp(100, 0, 1)));
+        assertThat(clock.nextIndex(), is(new HybridTimestamp(100, 1, 1)));
+
+        // the wall clock goes backwards, indices keep growing
+        time.set(50);
+        assertThat(clock.nextIndex(), is(new HybridTimestamp(100, 2, 1)));
+
+        time.set(200);
+        assertThat(clock.nextIndex(), is(new HybridTimestamp(200, 0, 1)));
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new HybridLogicalClock(1, null));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> clock.observe(null));
+    }
+
+    @Test
+    void observingOtherNodes() {
+        AtomicLong time = new AtomicLong(100);
+        HybridLogicalClock clock1 = new HybridLogicalClock(1, time::get);
+        HybridLogicalClock clock2 = new HybridLogicalClock(2, () -> 90);
+
+        HybridTimestamp sent = clock1.nextIndex();
+        sent = clock1.nextIndex();
+        HybridTimestamp received = clock2.observe(sent);
+
+        assertThat(received, is(new HybridTimestamp(100, 2, 2)));
+        assertThat(clock2.nextIndex(), is(greaterThan(sent)));
+
+        // the same time and counter are ordered by nodes
+        assertThat(new HybridTimestamp(100, 2, 1), is(greaterThan(new HybridTimestamp(100, 1, 2))));
+        assertThat(new HybridTimestamp(100, 2, 2), is(greaterThan(new HybridTimestamp(100, 2, 1))));
+
+        time.set(300);
+        assertThat(clock1.observe(received), is(new HybridTimestamp(300, 0, 1)));
+    }
+
+    @Test
+    void indexingLog() {
+        AtomicLong time = new AtomicLong(100);
+        Log<HybridTimestamp, String> log = new SortedSetLog<>(new HybridLogicalClock(7, time::get), new TreeSet<>());
+        log.add("source", "value0");
+        log.add("source", "value1");
+        time.set(150);
+        log.add("source", "value2");
+
+        assertThat(log.stream().map(e -> e.index().toString()).collect(Collectors.toList()),
+                contains("100.0@7", "100.1@7", "150.0@7"));
+        assertThat(log.latestBySource("source").map(Log.Entry::value).orElse(null), is("value2"));
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.core.Is.is;
+
+class LongIndexFactoryTest {
+
+    @Test
+    void generatingIndices() {
+        LongIndexFactory factory = new LongIndexFactory(10, 4);
+
+        assertThat(factory.nextIndex(), is(10L));
+        assertThat(factory.nextIndex(), is(11L));
+        // a reserved range does not overlap with the block of the thread
+        assertThat(factory.reserve(3), contains(14L, 15L, 16L));
+        assertThat(factory.nextIndex(), is(12L));
+        assertThat(factory.nextIndex(), is(13L));
+        assertThat(factory.nextIndex(), is(17L));
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new LongIndexFactory(-1, 4));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new LongIndexFactory(0, 0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> factory.reserve(-1));
+        Assertions.assertThrows(IndexOutOfBoundsException.class,
+                () -> new LongIndexFactory(Long.MAX_VALUE - 1, 4).nextIndex());
+    }
+
+    @Test
+    void generatingIndicesFromMultipleThreads() throws Exception {
+        LongIndexFactory factory = new LongIndexFactory();
+        int threads = 4;
+        int indicesPerThread = 10_000;
+        Set<Long> generated = ConcurrentHashMap.newKeySet();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    long previous = -1;
+                    boolean growing = true;
+                    for (int i = 0; i < indicesPerThread; i++) {
+                        long index = factory.nextIndex();
+                        growing &= index > previous;
+                        previous = index;
+                        generated.add(index);
+                    }
+                    return growing;
+                }));
+            }
+            for (Future<Boolean> future : futures) {
+                assertThat(future.get(30, TimeUnit.SECONDS), is(true));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(generated.size(), is(threads * indicesPerThread));
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+class PersistentVectorTest {
+
+    @Test
+    void addingElements() {
+        PersistentVector<Integer> vector = new PersistentVector<>();
+        List<Integer> expected = new ArrayList<>();
+
+        assertThat(vector.isEmpty(), is(true));
+
+        // enough elements to grow the tree for a few levels
+        for (int i = 0; i < 40_000; i++) {
+            vector.add(i);
+            expected.add(i);
+        }
+
+        assertThat(vector.size(), is(40_000));
+        assertThat(vector, is(expected));
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(vector.get(i), is(i));
+        }
+
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> vector.get(-1));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> vector.get(40_000));
+    }
+
+    @Test
+    void modificationsAreNotSupported() {
+        PersistentVector<Integer> vector = new PersistentVector<>(List.of(1, 2, 3));
+
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> vector.set(0, 5));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> vector.remove(0));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> {
+            Iterator<Integer> iterator = vector.iterator();
+            iterator.next();
+            iterator.remove();
+        });
+    }
+
+    @Test
+    void forking() {
+        for (int size : new int[]{0, 1, 31, 32, 33, 1024, 1056, 1057, 33_000}) {
+            PersistentVector<Integer> vector = new PersistentVector<>(range(0, size));
+
+            PersistentVector<Integer> forked = vector.fork();
+
+            assertThat(forked, is(range(0, size)));
+
+            for (int i = 0; i < 100; i++) {
+                vector.add(-i);
+                forked.add(size + i);
+            }
+
+            List<Integer> expected = range(0, size);
+            expected.addAll(IntStream.range(0, 100).map(i -> -i).boxed().collect(Collectors.toList()));
+            assertThat(vector, is(expected));
+            assertThat(forked, is(range(0, size + 100)));
+
+            // forks of forks keep their own elements
+            PersistentVector<Integer> second = forked.fork();
+            second.add(-1);
+            forked.add(-2);
+
+            assertThat(second.get(size + 100), is(-1));
+            assertThat(forked.get(size + 100), is(-2));
+        }
+    }
+
+    private static List<Integer> range(int from, int to) {
+        return IntStream.range(from, to).boxed().collect(Collectors.toList());
+    }
+}
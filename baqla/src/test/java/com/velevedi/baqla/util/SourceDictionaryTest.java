@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2017. The Baqla Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. The License can be obtained at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package com.velevedi.baqla.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
+
+class SourceDictionaryTest {
+
+    @Test
+    void registeringSources() {
+        SourceDictionary dictionary = new SourceDictionary();
+
+        for (int i = 0; i < 20; i++) {
+            assertThat(dictionary.idOf("source" + i), is(i));
+        }
+        assertThat(dictionary.idOf("source3"), is(3));
+        assertThat(dictionary.size(), is(20));
+        assertThat(dictionary.sourceOf(7), is("source7"));
+        assertThat(dictionary.find("source19"), is(19));
+        assertThat(dictionary.find("unknown"), is(-1));
+        assertThat(dictionary.size(), is(20));
+
+        SourceDictionary restored = new SourceDictionary(dictionary.sources());
+        assertThat(restored.sources(), is(dictionary.sources()));
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> dictionary.sourceOf(20));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> dictionary.idOf(null));
+    }
+
+    @Test
+    void canonicalInstances() {
+        SourceDictionary dictionary = new SourceDictionary(List.of("source1"));
+        String registered = dictionary.sourceOf(0);
+
+        String source = new String("source1");
+        assertThat(dictionary.canonical(source), is(sameInstance(registered)));
+        assertThat(dictionary.canonical(new String("source2")), is(sameInstance(dictionary.sourceOf(1))));
+    }
+}